@@ -0,0 +1,375 @@
+package com.codekutter.lazyman.common;
+
+import com.google.common.base.Preconditions;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Held-Karp lower bound and alpha-nearness candidate sets.
+ * <p>
+ * A minimum 1-tree (a spanning tree on points 1..n-1 plus the two cheapest edges of point 0) is
+ * computed on the costs d(i, j) + pi[i] + pi[j], with the penalties pi optimized by subgradient
+ * ascent. The alpha-nearness of an edge is the increase of the 1-tree cost when it is forced into
+ * the 1-tree; ranking neighbours by alpha instead of distance needs far fewer candidates.
+ * <p>
+ * With a (connected) candidate graph the ascent and the alpha values are limited to the graph
+ * edges; the lower bound is always that of a minimum 1-tree over all the edges.
+ */
+@Getter
+@Accessors(fluent = true)
+public class AlphaNearness {
+    public static final int DEFAULT_ITERATIONS = 1000;
+
+    @FunctionalInterface
+    public interface Distances {
+        double distance(int source, int target);
+    }
+
+    private static final int SPECIAL = 0;
+
+    private final int size;
+    @Getter(AccessLevel.NONE)
+    private final Distances distances;
+    @Getter(AccessLevel.NONE)
+    private final int[][] graph;
+    private final double[] pi;
+    private double lowerBound = Double.NEGATIVE_INFINITY;
+    private int iterations = 0;
+
+    @Getter(AccessLevel.NONE)
+    private final int[] dad;
+    @Getter(AccessLevel.NONE)
+    private final double[] dadCost;
+    @Getter(AccessLevel.NONE)
+    private final int[] order;
+    @Getter(AccessLevel.NONE)
+    private final int[] degree;
+    @Getter(AccessLevel.NONE)
+    private int first;
+    @Getter(AccessLevel.NONE)
+    private int second;
+
+    /**
+     * @param size      - Number of points.
+     * @param distances - Distance between two points (0-based indexes).
+     * @param graph     - Candidate graph (sorted neighbour indexes per point), null for all edges.
+     */
+    public AlphaNearness(int size, @NonNull Distances distances, int[][] graph) {
+        Preconditions.checkArgument(size >= 3);
+        Preconditions.checkArgument(graph == null || graph.length == size);
+        this.size = size;
+        this.distances = distances;
+        this.graph = graph;
+        pi = new double[size];
+        dad = new int[size];
+        dadCost = new double[size];
+        order = new int[size - 1];
+        degree = new int[size];
+    }
+
+    public AlphaNearness optimize() {
+        return optimize(DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Optimize the penalties by subgradient ascent (step doubled while the bound improves in the
+     * initial phase, step and period halved at the end of each period).
+     */
+    public AlphaNearness optimize(int maxIterations) {
+        Preconditions.checkArgument(maxIterations >= 0);
+        double best = oneTree(graph);
+        double[] bestPi = pi.clone();
+        int[] lastV = new int[size];
+        double step = 0.01 * (best / size);
+        int initialPeriod = Math.max(size / 2, 100);
+        int period = initialPeriod;
+        boolean initialPhase = true;
+        iterations = 0;
+
+        while (period > 0 && step > 0 && norm() != 0 && iterations < maxIterations) {
+            for (int p = 1; p <= period && norm() != 0 && iterations < maxIterations; p++) {
+                for (int ii = 0; ii < size; ii++) {
+                    int v = degree[ii] - 2;
+                    if (v != 0) {
+                        pi[ii] += step * (0.7 * v + 0.3 * lastV[ii]);
+                    }
+                    lastV[ii] = v;
+                }
+                double w = oneTree(graph);
+                iterations++;
+                if (w > best) {
+                    best = w;
+                    System.arraycopy(pi, 0, bestPi, 0, size);
+                    if (initialPhase) {
+                        step *= 2;
+                    }
+                    if (p == period && (period *= 2) > initialPeriod) {
+                        period = initialPeriod;
+                    }
+                } else if (initialPhase && p > period / 2) {
+                    initialPhase = false;
+                    p = 0;
+                    step = 3 * step / 4;
+                }
+            }
+            period /= 2;
+            step /= 2;
+        }
+        System.arraycopy(bestPi, 0, pi, 0, size);
+        lowerBound = (graph != null ? oneTree(null) : best);
+        oneTree(graph);
+        return this;
+    }
+
+    /**
+     * Get the count best candidates of each point, ranked by alpha (then distance).
+     */
+    public int[][] candidates(int count) {
+        Preconditions.checkArgument(count > 0);
+        oneTree(graph);
+        int[][] result = new int[size][];
+        if (graph != null) {
+            Lifting lifting = new Lifting();
+            for (int ii = 0; ii < size; ii++) {
+                int[] targets = graph[ii];
+                double[] alphas = new double[targets.length];
+                for (int jj = 0; jj < targets.length; jj++) {
+                    alphas[jj] = alpha(ii, targets[jj], lifting);
+                }
+                result[ii] = select(ii, targets, alphas, count);
+            }
+        } else {
+            int[] targets = new int[size];
+            double[] alphas = new double[size];
+            double[] beta = new double[size];
+            int[] mark = new int[size];
+            Arrays.fill(mark, -1);
+            for (int ii = 0; ii < size; ii++) {
+                int found = 0;
+                if (ii == SPECIAL) {
+                    for (int jj = 1; jj < size; jj++) {
+                        targets[found] = jj;
+                        alphas[found++] = specialAlpha(jj);
+                    }
+                } else {
+                    beta[ii] = Double.NEGATIVE_INFINITY;
+                    for (int u = ii; dad[u] >= 0; u = dad[u]) {
+                        beta[dad[u]] = Math.max(beta[u], dadCost[u]);
+                        mark[dad[u]] = ii;
+                    }
+                    targets[found] = SPECIAL;
+                    alphas[found++] = specialAlpha(ii);
+                    for (int j : order) {
+                        if (j == ii) continue;
+                        if (mark[j] != ii) {
+                            beta[j] = Math.max(beta[dad[j]], dadCost[j]);
+                        }
+                        targets[found] = j;
+                        alphas[found++] = cost(ii, j) - beta[j];
+                    }
+                }
+                result[ii] = select(ii, Arrays.copyOf(targets, found), Arrays.copyOf(alphas, found), count);
+            }
+        }
+        return result;
+    }
+
+    private int[] select(int source, int[] targets, double[] alphas, int count) {
+        Integer[] indexes = new Integer[targets.length];
+        double[] lengths = new double[targets.length];
+        for (int ii = 0; ii < targets.length; ii++) {
+            indexes[ii] = ii;
+            lengths[ii] = distances.distance(source, targets[ii]);
+        }
+        Arrays.sort(indexes, (i1, i2) -> {
+            int c = Double.compare(alphas[i1], alphas[i2]);
+            if (c == 0) c = Double.compare(lengths[i1], lengths[i2]);
+            return (c != 0 ? c : Integer.compare(targets[i1], targets[i2]));
+        });
+        int[] selected = new int[Math.min(count, targets.length)];
+        for (int ii = 0; ii < selected.length; ii++) {
+            selected[ii] = targets[indexes[ii]];
+        }
+        return selected;
+    }
+
+    private double alpha(int ii, int jj, Lifting lifting) {
+        if (ii == SPECIAL) return specialAlpha(jj);
+        if (jj == SPECIAL) return specialAlpha(ii);
+        return cost(ii, jj) - lifting.max(ii, jj);
+    }
+
+    private double specialAlpha(int target) {
+        if (target == first || target == second) return 0;
+        return cost(SPECIAL, target) - cost(SPECIAL, second);
+    }
+
+    private double cost(int ii, int jj) {
+        return distances.distance(ii, jj) + pi[ii] + pi[jj];
+    }
+
+    private int norm() {
+        int norm = 0;
+        for (int ii = 0; ii < size; ii++) {
+            int v = degree[ii] - 2;
+            norm += v * v;
+        }
+        return norm;
+    }
+
+    /**
+     * Compute the minimum 1-tree (over the graph edges, or all edges if null).
+     *
+     * @return - The 1-tree cost minus twice the penalties.
+     */
+    private double oneTree(int[][] edges) {
+        Arrays.fill(dad, -1);
+        Arrays.fill(degree, 0);
+        double[] key = new double[size];
+        boolean[] done = new boolean[size];
+        Arrays.fill(key, Double.POSITIVE_INFINITY);
+        int root = 1;
+        key[root] = 0;
+        double length = 0;
+        int count = 0;
+
+        if (edges == null) {
+            for (int step = 1; step < size; step++) {
+                int u = -1;
+                for (int v = 1; v < size; v++) {
+                    if (!done[v] && (u < 0 || key[v] < key[u])) u = v;
+                }
+                done[u] = true;
+                order[count++] = u;
+                for (int v = 1; v < size; v++) {
+                    if (done[v]) continue;
+                    double c = cost(u, v);
+                    if (c < key[v]) {
+                        key[v] = c;
+                        dad[v] = u;
+                    }
+                }
+            }
+        } else {
+            PriorityQueue<double[]> queue = new PriorityQueue<>((e1, e2) -> Double.compare(e1[0], e2[0]));
+            queue.add(new double[]{0, root});
+            while (!queue.isEmpty()) {
+                int u = (int) queue.poll()[1];
+                if (done[u]) continue;
+                done[u] = true;
+                order[count++] = u;
+                for (int v : edges[u]) {
+                    if (v == SPECIAL || done[v]) continue;
+                    double c = cost(u, v);
+                    if (c < key[v]) {
+                        key[v] = c;
+                        dad[v] = u;
+                        queue.add(new double[]{c, v});
+                    }
+                }
+            }
+            if (count != size - 1) {
+                throw new IllegalStateException(String.format("Candidate graph is not connected. [size=%d][reached=%d]",
+                        size - 1, count));
+            }
+        }
+        for (int v = 1; v < size; v++) {
+            if (dad[v] >= 0) {
+                dadCost[v] = key[v];
+                length += key[v];
+                degree[v]++;
+                degree[dad[v]]++;
+            }
+        }
+
+        first = -1;
+        second = -1;
+        double c1 = Double.POSITIVE_INFINITY, c2 = Double.POSITIVE_INFINITY;
+        int[] targets = (edges != null ? edges[SPECIAL] : null);
+        int targetCount = (targets != null ? targets.length : size);
+        for (int jj = 0; jj < targetCount; jj++) {
+            int v = (targets != null ? targets[jj] : jj);
+            if (v == SPECIAL) continue;
+            double c = cost(SPECIAL, v);
+            if (c < c1) {
+                c2 = c1;
+                second = first;
+                c1 = c;
+                first = v;
+            } else if (c < c2) {
+                c2 = c;
+                second = v;
+            }
+        }
+        Preconditions.checkState(second >= 0);
+        degree[SPECIAL] = 2;
+        degree[first]++;
+        degree[second]++;
+        length += c1 + c2;
+
+        double penalties = 0;
+        for (double p : pi) {
+            penalties += p;
+        }
+        return length - 2 * penalties;
+    }
+
+    /**
+     * Binary lifting over the current tree for the maximum edge cost on a tree path.
+     */
+    private final class Lifting {
+        private final int levels;
+        private final int[][] up;
+        private final double[][] max;
+        private final int[] depth;
+
+        private Lifting() {
+            levels = Math.max(1, 32 - Integer.numberOfLeadingZeros(size));
+            up = new int[levels][size];
+            max = new double[levels][size];
+            depth = new int[size];
+            for (int v : order) {
+                int d = dad[v];
+                up[0][v] = (d >= 0 ? d : v);
+                max[0][v] = (d >= 0 ? dadCost[v] : Double.NEGATIVE_INFINITY);
+                depth[v] = (d >= 0 ? depth[d] + 1 : 0);
+            }
+            for (int k = 1; k < levels; k++) {
+                for (int v : order) {
+                    int mid = up[k - 1][v];
+                    up[k][v] = up[k - 1][mid];
+                    max[k][v] = Math.max(max[k - 1][v], max[k - 1][mid]);
+                }
+            }
+        }
+
+        private double max(int u, int v) {
+            double result = Double.NEGATIVE_INFINITY;
+            if (depth[u] < depth[v]) {
+                int t = u;
+                u = v;
+                v = t;
+            }
+            for (int k = levels - 1; k >= 0; k--) {
+                if (depth[u] - (1 << k) >= depth[v]) {
+                    result = Math.max(result, max[k][u]);
+                    u = up[k][u];
+                }
+            }
+            if (u == v) return result;
+            for (int k = levels - 1; k >= 0; k--) {
+                if (up[k][u] != up[k][v]) {
+                    result = Math.max(result, Math.max(max[k][u], max[k][v]));
+                    u = up[k][u];
+                    v = up[k][v];
+                }
+            }
+            return Math.max(result, Math.max(max[0][u], max[0][v]));
+        }
+    }
+}
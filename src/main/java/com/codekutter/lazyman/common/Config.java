@@ -16,9 +16,11 @@ import java.util.Properties;
 @Accessors(fluent = true)
 public class Config {
     public static final String DEFAULT_MAPS_DIR = "maps";
+    public static final String DEFAULT_SNAPSHOT_DIR = "snapshots";
 
     private String workingDir;
     private String mapsDataDir;
+    private String snapshotDir;
     private Properties config;
     private RunInfo runInfo;
 
@@ -60,6 +62,7 @@ public class Config {
         }
 
         mapsDataDir = di.getAbsolutePath();
+        snapshotDir = new File(String.format("%s/%s", workingDir, DEFAULT_SNAPSHOT_DIR)).getAbsolutePath();
     }
 
     public String setupMapFile(@NonNull String mapname, boolean clear) throws Exception {
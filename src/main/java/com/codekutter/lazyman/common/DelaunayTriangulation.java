@@ -0,0 +1,541 @@
+package com.codekutter.lazyman.common;
+
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+import java.util.Arrays;
+
+/**
+ * Delaunay triangulation of 2D coordinates, used as a sparse (connected) candidate graph.
+ * <p>
+ * Sweep-hull construction: points are added in order of distance from a seed triangle,
+ * each one joined to the visible part of the convex hull (located through an angular hash)
+ * and legalized by edge flips, giving O(n log n) expected time. Points are indexed 0..n-1;
+ * duplicate points are linked to their first occurrence and share its neighbours.
+ */
+@Getter
+@Accessors(fluent = true)
+public class DelaunayTriangulation {
+    private static final double EPSILON = Math.ulp(1.0);
+
+    private final int size;
+    private final int[][] neighbors;
+
+    private double[] xs;
+    private double[] ys;
+    private int[] triangles;
+    private int[] halfedges;
+    private int trianglesLen = 0;
+    private int[] hullPrev;
+    private int[] hullNext;
+    private int[] hullTri;
+    private int[] hullHash;
+    private int hullStart;
+    private double cx;
+    private double cy;
+    private int[] stack = new int[512];
+
+    public DelaunayTriangulation(@NonNull double[] xs, @NonNull double[] ys) {
+        Preconditions.checkArgument(xs.length == ys.length);
+        this.size = xs.length;
+        this.xs = xs;
+        this.ys = ys;
+
+        int[] linked = new int[size];
+        Arrays.fill(linked, -1);
+        int[] chain = triangulate(linked);
+        neighbors = collect(chain, linked);
+
+        this.xs = null;
+        this.ys = null;
+        triangles = null;
+        halfedges = null;
+        hullPrev = null;
+        hullNext = null;
+        hullTri = null;
+        hullHash = null;
+    }
+
+    /**
+     * Get the neighbours of each point up to the given order (1 = Delaunay edges,
+     * 2 = also the neighbours of neighbours, ...), sorted by index.
+     */
+    public int[][] neighbors(int order) {
+        Preconditions.checkArgument(order >= 1);
+        if (order == 1) {
+            return neighbors;
+        }
+        int[][] result = new int[size][];
+        int[] mark = new int[size];
+        Arrays.fill(mark, -1);
+        int[] reached = new int[16];
+        for (int ii = 0; ii < size; ii++) {
+            mark[ii] = ii;
+            int count = 0;
+            int start = 0;
+            for (int n : neighbors[ii]) {
+                if (mark[n] != ii) {
+                    mark[n] = ii;
+                    reached = append(reached, count++, n);
+                }
+            }
+            for (int depth = 1; depth < order; depth++) {
+                int end = count;
+                for (int jj = start; jj < end; jj++) {
+                    for (int n : neighbors[reached[jj]]) {
+                        if (mark[n] != ii) {
+                            mark[n] = ii;
+                            reached = append(reached, count++, n);
+                        }
+                    }
+                }
+                start = end;
+            }
+            int[] values = Arrays.copyOf(reached, count);
+            Arrays.sort(values);
+            result[ii] = values;
+        }
+        return result;
+    }
+
+    private static int[] append(int[] values, int index, int value) {
+        if (index == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[index] = value;
+        return values;
+    }
+
+    /**
+     * Build the triangulation.
+     *
+     * @param linked - Set to the point each skipped (duplicate) point is attached to.
+     * @return - Points in line order if the input is collinear, else null.
+     */
+    private int[] triangulate(int[] linked) {
+        if (size < 2) {
+            return null;
+        }
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int ii = 0; ii < size; ii++) {
+            minX = Math.min(minX, xs[ii]);
+            maxX = Math.max(maxX, xs[ii]);
+            minY = Math.min(minY, ys[ii]);
+            maxY = Math.max(maxY, ys[ii]);
+        }
+        double x0 = (minX + maxX) / 2;
+        double y0 = (minY + maxY) / 2;
+
+        int i0 = 0;
+        double minDist = Double.POSITIVE_INFINITY;
+        for (int ii = 0; ii < size; ii++) {
+            double d = dist(x0, y0, xs[ii], ys[ii]);
+            if (d < minDist) {
+                i0 = ii;
+                minDist = d;
+            }
+        }
+        int i1 = -1;
+        minDist = Double.POSITIVE_INFINITY;
+        for (int ii = 0; ii < size; ii++) {
+            if (ii == i0) continue;
+            double d = dist(xs[i0], ys[i0], xs[ii], ys[ii]);
+            if (d < minDist && d > 0) {
+                i1 = ii;
+                minDist = d;
+            }
+        }
+        int i2 = -1;
+        double minRadius = Double.POSITIVE_INFINITY;
+        for (int ii = 0; ii < size && i1 >= 0; ii++) {
+            if (ii == i0 || ii == i1) continue;
+            double r = circumradius(i0, i1, ii);
+            if (r < minRadius) {
+                i2 = ii;
+                minRadius = r;
+            }
+        }
+
+        int[] ids = new int[size];
+        double[] dists = new double[size];
+        if (i2 < 0) {
+            // collinear (or coincident) points: order them along the line
+            for (int ii = 0; ii < size; ii++) {
+                ids[ii] = ii;
+                double dx = xs[ii] - xs[i0];
+                dists[ii] = (dx != 0 ? dx : ys[ii] - ys[i0]);
+            }
+            quicksort(ids, dists, 0, size - 1);
+            int previous = -1;
+            int[] chain = new int[size];
+            int count = 0;
+            for (int id : ids) {
+                if (previous >= 0 && xs[id] == xs[previous] && ys[id] == ys[previous]) {
+                    linked[id] = previous;
+                    continue;
+                }
+                chain[count++] = id;
+                previous = id;
+            }
+            return Arrays.copyOf(chain, count);
+        }
+
+        if (orient(xs[i0], ys[i0], i1, i2)) {
+            int t = i1;
+            i1 = i2;
+            i2 = t;
+        }
+        circumcenter(i0, i1, i2);
+        for (int ii = 0; ii < size; ii++) {
+            ids[ii] = ii;
+            dists[ii] = dist(xs[ii], ys[ii], cx, cy);
+        }
+        quicksort(ids, dists, 0, size - 1);
+
+        int maxTriangles = Math.max(2 * size - 5, 1);
+        triangles = new int[maxTriangles * 3];
+        halfedges = new int[maxTriangles * 3];
+        hullPrev = new int[size];
+        hullNext = new int[size];
+        hullTri = new int[size];
+        hullHash = new int[(int) Math.ceil(Math.sqrt(size))];
+        Arrays.fill(hullHash, -1);
+
+        hullStart = i0;
+        hullNext[i0] = hullPrev[i2] = i1;
+        hullNext[i1] = hullPrev[i0] = i2;
+        hullNext[i2] = hullPrev[i1] = i0;
+        hullTri[i0] = 0;
+        hullTri[i1] = 1;
+        hullTri[i2] = 2;
+        hullHash[hashKey(xs[i0], ys[i0])] = i0;
+        hullHash[hashKey(xs[i1], ys[i1])] = i1;
+        hullHash[hashKey(xs[i2], ys[i2])] = i2;
+        addTriangle(i0, i1, i2, -1, -1, -1);
+
+        int run = 0;
+        for (int k = 0; k < size; k++) {
+            int i = ids[k];
+            double x = xs[i];
+            double y = ys[i];
+            if (k > 0 && dists[k] != dists[k - 1]) {
+                run = k;
+            }
+            if (i == i0 || i == i1 || i == i2) continue;
+            // identical points have identical distances: look for a twin in the current run
+            int twin = -1;
+            for (int jj = run; jj < k && twin < 0; jj++) {
+                int other = ids[jj];
+                if (xs[other] == x && ys[other] == y && linked[other] < 0) twin = other;
+            }
+            if (twin >= 0) {
+                linked[i] = twin;
+                continue;
+            }
+
+            int start = 0;
+            int key = hashKey(x, y);
+            for (int jj = 0; jj < hullHash.length; jj++) {
+                start = hullHash[(key + jj) % hullHash.length];
+                if (start != -1 && start != hullNext[start]) break;
+            }
+            start = hullPrev[start];
+            int e = start;
+            int q;
+            while (!orient(x, y, e, q = hullNext[e])) {
+                e = q;
+                if (e == start) {
+                    e = -1;
+                    break;
+                }
+            }
+            if (e == -1) {
+                // numerically inside the hull (near-duplicate): attached to its nearest point later
+                linked[i] = size;
+                continue;
+            }
+
+            int t = addTriangle(e, i, hullNext[e], -1, -1, hullTri[e]);
+            hullTri[i] = legalize(t + 2);
+            hullTri[e] = t;
+
+            int n = hullNext[e];
+            while (orient(x, y, n, q = hullNext[n])) {
+                t = addTriangle(n, i, q, hullTri[i], -1, hullTri[n]);
+                hullTri[i] = legalize(t + 2);
+                hullNext[n] = n;
+                n = q;
+            }
+            if (e == start) {
+                while (orient(x, y, q = hullPrev[e], e)) {
+                    t = addTriangle(q, i, e, -1, hullTri[e], hullTri[q]);
+                    legalize(t + 2);
+                    hullTri[q] = t;
+                    hullNext[e] = e;
+                    e = q;
+                }
+            }
+            hullStart = hullPrev[i] = e;
+            hullNext[e] = hullPrev[n] = i;
+            hullNext[i] = n;
+            hullHash[hashKey(x, y)] = i;
+            hullHash[hashKey(xs[e], ys[e])] = e;
+        }
+        return null;
+    }
+
+    private int legalize(int a) {
+        int i = 0;
+        int ar;
+        while (true) {
+            int b = halfedges[a];
+            int a0 = a - a % 3;
+            ar = a0 + (a + 2) % 3;
+            if (b == -1) {
+                if (i == 0) break;
+                a = stack[--i];
+                continue;
+            }
+            int b0 = b - b % 3;
+            int al = a0 + (a + 1) % 3;
+            int bl = b0 + (b + 2) % 3;
+            int p0 = triangles[ar];
+            int pr = triangles[a];
+            int pl = triangles[al];
+            int p1 = triangles[bl];
+
+            if (inCircle(p0, pr, pl, p1)) {
+                triangles[a] = p1;
+                triangles[b] = p0;
+                int hbl = halfedges[bl];
+                if (hbl == -1) {
+                    // the flipped edge is on the hull: fix the hull triangle reference
+                    int e = hullStart;
+                    do {
+                        if (hullTri[e] == bl) {
+                            hullTri[e] = a;
+                            break;
+                        }
+                        e = hullPrev[e];
+                    } while (e != hullStart);
+                }
+                link(a, hbl);
+                link(b, halfedges[ar]);
+                link(ar, bl);
+                int br = b0 + (b + 1) % 3;
+                if (i == stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[i++] = br;
+            } else {
+                if (i == 0) break;
+                a = stack[--i];
+            }
+        }
+        return ar;
+    }
+
+    private int addTriangle(int i0, int i1, int i2, int a, int b, int c) {
+        int t = trianglesLen;
+        triangles[t] = i0;
+        triangles[t + 1] = i1;
+        triangles[t + 2] = i2;
+        link(t, a);
+        link(t + 1, b);
+        link(t + 2, c);
+        trianglesLen += 3;
+        return t;
+    }
+
+    private void link(int a, int b) {
+        halfedges[a] = b;
+        if (b != -1) halfedges[b] = a;
+    }
+
+    private int hashKey(double x, double y) {
+        double dx = x - cx;
+        double dy = y - cy;
+        double p = dx / (Math.abs(dx) + Math.abs(dy));
+        double angle = (dy > 0 ? 3 - p : 1 + p) / 4;
+        if (Double.isNaN(angle)) angle = 0;
+        return (int) Math.floor(angle * hullHash.length) % hullHash.length;
+    }
+
+    /**
+     * Is (px, py) -> q -> r a counter-clockwise turn (by more than rounding error).
+     */
+    private boolean orient(double px, double py, int q, int r) {
+        double left = (ys[q] - py) * (xs[r] - xs[q]);
+        double right = (xs[q] - px) * (ys[r] - ys[q]);
+        return left - right < -EPSILON * (Math.abs(left) + Math.abs(right));
+    }
+
+    private boolean inCircle(int a, int b, int c, int p) {
+        double dx = xs[a] - xs[p], dy = ys[a] - ys[p];
+        double ex = xs[b] - xs[p], ey = ys[b] - ys[p];
+        double fx = xs[c] - xs[p], fy = ys[c] - ys[p];
+        double ap = dx * dx + dy * dy;
+        double bp = ex * ex + ey * ey;
+        double cp = fx * fx + fy * fy;
+        return dx * (ey * cp - bp * fy) - dy * (ex * cp - bp * fx) + ap * (ex * fy - ey * fx) < 0;
+    }
+
+    private double circumradius(int a, int b, int c) {
+        double dx = xs[b] - xs[a], dy = ys[b] - ys[a];
+        double ex = xs[c] - xs[a], ey = ys[c] - ys[a];
+        double bl = dx * dx + dy * dy;
+        double cl = ex * ex + ey * ey;
+        double d = 0.5 / (dx * ey - dy * ex);
+        double x = (ey * bl - dy * cl) * d;
+        double y = (dx * cl - ex * bl) * d;
+        double r = x * x + y * y;
+        return (Double.isNaN(r) ? Double.POSITIVE_INFINITY : r);
+    }
+
+    private void circumcenter(int a, int b, int c) {
+        double dx = xs[b] - xs[a], dy = ys[b] - ys[a];
+        double ex = xs[c] - xs[a], ey = ys[c] - ys[a];
+        double bl = dx * dx + dy * dy;
+        double cl = ex * ex + ey * ey;
+        double d = 0.5 / (dx * ey - dy * ex);
+        cx = xs[a] + (ey * bl - dy * cl) * d;
+        cy = ys[a] + (dx * cl - ex * bl) * d;
+    }
+
+    private static double dist(double ax, double ay, double bx, double by) {
+        double dx = ax - bx;
+        double dy = ay - by;
+        return dx * dx + dy * dy;
+    }
+
+    private static void quicksort(int[] ids, double[] dists, int left, int right) {
+        while (right - left > 20) {
+            int median = (left + right) >>> 1;
+            int i = left + 1;
+            int j = right;
+            swap(ids, dists, median, i);
+            if (dists[left] > dists[right]) swap(ids, dists, left, right);
+            if (dists[i] > dists[right]) swap(ids, dists, i, right);
+            if (dists[left] > dists[i]) swap(ids, dists, left, i);
+            int temp = ids[i];
+            double tempDist = dists[i];
+            while (true) {
+                do i++; while (dists[i] < tempDist);
+                do j--; while (dists[j] > tempDist);
+                if (j < i) break;
+                swap(ids, dists, i, j);
+            }
+            ids[left + 1] = ids[j];
+            dists[left + 1] = dists[j];
+            ids[j] = temp;
+            dists[j] = tempDist;
+            if (right - i + 1 >= j - left) {
+                quicksort(ids, dists, i, right);
+                right = j - 1;
+            } else {
+                quicksort(ids, dists, left, j - 1);
+                left = i;
+            }
+        }
+        for (int i = left + 1; i <= right; i++) {
+            int temp = ids[i];
+            double tempDist = dists[i];
+            int j = i - 1;
+            while (j >= left && dists[j] > tempDist) {
+                ids[j + 1] = ids[j];
+                dists[j + 1] = dists[j];
+                j--;
+            }
+            ids[j + 1] = temp;
+            dists[j + 1] = tempDist;
+        }
+    }
+
+    private static void swap(int[] ids, double[] dists, int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        double d = dists[i];
+        dists[i] = dists[j];
+        dists[j] = d;
+    }
+
+    private int[][] collect(int[] chain, int[] linked) {
+        int[] degree = new int[size];
+        if (chain != null) {
+            for (int ii = 1; ii < chain.length; ii++) {
+                degree[chain[ii - 1]]++;
+                degree[chain[ii]]++;
+            }
+        } else {
+            for (int e = 0; e < trianglesLen; e++) {
+                if (e > halfedges[e]) {
+                    degree[triangles[e]]++;
+                    degree[triangles[next(e)]]++;
+                }
+            }
+        }
+        int[][] edges = new int[size][];
+        for (int ii = 0; ii < size; ii++) {
+            edges[ii] = new int[degree[ii]];
+        }
+        int[] count = new int[size];
+        if (chain != null) {
+            for (int ii = 1; ii < chain.length; ii++) {
+                int a = chain[ii - 1], b = chain[ii];
+                edges[a][count[a]++] = b;
+                edges[b][count[b]++] = a;
+            }
+        } else {
+            for (int e = 0; e < trianglesLen; e++) {
+                if (e > halfedges[e]) {
+                    int a = triangles[e], b = triangles[next(e)];
+                    edges[a][count[a]++] = b;
+                    edges[b][count[b]++] = a;
+                }
+            }
+        }
+        // skipped points take the neighbours of the point they are attached to, plus that point
+        for (int ii = 0; ii < size; ii++) {
+            if (linked[ii] == size) {
+                linked[ii] = nearest(ii, linked);
+            }
+        }
+        for (int ii = 0; ii < size; ii++) {
+            int target = linked[ii];
+            if (target < 0) continue;
+            int[] values = Arrays.copyOf(edges[target], edges[target].length + 1);
+            values[values.length - 1] = target;
+            edges[ii] = values;
+            for (int n : values) {
+                edges[n] = Arrays.copyOf(edges[n], edges[n].length + 1);
+                edges[n][edges[n].length - 1] = ii;
+            }
+        }
+        for (int ii = 0; ii < size; ii++) {
+            Arrays.sort(edges[ii]);
+        }
+        return edges;
+    }
+
+    private int nearest(int index, int[] linked) {
+        int nearest = -1;
+        double min = Double.POSITIVE_INFINITY;
+        for (int ii = 0; ii < size; ii++) {
+            if (ii == index || linked[ii] >= 0) continue;
+            double d = dist(xs[index], ys[index], xs[ii], ys[ii]);
+            if (d < min) {
+                nearest = ii;
+                min = d;
+            }
+        }
+        return nearest;
+    }
+
+    private static int next(int e) {
+        return (e % 3 == 2) ? e - 2 : e + 1;
+    }
+}
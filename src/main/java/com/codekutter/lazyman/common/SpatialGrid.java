@@ -0,0 +1,153 @@
+package com.codekutter.lazyman.common;
+
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+
+/**
+ * Uniform grid over 2D coordinates for k-nearest neighbour queries.
+ * Points are indexed 0..n-1; cells are square and hold about two points each on average.
+ */
+@Getter
+@Accessors(fluent = true)
+public class SpatialGrid {
+    private static final int POINTS_PER_CELL = 2;
+
+    private final double[] xs;
+    private final double[] ys;
+    private final double minX;
+    private final double minY;
+    private final double side;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStart;
+    private final int[] cellPoints;
+
+    public SpatialGrid(@NonNull double[] xs, @NonNull double[] ys) {
+        Preconditions.checkArgument(xs.length == ys.length);
+        Preconditions.checkArgument(xs.length > 0);
+        this.xs = xs;
+        this.ys = ys;
+        int size = xs.length;
+
+        double x0 = Double.POSITIVE_INFINITY, x1 = Double.NEGATIVE_INFINITY;
+        double y0 = Double.POSITIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+        for (int ii = 0; ii < size; ii++) {
+            x0 = Math.min(x0, xs[ii]);
+            x1 = Math.max(x1, xs[ii]);
+            y0 = Math.min(y0, ys[ii]);
+            y1 = Math.max(y1, ys[ii]);
+        }
+        minX = x0;
+        minY = y0;
+
+        int cells = Math.max(1, size / POINTS_PER_CELL);
+        double width = x1 - x0;
+        double height = y1 - y0;
+        double span = Math.max(width, height);
+        if (span <= 0) {
+            span = 1;
+        }
+        // never more cells along an axis than there are cells in total (degenerate, collinear inputs)
+        side = Math.max(Math.sqrt((width * height) / cells), span / cells);
+        columns = (int) (width / side) + 1;
+        rows = (int) (height / side) + 1;
+
+        cellStart = new int[columns * rows + 1];
+        int[] cellOf = new int[size];
+        for (int ii = 0; ii < size; ii++) {
+            cellOf[ii] = cell(column(xs[ii]), row(ys[ii]));
+            cellStart[cellOf[ii] + 1]++;
+        }
+        for (int ii = 0; ii < columns * rows; ii++) {
+            cellStart[ii + 1] += cellStart[ii];
+        }
+        cellPoints = new int[size];
+        int[] fill = new int[columns * rows];
+        for (int ii = 0; ii < size; ii++) {
+            int cell = cellOf[ii];
+            cellPoints[cellStart[cell] + fill[cell]++] = ii;
+        }
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * Get the (up to) count nearest points to the indexed point, excluding itself,
+     * in ascending distance order (ties by ascending index).
+     */
+    public int[] nearest(int index, int count) {
+        Preconditions.checkElementIndex(index, xs.length);
+        count = Math.min(count, xs.length - 1);
+        if (count <= 0) {
+            return new int[0];
+        }
+        double x = xs[index];
+        double y = ys[index];
+        int cx = column(x);
+        int cy = row(y);
+        int[] nearest = new int[count];
+        double[] distances = new double[count];
+        int found = 0;
+        int limit = Math.max(columns, rows);
+        for (int r = 0; r <= limit; r++) {
+            if (found == count && r > 0) {
+                // every point outside rings [0, r) is more than (r - 1) cells away
+                double reach = (r - 1) * side;
+                if (distances[count - 1] <= reach * reach) break;
+            }
+            for (int row = cy - r; row <= cy + r; row++) {
+                if (row < 0 || row >= rows) continue;
+                boolean edge = (row == cy - r || row == cy + r);
+                int step = (edge ? 1 : Math.max(1, 2 * r));
+                for (int column = cx - r; column <= cx + r; column += step) {
+                    if (column < 0 || column >= columns) continue;
+                    int cell = cell(column, row);
+                    for (int ii = cellStart[cell]; ii < cellStart[cell + 1]; ii++) {
+                        int point = cellPoints[ii];
+                        if (point == index) continue;
+                        double dx = xs[point] - x;
+                        double dy = ys[point] - y;
+                        double d = (dx * dx) + (dy * dy);
+                        if (found == count && !closer(d, point, distances[count - 1], nearest[count - 1])) {
+                            continue;
+                        }
+                        int jj = (found < count ? found++ : count - 1);
+                        while (jj > 0 && closer(d, point, distances[jj - 1], nearest[jj - 1])) {
+                            distances[jj] = distances[jj - 1];
+                            nearest[jj] = nearest[jj - 1];
+                            jj--;
+                        }
+                        distances[jj] = d;
+                        nearest[jj] = point;
+                    }
+                }
+            }
+        }
+        if (found < count) {
+            int[] result = new int[found];
+            System.arraycopy(nearest, 0, result, 0, found);
+            return result;
+        }
+        return nearest;
+    }
+
+    private static boolean closer(double d1, int p1, double d2, int p2) {
+        return d1 < d2 || (d1 == d2 && p1 < p2);
+    }
+
+    private int column(double x) {
+        return Math.min(columns - 1, (int) ((x - minX) / side));
+    }
+
+    private int row(double y) {
+        return Math.min(rows - 1, (int) ((y - minY) / side));
+    }
+
+    private int cell(int column, int row) {
+        return row * columns + column;
+    }
+}
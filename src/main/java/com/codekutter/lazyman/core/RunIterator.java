@@ -32,6 +32,11 @@ public class RunIterator {
             for (int ii = 0; ii < connection.connections().length; ii++) {
                 if (connection.connections()[ii] != null) continue;
                 Path path = reserve(point, connection, ii, paths, paths.length);
+                while (path == null && data.isSparse() && data.extend(point.sequence())) {
+                    paths = data.get(point.sequence());
+                    Arrays.sort(paths, new Path.SortByDistance());
+                    path = reserve(point, connection, ii, paths, paths.length);
+                }
                 if (path != null) {
                     Point t = path.getTarget(point);
                     connections.add(path);
@@ -2,6 +2,7 @@ package com.codekutter.lazyman.core;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
+import com.codekutter.lazyman.common.AlphaNearness;
 import com.codekutter.lazyman.common.Config;
 import com.codekutter.lazyman.common.LogUtils;
 import com.codekutter.lazyman.core.model.*;
@@ -32,6 +33,16 @@ public class Runner {
     private String tourfile;
     @Parameter(names = {"--view", "-v"}, description = "View output.")
     private boolean view = false;
+    @Parameter(names = {"--delaunay", "-g"}, description = "Only load paths to Delaunay neighbours up to this order (0 = all paths).")
+    private int delaunay = 0;
+    @Parameter(names = {"--alpha", "-a"}, description = "Only load paths to this many alpha-nearness candidates per point (0 = off).")
+    private int alpha = 0;
+    @Parameter(names = {"--ascent"}, description = "Maximum subgradient iterations for the alpha-nearness 1-tree.")
+    private int ascent = AlphaNearness.DEFAULT_ITERATIONS;
+    @Parameter(names = {"--integral", "-i"}, description = "Use the integer TSPLIB distances instead of raw Euclidean lengths.")
+    private boolean integral = false;
+    @Parameter(names = {"--distance-cache"}, description = "Rows of candidate distances cached with --integral and -g or -a (0 = none).")
+    private int distanceCache = 0;
     @Setter(AccessLevel.NONE)
     private TSPDataReader reader;
     @Setter(AccessLevel.NONE)
@@ -50,8 +61,14 @@ public class Runner {
                 type = DataType.valueOf(tspDataType);
             }
             reader = new TSPDataReader(tspData, type);
+            reader.integral(integral);
+            reader.distanceCache(distanceCache);
             reader.read();
-            reader.load();
+            if (alpha > 0) {
+                reader.loadAlpha(alpha, ascent);
+            } else {
+                reader.load(delaunay);
+            }
 
             if (!Strings.isNullOrEmpty(tourfile)) {
                 reader.readTours(tourfile);
@@ -97,6 +114,12 @@ public class Runner {
                 rings = detectRings();
             }
             LogUtils.info(getClass(), String.format("Reached equilibrium : [#iterations=%d][time=%d]", iteration, (System.currentTimeMillis() - st)));
+            if (reader.lowerBound() > 0) {
+                LogUtils.info(getClass(), String.format("Lower bound : [1-tree=%f]", reader.lowerBound()));
+            }
+            if (reader.distanceRows() != null) {
+                LogUtils.info(getClass(), String.format("Distance row cache. [%s]", reader.distanceRows()));
+            }
             OutputPrinter.print(reader.cache(), connections, iteration, rings);
 
         } catch (Exception ex) {
@@ -1,5 +1,6 @@
 package com.codekutter.lazyman.core;
 
+import com.codekutter.lazyman.common.AlphaNearness;
 import com.codekutter.lazyman.core.model.Path;
 import com.codekutter.lazyman.core.model.Point;
 import com.google.common.base.Preconditions;
@@ -30,6 +31,12 @@ public class TSPDataMap implements Closeable {
     private Point[] points;
     @Setter(AccessLevel.NONE)
     private Map<String, double[]> minDistances = new HashMap<>();
+    @Setter(AccessLevel.NONE)
+    private int[][] neighbors;
+    /**
+     * Distance between two points (sequences), null for the Euclidean length.
+     */
+    private AlphaNearness.Distances distances;
 
     public void init(@NonNull String name, int size) {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(name));
@@ -40,19 +47,47 @@ public class TSPDataMap implements Closeable {
         this.size = size;
     }
 
+    /**
+     * Initialize a sparse map: each point only holds the paths to its neighbours (sorted indexes),
+     * other pairs are returned as detached paths that are not stored.
+     */
+    public void init(@NonNull String name, int size, @NonNull int[][] neighbors) {
+        Preconditions.checkArgument(neighbors.length == size);
+        init(name, size);
+        this.neighbors = neighbors;
+    }
+
+    public boolean isSparse() {
+        return neighbors != null;
+    }
+
     public Path get(int ii, int index) {
         if (cache.containsKey(ii)) {
             Path[] paths = cache.get(ii);
             for (Path p : paths) {
+                if (p == null) continue;
                 Point t = p.getTarget(ii);
                 if (t.sequence() == index) {
                     return p;
                 }
             }
         }
+        if (isSparse() && ii != index && points[ii] != null && points[index] != null) {
+            return path(ii, index);
+        }
         return null;
     }
 
+    /**
+     * Create a (detached) path between two points.
+     */
+    public Path path(int ii, int jj) {
+        if (distances == null) {
+            return new Path(points[ii], points[jj]);
+        }
+        return new Path(points[ii], points[jj], distances.distance(ii, jj));
+    }
+
     public Path put(int ii, int jj, @NonNull Path path) {
         Preconditions.checkArgument(ii >= 0);
         Preconditions.checkArgument(jj >= 0);
@@ -80,10 +115,76 @@ public class TSPDataMap implements Closeable {
     private void putTo(int index, int target, Path path) {
         Path[] paths = cache.get(index);
         if (paths == null) {
-            paths = new Path[size];
+            paths = new Path[isSparse() ? neighbors[index].length : size];
             cache.put(index, paths);
         }
-        paths[target] = path;
+        if (isSparse()) {
+            int position = Arrays.binarySearch(neighbors[index], target);
+            if (position < 0) {
+                throw new IllegalArgumentException(String.format("Target is not a neighbour. [sequence=%d][target=%d]", index, target));
+            }
+            paths[position] = path;
+        } else {
+            paths[target] = path;
+        }
+    }
+
+    /**
+     * Sparse map only: add the paths to the neighbours of the point's neighbours.
+     *
+     * @return - True if new paths were added.
+     */
+    public boolean extend(int sequence) {
+        Preconditions.checkState(isSparse());
+        int[] current = neighbors[sequence];
+        int[] added = new int[size];
+        int count = 0;
+        boolean[] seen = new boolean[size];
+        seen[sequence] = true;
+        for (int target : current) {
+            seen[target] = true;
+        }
+        for (int target : current) {
+            for (int next : neighbors[target]) {
+                if (!seen[next]) {
+                    seen[next] = true;
+                    added[count++] = next;
+                }
+            }
+        }
+        if (count == 0) {
+            return false;
+        }
+        for (int ii = 0; ii < count; ii++) {
+            int target = added[ii];
+            Path path = path(sequence, target);
+            append(sequence, path);
+            append(target, path);
+            neighbors[target] = insert(neighbors[target], sequence);
+        }
+        int[] merged = Arrays.copyOf(current, current.length + count);
+        System.arraycopy(added, 0, merged, current.length, count);
+        Arrays.sort(merged);
+        neighbors[sequence] = merged;
+        return true;
+    }
+
+    private void append(int index, Path path) {
+        Path[] paths = cache.get(index);
+        paths = Arrays.copyOf(paths, paths.length + 1);
+        paths[paths.length - 1] = path;
+        cache.put(index, paths);
+    }
+
+    private static int[] insert(int[] values, int value) {
+        int position = Arrays.binarySearch(values, value);
+        if (position >= 0) return values;
+        position = -position - 1;
+        int[] result = new int[values.length + 1];
+        System.arraycopy(values, 0, result, 0, position);
+        result[position] = value;
+        System.arraycopy(values, position, result, position + 1, values.length - position);
+        return result;
     }
 
     public void togglePath(int s1, int s2, boolean useable) {
@@ -111,6 +212,10 @@ public class TSPDataMap implements Closeable {
                 if (p != null) return p.distance();
             }
         }
+        if (isSparse()) {
+            Path p = get(s1, s2);
+            if (p != null) return p.distance();
+        }
         return -1;
     }
 
@@ -130,6 +235,10 @@ public class TSPDataMap implements Closeable {
                 if (p != null) return p.length();
             }
         }
+        if (isSparse()) {
+            Path p = get(s1, s2);
+            if (p != null) return p.length();
+        }
         return -1;
     }
 
@@ -168,6 +277,7 @@ public class TSPDataMap implements Closeable {
 
     private Path find(Path[] paths, int sequence) {
         for (Path p : paths) {
+            if (p == null) continue;
             if (p.A().sequence() == sequence || p.B().sequence() == sequence) return p;
         }
         return null;
@@ -188,5 +298,6 @@ public class TSPDataMap implements Closeable {
         }
         cache = null;
         points = null;
+        neighbors = null;
     }
 }
@@ -1,20 +1,24 @@
 package com.codekutter.lazyman.core;
 
+import com.codekutter.lazyman.common.AlphaNearness;
+import com.codekutter.lazyman.common.DelaunayTriangulation;
 import com.codekutter.lazyman.common.LogUtils;
+import com.codekutter.lazyman.common.SpatialGrid;
 import com.codekutter.lazyman.core.model.Path;
 import com.codekutter.lazyman.core.model.Point;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.primitives.Ints;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.moeaframework.problem.tsplib.*;
 
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 @Getter
 @Accessors(fluent = true)
@@ -25,6 +29,18 @@ public class TSPDataReader implements Closeable {
     private TSPInstance data;
     private TSPDataMap cache;
     private List<Tour> tours;
+    private double lowerBound = -1;
+    /**
+     * Use the (integer) TSPLIB distances of the instance instead of raw Euclidean lengths.
+     */
+    @Setter
+    private boolean integral = false;
+    /**
+     * Rows of integral candidate distances kept in memory (0 = compute every distance when requested).
+     */
+    @Setter
+    private int distanceCache = 0;
+    private CachedDistanceTable distanceRows;
 
     public TSPDataReader(@NonNull String filename, @NonNull DataType dataType) {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(filename));
@@ -52,29 +68,60 @@ public class TSPDataReader implements Closeable {
         if (!fi.exists()) {
             throw new IOException(String.format("File not found. [path=%s]", fi.getAbsolutePath()));
         }
-        data = new TSPInstance(fi);
+        data = new TSPInstance();
+        if (integral) {
+            data.setEdgeWeightStorage(EdgeWeightStorage.INTEGER);
+        }
+        data.loadMapped(fi);
         if (data.getDataType() != dataType) {
             throw new IOException(String.format("Invalid file Data type. [path=%s][type=%s][expected type=%s]",
                     fi.getAbsolutePath(), data.getDataType().name(), dataType.name()));
         }
+        if (integral && data.getDistanceTable() instanceof NodeCoordinates && !data.getEdgeWeightType().isIntegral()) {
+            throw new IOException(String.format("Edge weight type is not integral. [path=%s][type=%s]",
+                    fi.getAbsolutePath(), data.getEdgeWeightType().name()));
+        }
         name = fi.getName();
         return data;
     }
 
     public void load() throws Exception {
+        load(0);
+    }
+
+    /**
+     * Load the paths. With delaunay > 0 (coordinate instances only) the map is sparse: each point
+     * only holds the paths to its Delaunay neighbours, up to the given order.
+     */
+    public void load(int delaunay) throws Exception {
         Preconditions.checkArgument(data != null);
+        Preconditions.checkArgument(delaunay >= 0);
 
         if (cache != null) {
             cache.close();
         }
         cache = new TSPDataMap();
-        cache.init(name, data.getDimension());
 
         DistanceTable dt = data.getDistanceTable();
         if (dt instanceof NodeCoordinates) {
             NodeCoordinates coords = (NodeCoordinates) dt;
+            int[][] neighbors = null;
+            if (delaunay > 0) {
+                neighbors = triangulate(coords, delaunay);
+                cache.init(name, data.getDimension(), neighbors);
+            } else {
+                cache.init(name, data.getDimension());
+            }
+            if (integral) {
+                double[][] xy = coordinates(coords);
+                cache.distances(cached(distances(coords, xy[0], xy[1]), neighbors));
+            }
             readNodeCoordinates(coords);
         } else if (dt instanceof EdgeWeightMatrix) {
+            if (delaunay > 0) {
+                LogUtils.warn(getClass(), String.format("Delaunay candidates require node coordinates, loading all paths. [name=%s]", name));
+            }
+            cache.init(name, data.getDimension());
             readEdgeWeightMatrix((EdgeWeightMatrix) dt);
         }
         cache.postLoad();
@@ -86,12 +133,10 @@ public class TSPDataReader implements Closeable {
             for (int ii = 1; ii <= nodes.length; ii++) {
                 Point p = new Point();
                 p.sequence(ii - 1);
-                if (data.getDisplayData() != null) {
-                    Node node = data.getDisplayData().get(ii);
-                    if (node != null) {
-                        p.X(node.getPosition()[0]);
-                        p.Y(node.getPosition()[1]);
-                    }
+                NodeCoordinates display = data.getDisplayData();
+                if (display != null && display.contains(ii)) {
+                    p.X(display.getX(ii));
+                    p.Y(display.getY(ii));
                 }
                 cache.points()[ii - 1] = p;
             }
@@ -109,27 +154,170 @@ public class TSPDataReader implements Closeable {
 
     private void readNodeCoordinates(NodeCoordinates coords) {
         for (int ii = 1; ii <= coords.size(); ii++) {
-            Node node = coords.get(ii);
-            if (node != null) {
+            if (coords.contains(ii)) {
                 Point point = new Point();
                 point.sequence(ii - 1);
-                point.X(node.getPosition()[0]);
-                point.Y(node.getPosition()[1]);
+                point.X(coords.getX(ii));
+                point.Y(coords.getY(ii));
 
                 cache.points()[ii - 1] = point;
             }
         }
         for (int ii = 0; ii < cache.points().length; ii++) {
             LogUtils.info(getClass(), String.format("Loading path. [sequence=%d]...", ii));
-            for (int jj = 0; jj < cache.points().length; jj++) {
+            int[] targets = (cache.isSparse() ? cache.neighbors()[ii] : null);
+            int count = (targets != null ? targets.length : cache.points().length);
+            for (int kk = 0; kk < count; kk++) {
+                int jj = (targets != null ? targets[kk] : kk);
                 if (jj <= ii) continue;
-                Path path = new Path(cache.points()[ii], cache.points()[jj]);
+                Path path = cache.path(ii, jj);
                 cache.put(cache.points()[ii].sequence(), cache.points()[jj].sequence(), path);
                 LogUtils.debug(getClass(), String.format("Added path [sequence=%d][index=%d][path=%s]", ii, jj, path));
             }
         }
     }
 
+    /**
+     * Load a sparse map on the count alpha-nearest candidates of each point (coordinate instances only),
+     * keeping the 1-tree cost as the lower bound.
+     */
+    public void loadAlpha(int count, int iterations) throws Exception {
+        Preconditions.checkArgument(data != null);
+        Preconditions.checkArgument(count >= 2);
+
+        DistanceTable dt = data.getDistanceTable();
+        if (!(dt instanceof NodeCoordinates)) {
+            LogUtils.warn(getClass(), String.format("Alpha-nearness candidates require node coordinates, loading all paths. [name=%s]", name));
+            load();
+            return;
+        }
+        if (cache != null) {
+            cache.close();
+        }
+        cache = new TSPDataMap();
+
+        NodeCoordinates coords = (NodeCoordinates) dt;
+        double[][] xy = coordinates(coords);
+        double[] xs = xy[0];
+        double[] ys = xy[1];
+        int[][] graph = new DelaunayTriangulation(xs, ys).neighbors(2);
+        // the ascent runs over the graph edges, the candidates are mostly among them
+        AlphaNearness.Distances distances = distances(coords, xs, ys);
+        if (integral) {
+            distances = cached(distances, graph);
+        }
+        long start = System.currentTimeMillis();
+        AlphaNearness alpha = new AlphaNearness(xs.length, distances, graph).optimize(iterations);
+        lowerBound = alpha.lowerBound();
+        int[][] neighbors = withNearest(alpha.candidates(count), xs, ys);
+        LogUtils.info(getClass(), String.format("Alpha-nearness candidates. [points=%d][count=%d][iterations=%d][lower bound=%f][time=%dms]",
+                xs.length, count, alpha.iterations(), lowerBound, System.currentTimeMillis() - start));
+
+        cache.init(name, xs.length, neighbors);
+        if (integral) {
+            cache.distances(distances);
+        }
+        readNodeCoordinates(coords);
+        cache.postLoad();
+    }
+
+    private double[][] coordinates(NodeCoordinates coords) {
+        int size = data.getDimension();
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        for (int ii = 1; ii <= size; ii++) {
+            if (coords.contains(ii)) {
+                xs[ii - 1] = coords.getX(ii);
+                ys[ii - 1] = coords.getY(ii);
+            }
+        }
+        return new double[][]{xs, ys};
+    }
+
+    /**
+     * Raw Euclidean lengths, or the instance distance function (rounded as defined by TSPLIB) in integral mode.
+     */
+    private AlphaNearness.Distances distances(NodeCoordinates coords, double[] xs, double[] ys) {
+        if (integral) {
+            PreparedDistance prepared = coords.getDistanceFunction().prepare(xs, ys);
+            return prepared::distance;
+        }
+        return (s, t) -> {
+            double x = xs[s] - xs[t];
+            double y = ys[s] - ys[t];
+            return Math.sqrt((x * x) + (y * y));
+        };
+    }
+
+    /**
+     * The integral distances through a bounded cache of candidate rows when a capacity is set: the row
+     * of a point holds the distances to its neighbours in the graph. Without a graph every path is loaded,
+     * each distance is computed once and there is nothing to cache.
+     */
+    private AlphaNearness.Distances cached(AlphaNearness.Distances distances, int[][] graph) {
+        Preconditions.checkArgument(distanceCache >= 0);
+        if (distanceCache == 0 || graph == null) {
+            return distances;
+        }
+        int[] nodes = new int[graph.length];
+        for (int ii = 0; ii < nodes.length; ii++) {
+            nodes[ii] = ii;
+        }
+        distanceRows = new CachedDistanceTable(new DistanceLookup() {
+            @Override
+            public int[] listNodes() {
+                return nodes.clone();
+            }
+
+            @Override
+            public double getDistanceBetween(int source, int target) {
+                return distances.distance(source, target);
+            }
+        }, distanceCache, true, graph);
+        LogUtils.info(getClass(), String.format("Distance row cache. [points=%d][capacity=%d]", nodes.length, distanceCache));
+        return distanceRows::getDistanceBetween;
+    }
+
+    private int[][] triangulate(NodeCoordinates coords, int order) {
+        double[][] xy = coordinates(coords);
+        long start = System.currentTimeMillis();
+        int[][] neighbors = withNearest(new DelaunayTriangulation(xy[0], xy[1]).neighbors(order), xy[0], xy[1]);
+        long edges = 0;
+        for (int[] values : neighbors) {
+            edges += values.length;
+        }
+        LogUtils.info(getClass(), String.format("Delaunay candidate graph. [points=%d][order=%d][edges=%d][time=%dms]",
+                neighbors.length, order, edges / 2, System.currentTimeMillis() - start));
+        return neighbors;
+    }
+
+    /**
+     * Make the candidate lists symmetric and add the two nearest points of each point (minimum distances).
+     */
+    private int[][] withNearest(int[][] candidates, double[] xs, double[] ys) {
+        int size = candidates.length;
+        SpatialGrid grid = new SpatialGrid(xs, ys);
+        List<Set<Integer>> merged = new ArrayList<>(size);
+        for (int[] values : candidates) {
+            merged.add(new HashSet<>(Ints.asList(values)));
+        }
+        for (int ii = 0; ii < size; ii++) {
+            for (int target : candidates[ii]) {
+                merged.get(target).add(ii);
+            }
+            for (int target : grid.nearest(ii, 2)) {
+                merged.get(ii).add(target);
+                merged.get(target).add(ii);
+            }
+        }
+        int[][] neighbors = new int[size][];
+        for (int ii = 0; ii < size; ii++) {
+            neighbors[ii] = Ints.toArray(merged.get(ii));
+            Arrays.sort(neighbors[ii]);
+        }
+        return neighbors;
+    }
+
     public List<Path> getSortedPaths(int sequence) {
         Preconditions.checkArgument(sequence >= 0);
 
@@ -0,0 +1,144 @@
+package com.codekutter.lazyman.v2;
+
+import com.codekutter.lazyman.v2.utils.Utils;
+import com.google.common.base.Preconditions;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+import java.util.stream.IntStream;
+
+/**
+ * The lowest bids placed by each point, in primitive arrays: a row keeps at most capacity bids
+ * (in a bounded max-heap while they are being set) ordered by bid and then target sequence.
+ * Once sorted, the bid and target of a rank are looked up in constant time. A row that had to drop
+ * bids is flagged as truncated: its higher ranks are only available from the source of the bids.
+ */
+@Getter
+@Accessors(fluent = true)
+public class BidMatrix {
+    private final int size;
+    private final int capacity;
+    @Getter(AccessLevel.NONE)
+    private final double[] bids;
+    @Getter(AccessLevel.NONE)
+    private final int[] targets;
+    @Getter(AccessLevel.NONE)
+    private final int[] counts;
+    @Getter(AccessLevel.NONE)
+    private final boolean[] truncated;
+    private boolean sorted = false;
+
+    public BidMatrix(int size, int capacity) {
+        Preconditions.checkArgument(size > 0);
+        Preconditions.checkArgument(capacity > 0);
+        this.size = size;
+        this.capacity = capacity;
+        bids = new double[size * capacity];
+        targets = new int[size * capacity];
+        counts = new int[size];
+        truncated = new boolean[size];
+    }
+
+    /**
+     * Set the bid of the point for the target (at most once per pair): only the lowest capacity
+     * bids of a row are kept. Rows of different points may be set concurrently.
+     */
+    public void set(int point, int target, double bid) {
+        Preconditions.checkState(!sorted);
+        int offset = point * capacity;
+        int count = counts[point];
+        if (count < capacity) {
+            counts[point]++;
+            siftUp(offset, count, target, bid);
+        } else {
+            truncated[point] = true;
+            if (compare(bid, target, bids[offset], targets[offset]) < 0) {
+                siftDown(offset, count, 0, target, bid);
+            }
+        }
+    }
+
+    /**
+     * Order every row by ascending bid (heap sort in place, rows in parallel).
+     */
+    public void sort() {
+        IntStream.range(0, size).parallel().forEach(point -> {
+            int offset = point * capacity;
+            for (int end = counts[point] - 1; end > 0; end--) {
+                double bid = bids[offset + end];
+                int target = targets[offset + end];
+                bids[offset + end] = bids[offset];
+                targets[offset + end] = targets[offset];
+                siftDown(offset, end, 0, target, bid);
+            }
+        });
+        sorted = true;
+    }
+
+    public int count(int point) {
+        return counts[point];
+    }
+
+    /**
+     * Whether the row dropped bids higher than the ones it keeps.
+     */
+    public boolean truncated(int point) {
+        return truncated[point];
+    }
+
+    public double bid(int point, int rank) {
+        Preconditions.checkState(sorted);
+        Preconditions.checkArgument(rank >= 0 && rank < counts[point]);
+        return bids[point * capacity + rank];
+    }
+
+    public int target(int point, int rank) {
+        Preconditions.checkState(sorted);
+        Preconditions.checkArgument(rank >= 0 && rank < counts[point]);
+        return targets[point * capacity + rank];
+    }
+
+    /**
+     * The bid a target must not exceed to be among the point's rank + 1 lowest bids (the highest
+     * bid kept when the row holds fewer).
+     */
+    public double threshold(int point, int rank) {
+        return bid(point, Math.min(rank, counts[point] - 1));
+    }
+
+    private void siftUp(int offset, int index, int target, double bid) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (compare(bid, target, bids[offset + parent], targets[offset + parent]) <= 0) break;
+            bids[offset + index] = bids[offset + parent];
+            targets[offset + index] = targets[offset + parent];
+            index = parent;
+        }
+        bids[offset + index] = bid;
+        targets[offset + index] = target;
+    }
+
+    private void siftDown(int offset, int count, int index, int target, double bid) {
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= count) break;
+            if (child + 1 < count
+                    && compare(bids[offset + child + 1], targets[offset + child + 1],
+                    bids[offset + child], targets[offset + child]) > 0) {
+                child++;
+            }
+            if (compare(bid, target, bids[offset + child], targets[offset + child]) >= 0) break;
+            bids[offset + index] = bids[offset + child];
+            targets[offset + index] = targets[offset + child];
+            index = child;
+        }
+        bids[offset + index] = bid;
+        targets[offset + index] = target;
+    }
+
+    private static int compare(double b1, int t1, double b2, int t2) {
+        int c = Utils.compareTo(b1, b2);
+        return (c != 0 ? c : Integer.compare(t1, t2));
+    }
+}
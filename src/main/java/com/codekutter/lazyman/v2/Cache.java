@@ -1,27 +1,88 @@
 package com.codekutter.lazyman.v2;
 
+import com.codekutter.lazyman.common.SpatialGrid;
 import com.codekutter.lazyman.v2.model.Path;
 import com.codekutter.lazyman.v2.model.Point;
-import com.codekutter.lazyman.v2.utils.Utils;
 import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
 import lombok.Getter;
+import lombok.NonNull;
 import lombok.experimental.Accessors;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 @Getter
 @Accessors(fluent = true)
 public class Cache {
-    public static class PointBid {
-        public int sequence;
-        public Point point;
-        public double bid;
-    }
+    // bids kept per point: the thresholds are read within MAX_BIDS of a row, and a truncated own row
+    // is completed from the point's paths (see Run.compareBids)
+    public static final int BID_CAPACITY = 4 * Run.MAX_BIDS;
 
     private Map<String, Point> points;
     private List<String> index;
     private int size;
-    private List<List<PointBid>> bids;
+    private BidMatrix bids;
+    private DistanceSource distances;
+    private int candidates;
+    private SpatialGrid grid;
+    private int[][] neighbors;
+    private int[][] ranked;
+
+    /**
+     * Initialize an implicit cache: distances are read from the source and paths are only
+     * created when first requested. Points are sorted on their nearest candidates only.
+     */
+    public Cache init(int size, @NonNull DistanceSource distances, int candidates) {
+        Preconditions.checkArgument(candidates >= 2 && candidates < size);
+        init(size);
+        this.distances = distances;
+        this.candidates = candidates;
+        return this;
+    }
+
+    /**
+     * Initialize an implicit cache whose candidates are found using the spatial grid
+     * (the distances must be Euclidean over the grid coordinates).
+     */
+    public Cache init(int size, @NonNull DistanceSource distances, @NonNull SpatialGrid grid, int candidates) {
+        Preconditions.checkArgument(grid.size() == size);
+        init(size, distances, candidates);
+        this.grid = grid;
+        return this;
+    }
+
+    /**
+     * Initialize an implicit cache whose candidates are the nearest points plus the given
+     * neighbours (e.g. the Delaunay graph), so that the candidate graph stays connected.
+     */
+    public Cache init(int size, @NonNull DistanceSource distances, @NonNull SpatialGrid grid,
+                      @NonNull int[][] neighbors, int candidates) {
+        Preconditions.checkArgument(neighbors.length == size);
+        init(size, distances, grid, candidates);
+        this.neighbors = neighbors;
+        return this;
+    }
+
+    /**
+     * Initialize an implicit cache whose candidates are given per point in rank order
+     * (e.g. alpha-nearness). Extending a point's candidates appends its nearest points.
+     */
+    public Cache init(int size, @NonNull DistanceSource distances, SpatialGrid grid, @NonNull int[][] ranked) {
+        Preconditions.checkArgument(ranked.length == size);
+        int count = 2;
+        for (int[] values : ranked) {
+            count = Math.max(count, values.length);
+        }
+        init(size, distances, Math.min(count, size - 1));
+        this.grid = grid;
+        this.ranked = ranked;
+        return this;
+    }
+
+    public boolean isImplicit() {
+        return distances != null;
+    }
 
     public Cache init(int size) {
         Preconditions.checkArgument(size > 0);
@@ -31,36 +92,27 @@ public class Cache {
             index.add(null);
         }
         this.size = size;
-        bids = new ArrayList<>(size);
+        bids = new BidMatrix(size, Math.min(BID_CAPACITY, size));
+        // a point holds the lowest possible bid for itself, which the thresholds of its row count
         for (int ii = 0; ii < size; ii++) {
-            List<PointBid> values = new ArrayList<>(size);
-            for (int jj = 0; jj < size; jj++) {
-                PointBid pb = new PointBid();
-                pb.sequence = jj;
-                pb.bid = Double.MIN_VALUE;
-                values.add(pb);
-            }
-            bids.add(values);
+            bids.set(ii, ii, Double.MIN_VALUE);
         }
         return this;
     }
 
     public void setBid(int point, Point target, double value) {
-        List<PointBid> values = bids.get(point);
-        PointBid bid = values.get(target.sequence());
-        bid.point = target;
-        bid.bid = value;
-    }
-
-    public PointBid getBid(int point, int target) {
-        List<PointBid> values = bids.get(point);
-        return values.get(target);
+        bids.set(point, target.sequence(), value);
     }
 
     public Point add(int sequence, Double X, Double Y) throws Exception {
         if (X == null) X = -1.0;
         if (Y == null) Y = -1.0;
-        Point point = new Point(sequence, X, Y, size);
+        Point point;
+        if (isImplicit()) {
+            point = new Point(sequence, X, Y, target -> materialize(sequence, target));
+        } else {
+            point = new Point(sequence, X, Y, size);
+        }
         String key = point.toString();
         if (points.containsKey(key)) {
             throw new Exception(String.format("Point already loaded. [point=%s]", point));
@@ -92,6 +144,55 @@ public class Cache {
         return p;
     }
 
+    /**
+     * Register the upper-triangle paths (rows[ii][jj - ii - 1] for jj > ii) with both end points.
+     * Points are processed in parallel, each receiving its paths in ascending target order.
+     */
+    public void addAll(@NonNull Path[][] rows) {
+        Preconditions.checkArgument(rows.length == size);
+        IntStream.range(0, size).parallel().forEach(ii -> {
+            Point point = get(ii);
+            try {
+                for (int jj = 0; jj < ii; jj++) {
+                    point.add(rows[jj][ii - jj - 1]);
+                }
+                for (Path path : rows[ii]) {
+                    point.add(path);
+                }
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+    }
+
+    /**
+     * Create the path between the points on first request. The lower sequence point owns the pair:
+     * the path is published to its map first, and the winner is then mirrored into the other
+     * point's map, so that concurrent requests from either end always share the same path.
+     */
+    private Path materialize(int seq1, int seq2) {
+        Point p1 = get(Math.min(seq1, seq2));
+        Point p2 = get(Math.max(seq1, seq2));
+        Path p = p1.paths().get(p2.sequence());
+        if (p == null) {
+            p = new Path(p1, p2);
+            p.actualLength(distances.distance(p1.sequence(), p2.sequence()));
+            Path current = p1.paths().putIfAbsent(p2.sequence(), p);
+            if (current != null) {
+                p = current;
+            }
+        }
+        p2.paths().putIfAbsent(p1.sequence(), p);
+        return p;
+    }
+
+    public double distance(int seq1, int seq2) {
+        if (isImplicit()) {
+            return distances.distance(Math.min(seq1, seq2), Math.max(seq1, seq2));
+        }
+        return get(seq1, seq2).actualLength();
+    }
+
     public Path get(int seq1, int seq2) {
         Point p1 = get(seq1);
         Preconditions.checkNotNull(p1);
@@ -127,16 +228,87 @@ public class Cache {
     }
 
     public void postLoad() throws Exception {
-        for (String key : index) {
-            Point p = points.get(key);
-            p.sort();
+        if (isImplicit()) {
+            IntStream.range(0, size).parallel().forEach(this::sortCandidates);
+            return;
         }
+        index.parallelStream().forEach(key -> {
+            try {
+                points.get(key).sort();
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
     }
 
-    public void sortBids() {
-        Utils.DoubleComparator comp = new Utils.DoubleComparator();
-        for (List<PointBid> points : bids) {
-            points.sort(comp);
+    private void sortCandidates(int sequence) {
+        Point point = get(sequence);
+        if (ranked != null) {
+            List<Integer> nearest = nearest(sequence, 2);
+            point.sort(Ints.asList(ranked[sequence]), distance(sequence, nearest.get(0)), distance(sequence, nearest.get(1)));
+            point.expander(count -> extendRanked(sequence, Math.min(count, size - 1)));
+            return;
+        }
+        List<Integer> sortIndex = nearest(sequence, candidates);
+        point.sort(sortIndex, distance(sequence, sortIndex.get(0)), distance(sequence, sortIndex.get(1)));
+        point.expander(count -> nearest(sequence, Math.min(count, size - 1)));
+    }
+
+    private List<Integer> nearest(int sequence, int count) {
+        if (neighbors != null) {
+            return union(sequence, grid.nearest(sequence, count));
+        }
+        if (grid != null) {
+            return Ints.asList(grid.nearest(sequence, count));
+        }
+        int found = 0;
+        int[] nearest = new int[count];
+        double[] lengths = new double[count];
+        for (int ii = 0; ii < size; ii++) {
+            if (ii == sequence) continue;
+            double d = distance(sequence, ii);
+            if (found == count && d >= lengths[found - 1]) continue;
+            int jj = (found < count ? found++ : found - 1);
+            while (jj > 0 && lengths[jj - 1] > d) {
+                lengths[jj] = lengths[jj - 1];
+                nearest[jj] = nearest[jj - 1];
+                jj--;
+            }
+            lengths[jj] = d;
+            nearest[jj] = ii;
         }
+        return Ints.asList(nearest).subList(0, found);
+    }
+
+    private List<Integer> extendRanked(int sequence, int count) {
+        List<Integer> values = new ArrayList<>(Ints.asList(ranked[sequence]));
+        Set<Integer> added = new HashSet<>(values);
+        for (int target : nearest(sequence, count)) {
+            if (added.add(target)) {
+                values.add(target);
+            }
+        }
+        return values;
+    }
+
+    private List<Integer> union(int sequence, int[] nearest) {
+        List<Integer> values = new ArrayList<>(Ints.asList(nearest));
+        Set<Integer> added = new HashSet<>(values);
+        for (int target : neighbors[sequence]) {
+            if (added.add(target)) {
+                values.add(target);
+            }
+        }
+        if (values.size() > nearest.length) {
+            values.sort((t1, t2) -> {
+                int c = Double.compare(distance(sequence, t1), distance(sequence, t2));
+                return (c != 0 ? c : Integer.compare(t1, t2));
+            });
+        }
+        return values;
+    }
+
+    public void sortBids() {
+        bids.sort();
     }
 }
@@ -0,0 +1,34 @@
+package com.codekutter.lazyman.v2;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+import org.moeaframework.problem.tsplib.DistanceLookup;
+
+import java.util.stream.IntStream;
+
+/**
+ * Distance lookup view of a {@link Cache}, so the TSPLIB tour heuristics can run on the cached
+ * distances. Node ids are the point sequence + 1, as in the TSPLIB tour files.
+ */
+@Getter
+@Accessors(fluent = true)
+public class CacheDistanceTable implements DistanceLookup {
+    private final Cache cache;
+    private final int[] nodes;
+
+    public CacheDistanceTable(@NonNull Cache cache) {
+        this.cache = cache;
+        this.nodes = IntStream.rangeClosed(1, cache.size()).toArray();
+    }
+
+    @Override
+    public int[] listNodes() {
+        return nodes.clone();
+    }
+
+    @Override
+    public double getDistanceBetween(int id1, int id2) {
+        return cache.distance(id1 - 1, id2 - 1);
+    }
+}
@@ -1,12 +1,17 @@
 package com.codekutter.lazyman.v2;
 
+import com.codekutter.lazyman.common.AlphaNearness;
+import com.codekutter.lazyman.common.DelaunayTriangulation;
 import com.codekutter.lazyman.common.LogUtils;
+import com.codekutter.lazyman.common.SpatialGrid;
 import com.codekutter.lazyman.v2.model.Path;
 import com.codekutter.lazyman.v2.model.Point;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.hash.HashCode;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.moeaframework.problem.tsplib.*;
 
@@ -14,7 +19,9 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.IntStream;
 
 @Getter
 @Accessors(fluent = true)
@@ -25,6 +32,18 @@ public class DataReader implements Closeable {
     private TSPInstance data;
     private Cache cache;
     private List<Tour> tours;
+    private double lowerBound = -1;
+    /**
+     * Use the (integer) TSPLIB distances of the instance instead of raw Euclidean lengths.
+     */
+    @Setter
+    private boolean integral = false;
+    /**
+     * Rows of integral candidate distances kept in memory (0 = compute every distance when requested).
+     */
+    @Setter
+    private int distanceCache = 0;
+    private CachedDistanceTable distanceRows;
 
     public DataReader(@NonNull String filename, @NonNull DataType dataType) {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(filename));
@@ -52,79 +71,273 @@ public class DataReader implements Closeable {
         if (!fi.exists()) {
             throw new IOException(String.format("File not found. [path=%s]", fi.getAbsolutePath()));
         }
-        data = new TSPInstance(fi);
+        data = new TSPInstance();
+        if (integral) {
+            data.setEdgeWeightStorage(EdgeWeightStorage.INTEGER);
+        }
+        data.loadMapped(fi);
         if (data.getDataType() != dataType) {
             throw new IOException(String.format("Invalid file Data type. [path=%s][type=%s][expected type=%s]",
                     fi.getAbsolutePath(), data.getDataType().name(), dataType.name()));
         }
+        if (integral && data.getDistanceTable() instanceof NodeCoordinates && !data.getEdgeWeightType().isIntegral()) {
+            throw new IOException(String.format("Edge weight type is not integral. [path=%s][type=%s]",
+                    fi.getAbsolutePath(), data.getEdgeWeightType().name()));
+        }
         name = fi.getName();
         return data;
     }
 
     public void load() throws Exception {
+        load(0);
+    }
+
+    /**
+     * Load the cache. With candidates > 0 the cache is implicit: paths are created on demand
+     * and each point is sorted on its nearest candidates only.
+     */
+    public void load(int candidates) throws Exception {
+        load(candidates, 0);
+    }
+
+    /**
+     * Load an implicit cache whose candidates are the nearest points plus the Delaunay
+     * neighbours up to the given order (coordinate instances only).
+     */
+    public void load(int candidates, int delaunay) throws Exception {
         Preconditions.checkArgument(data != null);
+        Preconditions.checkArgument(candidates >= 0);
+        Preconditions.checkArgument(delaunay == 0 || candidates > 0);
 
         cache = new Cache();
-        cache.init(data.getDimension());
+        DistanceTable dt = data.getDistanceTable();
+        if (dt instanceof NodeCoordinates) {
+            NodeCoordinates coords = (NodeCoordinates) dt;
+            readNodeCoordinates(coords, candidates, delaunay);
+        } else if (dt instanceof EdgeWeightMatrix) {
+            if (delaunay > 0) {
+                LogUtils.warn(getClass(), String.format("Delaunay candidates require node coordinates, using nearest only. [name=%s]", name));
+            }
+            readEdgeWeightMatrix((EdgeWeightMatrix) dt, candidates);
+        }
+    }
+
+    /**
+     * Load an implicit cache whose candidates are the count alpha-nearest points (from a 1-tree with
+     * subgradient-optimized penalties, over the second order Delaunay graph for coordinate instances).
+     * The 1-tree cost is kept as the lower bound.
+     */
+    public void loadAlpha(int count, int iterations) throws Exception {
+        Preconditions.checkArgument(data != null);
+        Preconditions.checkArgument(count >= 2);
 
+        int size = data.getDimension();
         DistanceTable dt = data.getDistanceTable();
+        DistanceSource distances;
+        SpatialGrid grid = null;
+        int[][] graph = null;
         if (dt instanceof NodeCoordinates) {
             NodeCoordinates coords = (NodeCoordinates) dt;
-            readNodeCoordinates(coords);
+            double[][] xy = coordinates(coords);
+            double[] xs = xy[0];
+            double[] ys = xy[1];
+            grid = new SpatialGrid(xs, ys);
+            graph = new DelaunayTriangulation(xs, ys).neighbors(2);
+            // the ascent runs over the graph edges: cache them along with the two nearest points
+            distances = cached(distances(coords, xs, ys), grid, 2, graph);
         } else if (dt instanceof EdgeWeightMatrix) {
-            readEdgeWeightMatrix((EdgeWeightMatrix) dt);
+            EdgeWeightMatrix matrix = (EdgeWeightMatrix) dt;
+            distances = (s, t) -> matrix.getDistanceBetween(s + 1, t + 1);
+        } else {
+            throw new IOException(String.format("Unsupported distance table. [name=%s][type=%s]",
+                    name, dt.getClass().getCanonicalName()));
         }
+        long start = System.currentTimeMillis();
+        AlphaNearness alpha = new AlphaNearness(size, distances::distance, graph).optimize(iterations);
+        lowerBound = alpha.lowerBound();
+        int[][] candidates = alpha.candidates(count);
+        LogUtils.info(getClass(), String.format("Alpha-nearness candidates. [points=%d][count=%d][iterations=%d][lower bound=%f][time=%dms]",
+                size, count, alpha.iterations(), lowerBound, System.currentTimeMillis() - start));
+
+        cache = new Cache();
+        cache.init(size, distances, grid, candidates);
+        addPoints(dt);
     }
 
-    private void readEdgeWeightMatrix(EdgeWeightMatrix matrix) throws Exception {
+    public void load(@NonNull File snapshotDir) throws Exception {
+        File fi = new File(filename);
+        if (!fi.exists()) {
+            throw new IOException(String.format("File not found. [path=%s]", fi.getAbsolutePath()));
+        }
+        HashCode hash = Snapshot.hash(fi);
+        File snapshot = Snapshot.file(snapshotDir, hash);
+        if (snapshot.exists()) {
+            try {
+                cache = Snapshot.read(snapshot, hash, dataType);
+                name = fi.getName();
+                return;
+            } catch (IOException ex) {
+                LogUtils.warn(getClass(), String.format("Ignoring invalid snapshot. [path=%s][error=%s]",
+                        snapshot.getAbsolutePath(), ex.getMessage()));
+            }
+        }
+        if (data == null) {
+            read();
+        }
+        load();
+        cache.postLoad();
+
+        if (!snapshotDir.exists() && !snapshotDir.mkdirs()) {
+            throw new IOException(String.format("Error creating Snapshot directory. [path=%s]", snapshotDir.getAbsolutePath()));
+        }
+        Snapshot.write(snapshot, hash, dataType, cache);
+    }
+
+    private void readEdgeWeightMatrix(EdgeWeightMatrix matrix, int candidates) throws Exception {
+        DistanceSource distances = (s, t) -> matrix.getDistanceBetween(s + 1, t + 1);
+        if (candidates > 0) {
+            cache.init(data.getDimension(), distances, candidates);
+        } else {
+            cache.init(data.getDimension());
+        }
         int[] nodes = matrix.listNodes();
         if (nodes != null && nodes.length > 0) {
-            for (int ii = 1; ii <= nodes.length; ii++) {
-                double X = -1;
-                double Y = -1;
-                if (data.getDisplayData() != null) {
-                    Node node = data.getDisplayData().get(ii);
-                    if (node != null) {
-                        X = node.getPosition()[0];
-                        Y = node.getPosition()[1];
-                    }
-                }
-                Point p = cache.add(ii - 1, X, Y);
-            }
-            for (int ii = 0; ii < cache.size(); ii++) {
-                for (int jj = 0; jj < cache.size(); jj++) {
-                    if (ii == jj) continue;
-                    double length = matrix.getDistanceBetween(ii + 1, jj + 1);
-                    Path path = cache.add(ii, jj, length);
-                    LogUtils.debug(getClass(), String.format("Added path [sequence=%d][index=%d][path=%s]", ii, jj, path));
-                }
+            addPoints(matrix);
+            if (!cache.isImplicit()) {
+                loadPaths(distances);
             }
         }
     }
 
-    private void readNodeCoordinates(NodeCoordinates coords) throws Exception {
-        for (int ii = 1; ii <= coords.size(); ii++) {
-            Node node = coords.get(ii);
-            if (node != null) {
-                double X = node.getPosition()[0];
-                double Y = node.getPosition()[1];
+    private void readNodeCoordinates(NodeCoordinates coords, int candidates, int delaunay) throws Exception {
+        int size = data.getDimension();
+        double[][] xy = coordinates(coords);
+        double[] xs = xy[0];
+        double[] ys = xy[1];
+        DistanceSource distances = distances(coords, xs, ys);
+        if (candidates > 0) {
+            SpatialGrid grid = new SpatialGrid(xs, ys);
+            if (delaunay > 0) {
+                long start = System.currentTimeMillis();
+                int[][] neighbors = new DelaunayTriangulation(xs, ys).neighbors(delaunay);
+                LogUtils.info(getClass(), String.format("Delaunay candidate graph. [points=%d][order=%d][time=%dms]",
+                        size, delaunay, System.currentTimeMillis() - start));
+                cache.init(size, cached(distances, grid, candidates, neighbors), grid, neighbors, candidates);
+            } else {
+                cache.init(size, cached(distances, grid, candidates, null), grid, candidates);
+            }
+        } else {
+            cache.init(size);
+        }
+        addPoints(coords);
+        if (!cache.isImplicit()) {
+            loadPaths(distances);
+        }
+    }
 
-                Point p = cache.add(ii - 1, X, Y);
+    private double[][] coordinates(NodeCoordinates coords) {
+        int size = data.getDimension();
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        for (int ii = 1; ii <= size; ii++) {
+            if (coords.contains(ii)) {
+                xs[ii - 1] = coords.getX(ii);
+                ys[ii - 1] = coords.getY(ii);
             }
         }
-        for (int ii = 0; ii < cache.size(); ii++) {
-            LogUtils.info(getClass(), String.format("Loading path. [sequence=%d]...", ii));
-            for (int jj = 0; jj < cache.size(); jj++) {
-                if (jj <= ii) continue;
-                Point p1 = cache.get(ii);
-                Point p2 = cache.get(jj);
+        return new double[][]{xs, ys};
+    }
+
+    /**
+     * Raw Euclidean lengths, or the instance distance function (rounded as defined by TSPLIB) in integral mode.
+     */
+    private DistanceSource distances(NodeCoordinates coords, double[] xs, double[] ys) {
+        if (integral) {
+            PreparedDistance prepared = coords.getDistanceFunction().prepare(xs, ys);
+            return prepared::distance;
+        }
+        return (s, t) -> {
+            double x = xs[s] - xs[t];
+            double y = ys[s] - ys[t];
+            return Math.sqrt((x * x) + (y * y));
+        };
+    }
+
+    /**
+     * The integral distances through a bounded cache of candidate rows when a capacity is set: the row
+     * of a point holds the distances to its count nearest points and its graph neighbours (if any).
+     */
+    private DistanceSource cached(DistanceSource distances, SpatialGrid grid, int count, int[][] graph) {
+        Preconditions.checkArgument(distanceCache >= 0);
+        if (!integral || distanceCache == 0) {
+            return distances;
+        }
+        int size = grid.size();
+        int[][] rows = new int[size][];
+        IntStream.range(0, size).parallel().forEach(ii -> {
+            int[] nearest = grid.nearest(ii, count);
+            rows[ii] = (graph != null
+                    ? IntStream.concat(Arrays.stream(nearest), Arrays.stream(graph[ii])).distinct().toArray()
+                    : nearest);
+        });
+        int[] nodes = IntStream.range(0, size).toArray();
+        distanceRows = new CachedDistanceTable(new DistanceLookup() {
+            @Override
+            public int[] listNodes() {
+                return nodes.clone();
+            }
+
+            @Override
+            public double getDistanceBetween(int source, int target) {
+                return distances.distance(source, target);
+            }
+        }, distanceCache, true, rows);
+        LogUtils.info(getClass(), String.format("Distance row cache. [points=%d][capacity=%d]", size, distanceCache));
+        return distanceRows::getDistanceBetween;
+    }
 
-                Path path = cache.add(p1.sequence(), p2.sequence(), p1.distance(p2));
-                LogUtils.debug(getClass(), String.format("Added path [sequence=%d][index=%d][path=%s]", ii, jj, path));
+    private void addPoints(DistanceTable dt) throws Exception {
+        if (dt instanceof NodeCoordinates) {
+            NodeCoordinates coords = (NodeCoordinates) dt;
+            for (int ii = 1; ii <= coords.size(); ii++) {
+                if (coords.contains(ii)) {
+                    cache.add(ii - 1, coords.getX(ii), coords.getY(ii));
+                }
+            }
+        } else {
+            int[] nodes = dt.listNodes();
+            NodeCoordinates display = data.getDisplayData();
+            for (int ii = 1; ii <= nodes.length; ii++) {
+                double X = -1;
+                double Y = -1;
+                if (display != null && display.contains(ii)) {
+                    X = display.getX(ii);
+                    Y = display.getY(ii);
+                }
+                cache.add(ii - 1, X, Y);
             }
         }
     }
 
+    private void loadPaths(DistanceSource distances) {
+        long start = System.currentTimeMillis();
+        int size = cache.size();
+        Path[][] rows = new Path[size][];
+        IntStream.range(0, size).parallel().forEach(ii -> {
+            Point p1 = cache.get(ii);
+            Path[] row = new Path[size - ii - 1];
+            for (int jj = ii + 1; jj < size; jj++) {
+                Path path = new Path(p1, cache.get(jj));
+                path.actualLength(distances.distance(ii, jj));
+                row[jj - ii - 1] = path;
+            }
+            rows[ii] = row;
+        });
+        cache.addAll(rows);
+        LogUtils.info(getClass(), String.format("Loaded paths. [points=%d][paths=%d][time=%dms]",
+                size, (long) size * (size - 1) / 2, System.currentTimeMillis() - start));
+    }
+
     public int getNodeCount() {
         return cache.size();
     }
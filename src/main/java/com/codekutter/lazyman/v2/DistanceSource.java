@@ -0,0 +1,9 @@
+package com.codekutter.lazyman.v2;
+
+/**
+ * Source of point-to-point distances for an implicit {@link Cache}, indexed by (0-based) point sequence.
+ */
+@FunctionalInterface
+public interface DistanceSource {
+    double distance(int source, int target);
+}
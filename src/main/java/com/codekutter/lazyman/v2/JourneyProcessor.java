@@ -1,23 +1,192 @@
 package com.codekutter.lazyman.v2;
 
+import com.codekutter.lazyman.common.LogUtils;
 import com.codekutter.lazyman.v2.model.Journey;
+import com.codekutter.lazyman.v2.model.Point;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.experimental.Accessors;
+import org.moeaframework.problem.tsplib.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Post-optimization of the journey found by the bidding run: the journey is converted to a tour
+ * (patching its subtours together if it is incomplete) and the configured improvement stages are
+ * applied in turn, repeating the sequence while it still improves the tour and the time budget allows.
+ */
 @Getter
 @Accessors(fluent = true)
 public class JourneyProcessor {
+    // post-optimization is opt-in: the stages must be requested, e.g. "2opt,lk,segment"
+    public static final String DEFAULT_STAGES = "";
+    public static final long DEFAULT_BUDGET = 60 * 1000;
+    public static final int CANDIDATES = TSP2OptHeuristic.DEFAULT_CANDIDATES;
+    // flips on an array tour cost O(n): switch to the two-level list above this size
+    public static final int TWO_LEVEL_SIZE = 10000;
+
+    public enum Stage {
+        TWO_OPT("2opt"),
+        LIN_KERNIGHAN("lk"),
+        SEGMENT("segment");
+
+        private final String code;
+
+        Stage(String code) {
+            this.code = code;
+        }
+
+        public String code() {
+            return code;
+        }
+
+        public static Stage parse(@NonNull String value) {
+            for (Stage stage : values()) {
+                if (stage.code.equalsIgnoreCase(value.trim())) {
+                    return stage;
+                }
+            }
+            throw new IllegalArgumentException(String.format("Invalid improvement stage. [stage=%s]", value));
+        }
+    }
+
     private final Cache cache;
     private final Journey journey;
+    private final List<Stage> stages;
+    private final long budget;
+    private Tour tour;
+    private double distance = -1;
 
     public JourneyProcessor(@NonNull Cache cache,
                             @NonNull Journey journey) {
+        this(cache, journey, parse(DEFAULT_STAGES), DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param stages - Improvement stages, applied in order.
+     * @param budget - Time budget in milliseconds (0 = until no stage improves the tour).
+     */
+    public JourneyProcessor(@NonNull Cache cache,
+                            @NonNull Journey journey,
+                            @NonNull List<Stage> stages,
+                            long budget) {
+        Preconditions.checkArgument(budget >= 0);
         this.cache = cache;
         this.journey = journey;
+        this.stages = stages;
+        this.budget = budget;
+    }
+
+    /**
+     * Parse a comma separated list of stage codes (empty for none).
+     */
+    public static List<Stage> parse(String stages) {
+        List<Stage> values = new ArrayList<>();
+        if (!Strings.isNullOrEmpty(stages)) {
+            for (String value : stages.split(",")) {
+                if (!Strings.isNullOrEmpty(value.trim())) {
+                    values.add(Stage.parse(value));
+                }
+            }
+        }
+        return values;
     }
 
     public void run() throws Exception {
+        Preconditions.checkState(journey.route() != null);
+        long st = System.currentTimeMillis();
+        long deadline = (budget > 0 ? st + budget : Long.MAX_VALUE);
+        DistanceLookup table = new CacheDistanceTable(cache);
+        int[][] candidates = candidates();
+
+        if (journey.isComplete()) {
+            tour = journey.toTour();
+        } else {
+            tour = new SubtourPatcher(cache).patch(journey);
+        }
+        distance = tour.distance(table);
+        // the journey distance does not include the edges closing its routes
+        double initial = distance;
+        LogUtils.info(getClass(), String.format("Improving journey. [distance=%f][stages=%s]", distance, stages));
+
+        int round = 0;
+        boolean improved = true;
+        while (improved && System.currentTimeMillis() < deadline) {
+            improved = false;
+            for (Stage stage : stages) {
+                if (System.currentTimeMillis() >= deadline) {
+                    LogUtils.warn(getClass(), String.format("Time budget exhausted. [round=%d][stage=%s]", round, stage.code()));
+                    break;
+                }
+                long sst = System.currentTimeMillis();
+                double before = distance;
+                apply(stage, table, candidates, deadline);
+                distance = tour.distance(table);
+                if (distance < before) {
+                    improved = true;
+                }
+                LogUtils.info(getClass(), String.format("[%d][%s] Stage completed. [distance=%f][time=%d]",
+                        round, stage.code(), distance, (System.currentTimeMillis() - sst)));
+            }
+            round++;
+        }
+        LogUtils.info(getClass(), String.format("Improved journey. [distance=%f -> %f][rounds=%d][time=%d]",
+                initial, distance, round, (System.currentTimeMillis() - st)));
+    }
+
+    private void apply(Stage stage, DistanceLookup table, int[][] candidates, long deadline) {
+        switch (stage) {
+            case TWO_OPT:
+                TSP2OptHeuristic twoOpt = new TSP2OptHeuristic(table, candidates);
+                if (tour.size() >= TWO_LEVEL_SIZE) {
+                    TwoLevelTour order = new TwoLevelTour(tour);
+                    twoOpt.apply(order, deadline);
+                    tour = order.toTour();
+                } else {
+                    twoOpt.apply(tour, deadline);
+                }
+                break;
+            case LIN_KERNIGHAN:
+                LinKernighanHeuristic lk = new LinKernighanHeuristic(table, candidates,
+                        LinKernighanHeuristic.DEFAULT_DEPTH);
+                if (tour.size() >= TWO_LEVEL_SIZE) {
+                    TwoLevelTour order = new TwoLevelTour(tour);
+                    lk.apply(order, deadline);
+                    tour = order.toTour();
+                } else {
+                    lk.apply(tour, deadline);
+                }
+                break;
+            case SEGMENT:
+                new SegmentHeuristic(table).apply(tour, deadline);
+                break;
+        }
+    }
 
+    /**
+     * The nearest candidates of each point (indexed by node id = sequence + 1), taken from the
+     * sorted candidates of the cache points and ordered by distance.
+     */
+    private int[][] candidates() {
+        int[][] candidates = new int[cache.size() + 1][];
+        for (int ii = 0; ii < cache.size(); ii++) {
+            Point point = cache.get(ii);
+            if (point.sortIndex() == null) {
+                return TSP2OptHeuristic.nearestNeighbors(new CacheDistanceTable(cache), CANDIDATES);
+            }
+            int sequence = ii;
+            Integer[] nearest = point.sortIndex().stream()
+                    .limit(CANDIDATES)
+                    .toArray(Integer[]::new);
+            // ranked candidates (e.g. alpha-nearness) are not ordered by distance
+            Arrays.sort(nearest, Comparator.comparingDouble(target -> cache.distance(sequence, target)));
+            candidates[ii + 1] = Arrays.stream(nearest).mapToInt(target -> target + 1).toArray();
+        }
+        return candidates;
     }
 }
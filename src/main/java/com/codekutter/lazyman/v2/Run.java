@@ -2,6 +2,7 @@ package com.codekutter.lazyman.v2;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
+import com.codekutter.lazyman.common.AlphaNearness;
 import com.codekutter.lazyman.common.Config;
 import com.codekutter.lazyman.common.LogUtils;
 import com.codekutter.lazyman.core.*;
@@ -23,6 +24,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.ObjDoubleConsumer;
+import java.util.stream.IntStream;
 
 @Getter
 @Setter
@@ -39,55 +42,153 @@ public class Run {
     private String tourfile;
     @Parameter(names = {"--view", "-v"}, description = "View output.")
     private boolean view = false;
+    @Parameter(names = {"--snapshot", "-s"}, description = "Load from (or create) a binary snapshot of the instance (all paths only, not with -k, -g, -a or -i).")
+    private boolean snapshot = false;
+    @Parameter(names = {"--candidates", "-k"}, description = "Nearest candidates per point (0 = all paths, otherwise at least MAX_BIDS + 1 = 10).")
+    private int candidates = 0;
+    @Parameter(names = {"--delaunay", "-g"}, description = "Add Delaunay neighbours up to this order to the candidates (0 = none).")
+    private int delaunay = 0;
+    @Parameter(names = {"--alpha", "-a"}, description = "Alpha-nearness candidates per point (0 = none).")
+    private int alpha = 0;
+    @Parameter(names = {"--ascent"}, description = "Maximum subgradient iterations for the alpha-nearness 1-tree.")
+    private int ascent = AlphaNearness.DEFAULT_ITERATIONS;
+    @Parameter(names = {"--integral", "-i"}, description = "Use the integer TSPLIB distances instead of raw Euclidean lengths.")
+    private boolean integral = false;
+    @Parameter(names = {"--stages"}, description = "Comma separated tour improvement stages (2opt, lk, segment), none by default.")
+    private String stages = JourneyProcessor.DEFAULT_STAGES;
+    @Parameter(names = {"--budget"}, description = "Time budget of the tour improvement stages in milliseconds (0 = none).")
+    private long budget = JourneyProcessor.DEFAULT_BUDGET;
+    @Parameter(names = {"--threads"}, description = "Threads searching the V3 start points in parallel (1 = sequential).")
+    private int threads = 1;
+    @Parameter(names = {"--bound"}, description = "Prune the V3 search with tour lower bounds (branch and bound).")
+    private boolean bound = false;
+    @Parameter(names = {"--beam-width"}, description = "Partial routes kept per depth by a V3 beam search (0 = exhaustive search).")
+    private int beamWidth = 0;
+    @Parameter(names = {"--distance-cache"}, description = "Rows of candidate distances cached with --integral and candidates (0 = none).")
+    private int distanceCache = 0;
+    @Parameter(names = {"--iterate"}, description = "Iterate over the bids instead of the V3 search (also its fallback when V3 finds no tour).")
+    private boolean iterate = false;
     @Setter(AccessLevel.NONE)
     private DataReader reader;
     private double tourDistance = -1;
 
+    /**
+     * Bid for the candidates of every point, in parallel over the points: each one writes its own row
+     * of bids. With an implicit cache, walking its paths also materializes them into the path maps of
+     * the other end points (see Cache.materialize); those maps are concurrent and keep the first path
+     * created, so the bids do not depend on the order the points are processed in.
+     */
     private void computeBids() throws Exception {
-        for (Point point : reader.cache().pointList(0)) {
-            int index = -1;
-            while (index < point.paths().size()) {
-                IndexedPath p = point.next(index);
-                if (p == null) {
-                    break;
+        Cache cache = reader.cache();
+        IntStream.range(0, cache.size()).parallel().forEach(ii -> {
+            try {
+                Point point = cache.get(ii);
+                computeBids(cache, point, Double.MAX_VALUE, (target, bid) -> cache.setBid(point.sequence(), target, bid));
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        cache.sortBids();
+    }
+
+    /**
+     * Compute the bids of the point for its sorted paths, passing each target and bid to the consumer.
+     * A bid is no lower than the path's excess over the point's shortest path, which only grows along
+     * the sorted paths: the walk stops once that excess is above the limit.
+     */
+    private void computeBids(Cache cache, Point point, double limit, ObjDoubleConsumer<Point> bids) throws Exception {
+        int index = -1;
+        while (index < point.sortIndex().size()) {
+            IndexedPath p = point.next(index);
+            if (p == null) {
+                break;
+            }
+            index = p.index();
+            Point t = p.path().target(point);
+            if (p.next() == null) {
+                // with candidates only, the last one is not the farthest point: leave it un-bid
+                if (point.sortIndex().size() == cache.size() - 1) {
+                    bids.accept(t, Double.MIN_VALUE);
                 }
-                index = p.index();
-                Point t = p.path().target(point);
-                if (p.next() == null) {
-                    reader.cache().setBid(point.sequence(), t, Double.MIN_VALUE);
-                } else {
-                    double d = p.path().actualLength() - point.minLength();
-                    double h = p.next().actualLength() - p.path().actualLength();
-                    double b = p.path().compute(h, d, point);
-                    reader.cache().setBid(point.sequence(), t, b);
+            } else {
+                double d = p.path().actualLength() - point.minLength();
+                if (d > limit) {
+                    break;
                 }
+                double h = p.next().actualLength() - p.path().actualLength();
+                double b = p.path().compute(h, d, point);
+                bids.accept(t, b);
             }
         }
-        reader.cache().sortBids();
     }
 
+    /**
+     * Select the targets of every point from the sorted bids, in parallel over the points (the bid
+     * rows are only read), and log the distribution of the target counts.
+     */
     private void compareBids() throws Exception {
-        for (Point point : reader.cache().pointList(0)) {
-            int count = 0;
-            List<Cache.PointBid> current = reader.cache().bids().get(point.sequence());
-            for (Cache.PointBid bid : current) {
-                if (bid.sequence == point.sequence()) continue;
+        Cache cache = reader.cache();
+        BidMatrix bids = cache.bids();
+        int[] counts = new int[cache.size()];
+        // no bid above the highest threshold of any point can be selected
+        double limit = IntStream.range(0, cache.size()).mapToDouble(ii -> bids.threshold(ii, MAX_BIDS)).max()
+                .orElse(Double.MAX_VALUE);
+        int[] fallbacks = new int[cache.size()];
+        IntStream.range(0, cache.size()).parallel().forEach(ii -> {
+            Point point = cache.get(ii);
+            int sequence = point.sequence();
+            int count = compareBids(cache, point, bids, sequence, 0, 0);
+            double last = bids.bid(sequence, bids.count(sequence) - 1);
+            if (count < MAX_BIDS && bids.truncated(sequence) && last <= limit) {
+                // the row ran out before MAX_BIDS targets: compute the bids of the point again and
+                // rank the ones the row dropped, up to the limit
+                fallbacks[ii] = 1;
+                int after = bids.target(sequence, bids.count(sequence) - 1);
+                try {
+                    BidMatrix row = new BidMatrix(1, point.sortIndex().size());
+                    computeBids(cache, point, limit, (target, bid) -> {
+                        if (bid <= limit && (bid > last || (bid == last && target.sequence() > after))) {
+                            row.set(0, target.sequence(), bid);
+                        }
+                    });
+                    if (row.count(0) > 0) {
+                        row.sort();
+                        count = compareBids(cache, point, row, 0, 0, count);
+                    }
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            counts[ii] = count;
+        });
+        IntSummaryStatistics stats = Arrays.stream(counts).summaryStatistics();
+        long partial = Arrays.stream(counts).filter(count -> count < MAX_BIDS).count();
+        LogUtils.info(getClass(), String.format("Compared bids. [targets=%d][min=%d][max=%d][average=%.2f][below MAX_BIDS=%d][full scans=%d]",
+                stats.getSum(), stats.getMin(), stats.getMax(), stats.getAverage(), partial, Arrays.stream(fallbacks).sum()));
+    }
 
-                int index = MAX_BIDS - count;
+    /**
+     * Add to the point's targets the bids of the row, from the rank on, that are within the
+     * thresholds of their targets, until the point holds MAX_BIDS targets. Returns the target count.
+     */
+    private static int compareBids(Cache cache, Point point, BidMatrix row, int index, int from, int count) {
+        BidMatrix bids = cache.bids();
+        int sequence = point.sequence();
+        for (int rank = from; rank < row.count(index) && count < MAX_BIDS; rank++) {
+            int target = row.target(index, rank);
+            if (target == sequence) continue;
 
-                List<Cache.PointBid> target = reader.cache().bids().get(bid.sequence);
-                double tb = target.get(index).bid;
-                if (bid.bid <= tb) {
-                    point.targets().add(bid.point);
-                    count++;
-                }
-                if (count == MAX_BIDS) break;
+            // with few candidates a point may hold fewer than MAX_BIDS bids
+            double tb = bids.threshold(target, MAX_BIDS - count);
+            if (row.bid(index, rank) <= tb) {
+                point.targets().add(cache.get(target));
+                count++;
             }
-            LogUtils.info(getClass(), String.format("[%s][Target bid count = %d]", point.toString(), count));
         }
+        return count;
     }
 
-    private void setup() throws Exception {
+    void setup() throws Exception {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(config));
         Preconditions.checkArgument(!Strings.isNullOrEmpty(tspData));
 
@@ -96,9 +197,41 @@ public class Run {
         if (!Strings.isNullOrEmpty(tspDataType)) {
             type = DataType.valueOf(tspDataType);
         }
+        // snapshots hold every sorted path: the candidate modes would silently skip them
+        Preconditions.checkArgument(!snapshot || (candidates == 0 && delaunay == 0 && alpha == 0),
+                "--snapshot cannot be combined with --candidates, --delaunay or --alpha.");
+        // snapshots hold raw Euclidean lengths, not the rounded TSPLIB distances
+        Preconditions.checkArgument(!snapshot || !integral,
+                "--snapshot cannot be combined with --integral: snapshots hold raw Euclidean lengths.");
         reader = new DataReader(tspData, type);
-        reader.read();
-        reader.load();
+        reader.integral(integral);
+        if (delaunay > 0 && candidates == 0) {
+            candidates = MAX_BIDS + 1;
+        }
+        // with all paths every distance is computed once, when its path is loaded
+        Preconditions.checkArgument(distanceCache == 0 || (integral && (candidates > 0 || alpha > 0)),
+                "--distance-cache requires --integral and candidates (-k, -g or -a).");
+        Preconditions.checkArgument(distanceCache >= 0, "--distance-cache cannot be negative.");
+        reader.distanceCache(distanceCache);
+        if (alpha > 0) {
+            reader.read();
+            reader.loadAlpha(alpha, ascent);
+            reader.cache().postLoad();
+        } else if (candidates > 0) {
+            // the farthest candidate is not bid on: keep MAX_BIDS bids available per point
+            Preconditions.checkArgument(candidates > MAX_BIDS,
+                    String.format("--candidates must be at least MAX_BIDS + 1. [candidates=%d][minimum=%d]",
+                            candidates, MAX_BIDS + 1));
+            reader.read();
+            reader.load(candidates, delaunay);
+            reader.cache().postLoad();
+        } else if (snapshot) {
+            reader.load(new File(Config.get().snapshotDir()));
+        } else {
+            reader.read();
+            reader.load();
+            reader.cache().postLoad();
+        }
 
         if (!Strings.isNullOrEmpty(tourfile)) {
             reader.readTours(tourfile);
@@ -106,7 +239,6 @@ public class Run {
                 computeTourDistance(reader.tours(), reader.cache());
             }
         }
-        reader.cache().postLoad();
         computeBids();
         compareBids();
     }
@@ -115,16 +247,18 @@ public class Run {
         try {
             setup();
 
-            RunIteratorV3 runner = new RunIteratorV3(0, 0, reader.cache());
+            RunIteratorV3 runner = new RunIteratorV3(0, 0, reader.cache(), threads, bound, beamWidth);
             runner.run();
             Journey journey = runner.journey();
             if (journey == null) {
-                throw new Exception("No complete journey generated...");
-            }
-            if (view) {
-                Helper.journey = journey;
-                Helper.tours = reader.tours();
-                Viewer.show();
+                // the bid targets hold no tour (or the beam missed them all): patch the iterations' subtours
+                LogUtils.warn(getClass(), "No complete V3 journey: falling back to the bid iterations.");
+                RunIteration iteration = iterateBids();
+                journey = new Journey(iteration.points());
+                journey.load();
+                output(iteration, journey);
+            } else {
+                output(runner, journey);
             }
         } catch (Exception ex) {
             LogUtils.error(getClass(), ex);
@@ -132,40 +266,78 @@ public class Run {
         }
     }
 
+    /**
+     * Improve (or patch) the journey and write its tour.
+     */
+    private void output(RunIteration iteration, Journey journey) throws Exception {
+        JourneyProcessor processor = improve(journey);
+        printTour(iteration, reader.filename(), journey, processor);
+        if (reader.distanceRows() != null) {
+            LogUtils.info(getClass(), String.format("Distance row cache. [%s]", reader.distanceRows()));
+        }
+        if (view) {
+            Helper.journey = journey;
+            Helper.tours = reader.tours();
+            Viewer.show();
+        }
+    }
+
+    private JourneyProcessor improve(Journey journey) throws Exception {
+        List<JourneyProcessor.Stage> values = JourneyProcessor.parse(stages);
+        // an incomplete journey is still patched into a tour
+        if (values.isEmpty() && journey.isComplete()) {
+            return null;
+        }
+        JourneyProcessor processor = new JourneyProcessor(reader.cache(), journey, values, budget);
+        processor.run();
+        return processor;
+    }
+
     private void run() {
-        JourneyProcessor processor = null;
         try {
             setup();
-            RunIteration previous = null;
-            int iterations = 0;
-            int startIndex = 0;
-            while (true) {
-                RunIteration iteration = new RunIteration(iterations, startIndex, reader.cache());
-                iteration.run();
-                String outf = iteration.print();
-                if (iteration.isCompleted()) {
-                    LogUtils.info(getClass(),
-                            String.format("Completed in [%d] iterations. [output=%s]", iterations, outf));
-                    Journey journey = new Journey(iteration.points());
-                    journey.load();
-                    if (journey.isComplete()) {
+            RunIteration iteration = iterateBids();
+            Journey journey = new Journey(iteration.points());
+            journey.load();
+            output(iteration, journey);
+        } catch (Exception ex) {
+            LogUtils.error(getClass(), ex);
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Iterate over the bids until the points complete a tour, the subtours are stable or the
+     * iterations are stuck, and return the last iteration.
+     */
+    private RunIteration iterateBids() throws Exception {
+        RunIteration previous = null;
+        int[] subtours = null;
+        int iterations = 0;
+        int startIndex = 0;
+        while (true) {
+            RunIteration iteration = new RunIteration(iterations, startIndex, reader.cache());
+            iteration.run();
+            String outf = iteration.print();
+            if (iteration.isCompleted()) {
+                LogUtils.info(getClass(),
+                        String.format("Completed in [%d] iterations. [output=%s]", iterations, outf));
+                Journey journey = new Journey(iteration.points());
+                journey.load();
+                if (journey.isComplete()) {
+                    previous = iteration;
+                    break;
+                } else {
+                    // the same subtours again: patch them instead of iterating further
+                    int[] current = journey.subtours();
+                    if (subtours != null && Arrays.equals(subtours, current)) {
+                        LogUtils.info(getClass(), String.format("Subtours stable after [%d] iterations. [#subtours=%d]",
+                                iterations, journey.route().size()));
                         previous = iteration;
                         break;
-                    } else {
-                        if (previous != null && iteration.compare(previous.points())) {
-                            LogUtils.warn(getClass(), String.format("Stuck after [%d] iteration.", iterations));
-                            break;
-                        }
-                        if (iterations > 1500) {
-                            LogUtils.warn(getClass(), String.format("Breaking after [%d] iteration.", iterations));
-                            previous = iteration;
-                            break;
-                        }
-                        previous = iteration;
-                        continue;
                     }
-                } else if (previous != null) {
-                    if (iteration.compare(previous.points())) {
+                    subtours = current;
+                    if (previous != null && iteration.compare(previous.points())) {
                         LogUtils.warn(getClass(), String.format("Stuck after [%d] iteration.", iterations));
                         break;
                     }
@@ -177,37 +349,27 @@ public class Run {
                     previous = iteration;
                     continue;
                 }
-                if (iterations % 500 == 0) {
-                    LogUtils.info(getClass(), String.format("Completed [%d] iterations...", iterations));
+            } else if (previous != null) {
+                if (iteration.compare(previous.points())) {
+                    LogUtils.warn(getClass(), String.format("Stuck after [%d] iteration.", iterations));
+                    break;
+                }
+                if (iterations > 1500) {
+                    LogUtils.warn(getClass(), String.format("Breaking after [%d] iteration.", iterations));
+                    previous = iteration;
+                    break;
                 }
                 previous = iteration;
-                previous.save();
-                iterations++;
+                continue;
             }
-            if (processor == null) {
-                Journey journey = new Journey(previous.points());
-                journey.load();
-                printTour(previous, reader.filename(), journey);
-
-                if (view) {
-                    Helper.journey = journey;
-                    Helper.tours = reader.tours();
-                    Viewer.show();
-                }
-            } else {
-                Journey journey = processor.journey();
-                printTour(previous, reader.filename(), journey);
-
-                if (view) {
-                    Helper.journey = journey;
-                    Helper.tours = reader.tours();
-                    Viewer.show();
-                }
+            if (iterations % 500 == 0) {
+                LogUtils.info(getClass(), String.format("Completed [%d] iterations...", iterations));
             }
-        } catch (Exception ex) {
-            LogUtils.error(getClass(), ex);
-            throw new RuntimeException(ex);
+            previous = iteration;
+            previous.save();
+            iterations++;
         }
+        return previous;
     }
 
     private void computeTourDistance(List<Tour> tours, Cache cache) {
@@ -227,7 +389,9 @@ public class Run {
 
     private void printTour(RunIteration iteration,
                            String name,
-                           Journey journey) throws Exception {
+                           Journey journey,
+                           JourneyProcessor processor) throws Exception {
+        Tour improved = (processor != null ? processor.tour() : null);
         String dir = Config.get().runInfo().createOutputDir("tour");
         File f = new File(name);
         String filename = String.format("%s.tour", f.getName());
@@ -241,11 +405,18 @@ public class Run {
             builder.append("NAME : ").append(filename).append("\n");
             builder.append("TYPE : TOUR\n");
             builder.append("DIMENSION : ").append(iteration.points().size()).append("\n");
-            builder.append("COMPUTED DISTANCE : ").append(journey.distance()).append("\n");
+            builder.append("COMPUTED DISTANCE : ").append(improved != null ? processor.distance() : journey.distance()).append("\n");
+            if (reader.lowerBound() > 0) {
+                builder.append("LOWER BOUND : ").append(reader.lowerBound()).append("\n");
+            }
             builder.append("DISTANCE : ").append(tourDistance).append("\n");
             builder.append("COMPLETE : ").append(journey.isComplete()).append("\n");
             builder.append("TOUR_SECTION\n");
-            if (journey.isComplete()) {
+            if (improved != null) {
+                for (int index = 0; index < improved.size(); index++) {
+                    builder.append(improved.get(index)).append("\n");
+                }
+            } else if (journey.isComplete()) {
                 PathRoute tour = journey.route().get(0);
                 for (Point point : tour.route()) {
                     builder.append(point.sequence() + 1).append("\n");
@@ -271,7 +442,11 @@ public class Run {
         try {
             Run r = new Run();
             JCommander.newBuilder().addObject(r).build().parse(argv);
-            r.runV3();
+            if (r.iterate) {
+                r.run();
+            } else {
+                r.runV3();
+            }
         } catch (Throwable t) {
             LogUtils.error(Run.class, t);
             t.printStackTrace();
@@ -45,8 +45,10 @@ public class RunIteration {
             if (path != null) {
                 cost = currentCost(point, path);
             }
-            while (index < point.paths().size()) {
+            while (index < point.sortIndex().size()) {
                 IndexedPath p = point.next(index);
+                // a reservation is priced against the next candidate: extend a limited list before its last one
+                if ((p == null || p.next() == null) && point.extend()) continue;
                 if (p == null) break;
                 index = p.index();
                 if (path != null) {
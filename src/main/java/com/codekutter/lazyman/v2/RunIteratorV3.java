@@ -3,110 +3,459 @@ package com.codekutter.lazyman.v2;
 import com.codekutter.lazyman.common.LogUtils;
 import com.codekutter.lazyman.v2.model.Journey;
 import com.codekutter.lazyman.v2.model.Path;
+import com.codekutter.lazyman.v2.model.PathRoute;
 import com.codekutter.lazyman.v2.model.Point;
+import com.google.common.base.Preconditions;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.experimental.Accessors;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Getter
 @Accessors(fluent = true)
 public class RunIteratorV3 extends RunIteration {
+    /**
+     * Searches the start points in [from, to), splitting the range into forked halves so that idle
+     * threads steal the remaining start points.
+     */
+    private class StartTask extends RecursiveAction {
+        private static final long serialVersionUID = 5372616458253911547L;
+
+        private final List<Point> points;
+        private final int from;
+        private final int to;
+        private final AtomicReference<Journey> best;
+
+        private StartTask(List<Point> points, int from, int to, AtomicReference<Journey> best) {
+            this.points = points;
+            this.from = from;
+            this.to = to;
+            this.best = best;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new StartTask(points, from, mid, best), new StartTask(points, mid, to, best));
+                return;
+            }
+            Point point = points.get(from);
+            try {
+                Journey j = run(point);
+                if (j != null && j.isComplete()) {
+                    best.accumulateAndGet(j, RunIteratorV3.this::shorter);
+                }
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            LogUtils.info(RunIteratorV3.class, String.format("Finished point. [%s]", point));
+        }
+    }
+
+    /**
+     * A partial route of the beam search: its last point, the index of the partial route it extends
+     * in the previous beam and the points visited. Partial routes ending at the same point over the
+     * same points are equivalent: only the shorter one needs to be kept.
+     */
+    private static final class Partial {
+        private final int last;
+        private final int parent;
+        private final long[] visited;
+        private final double length;
+        private final double leaving;
+        private final double entering;
+        private final double score;
+
+        private Partial(int last, int parent, long[] visited, double length, double leaving, double entering) {
+            this.last = last;
+            this.parent = parent;
+            this.visited = visited;
+            this.length = length;
+            this.leaving = leaving;
+            this.entering = entering;
+            this.score = length + Math.max(leaving, entering);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Partial)) return false;
+            Partial partial = (Partial) o;
+            return last == partial.last && Arrays.equals(visited, partial.visited);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * last + Arrays.hashCode(visited);
+        }
+    }
+
+    /**
+     * The shortest tour found so far by any start point, with the start point it was found from.
+     * Incumbents are ordered by length and then by start point, so that a tie goes to the earlier
+     * start point whatever the order the threads find them in.
+     */
+    private static final class Incumbent {
+        private final double length;
+        private final int start;
+
+        private Incumbent(double length, int start) {
+            this.length = length;
+            this.start = start;
+        }
+
+        private boolean before(Incumbent other) {
+            return (length < other.length || (length == other.length && start < other.start));
+        }
+    }
+
+    private final int threads;
+    private final boolean bound;
+    private final int width;
+    @Getter(AccessLevel.NONE)
+    private final AtomicReference<Incumbent> incumbent =
+            new AtomicReference<>(new Incumbent(Double.MAX_VALUE, Integer.MAX_VALUE));
+    @Getter(AccessLevel.NONE)
+    private double[] outgoing;
+    @Getter(AccessLevel.NONE)
+    private double[] incoming;
+    @Getter(AccessLevel.NONE)
+    private int[][] targets;
     private Journey journey;
 
     public RunIteratorV3(int iteration, int startIndex, @NonNull Cache cache) {
+        this(iteration, startIndex, cache, 1);
+    }
+
+    /**
+     * @param threads - Threads searching the start points in parallel (1 = sequential).
+     */
+    public RunIteratorV3(int iteration, int startIndex, @NonNull Cache cache, int threads) {
+        this(iteration, startIndex, cache, threads, false);
+    }
+
+    /**
+     * @param threads - Threads searching the start points in parallel (1 = sequential).
+     * @param bound   - Prune branches that cannot beat the shortest tour found so far (branch and bound).
+     */
+    public RunIteratorV3(int iteration, int startIndex, @NonNull Cache cache, int threads, boolean bound) {
+        this(iteration, startIndex, cache, threads, bound, 0);
+    }
+
+    /**
+     * @param threads - Threads searching the start points in parallel (1 = sequential).
+     * @param bound   - Prune branches that cannot beat the shortest tour found so far (branch and bound).
+     * @param width   - Partial routes kept per depth by a beam search (0 = exhaustive depth-first search).
+     */
+    public RunIteratorV3(int iteration, int startIndex, @NonNull Cache cache, int threads, boolean bound, int width) {
         super(iteration, startIndex, cache);
+        Preconditions.checkArgument(threads > 0);
+        Preconditions.checkArgument(width >= 0);
+        this.threads = threads;
+        this.bound = bound;
+        this.width = width;
     }
 
     @Override
     public void run() throws Exception {
         List<Point> points = cache().pointList(0);
+        targets = targets(points);
+        if (bound || width > 0) {
+            bounds();
+        }
+        if (threads > 1) {
+            runParallel(points);
+            return;
+        }
         for (Point point : points) {
             Journey j = run(point);
-            if (j != null) {
-                if (journey == null) {
-                    if (j.isComplete())
-                        journey = j;
-                } else {
-                    if (j.isComplete() && j.distance() < journey.distance()) {
-                        journey = j;
-                    }
-                }
+            if (j != null && j.isComplete()) {
+                journey = shorter(journey, j);
             }
             LogUtils.info(getClass(), String.format("Finished point. [%s]", point));
         }
     }
 
+    private void runParallel(List<Point> points) {
+        AtomicReference<Journey> best = new AtomicReference<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new StartTask(points, 0, points.size(), best));
+        } finally {
+            pool.shutdown();
+        }
+        journey = best.get();
+    }
+
+    /**
+     * The shorter journey; on a tie the one from the earlier start point, as in the sequential search.
+     */
+    private Journey shorter(Journey current, Journey value) {
+        if (current == null) {
+            return value;
+        }
+        double c = length(current);
+        double v = length(value);
+        if (v < c || (v == c && value.points().get(0).sequence() < current.points().get(0).sequence())) {
+            return value;
+        }
+        return current;
+    }
+
+    /**
+     * Length of the complete journey, including the edge closing the tour.
+     */
+    private double length(Journey journey) {
+        PathRoute route = journey.route().get(0);
+        return journey.distance() + cache().distance(route.route().getFirst().sequence(),
+                route.route().getLast().sequence());
+    }
+
+    /**
+     * The shortest edge leaving and entering each point along the bid targets. A route leaves
+     * every point once and enters every point once, so either sum over the points still to be
+     * left (or entered) is an admissible bound of the rest of the tour.
+     */
+    private void bounds() {
+        outgoing = new double[targets.length];
+        incoming = new double[targets.length];
+        Arrays.fill(outgoing, Double.MAX_VALUE);
+        Arrays.fill(incoming, Double.MAX_VALUE);
+        for (int source = 0; source < targets.length; source++) {
+            for (int target : targets[source]) {
+                double d = cache().distance(source, target);
+                outgoing[source] = Math.min(outgoing[source], d);
+                incoming[target] = Math.min(incoming[target], d);
+            }
+        }
+    }
+
+    private static double sum(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * Whether a tour of the specified length (or a branch bounded by it) from the start point cannot
+     * beat the incumbent: it is longer, or as long but not from an earlier start point. A start point
+     * before the incumbent's is only cut on a strictly longer bound, as it wins a tie.
+     */
+    private boolean cut(double length, int start) {
+        Incumbent current = incumbent.get();
+        return (length > current.length || (length == current.length && start >= current.start));
+    }
+
+    private void offer(double length, int start) {
+        Incumbent value = new Incumbent(length, start);
+        incumbent.accumulateAndGet(value, (current, next) -> (next.before(current) ? next : current));
+    }
+
+    private static int[][] targets(List<Point> points) {
+        int[][] targets = new int[points.size()][];
+        for (Point point : points) {
+            targets[point.sequence()] = point.targets().stream().mapToInt(Point::sequence).toArray();
+        }
+        return targets;
+    }
+
     private Journey run(Point start) throws Exception {
-        Journey journey = null;
-        for (Point p : start.targets()) {
-            Point s = new Point(start);
-            Map<Integer, Point> visited = new HashMap<>();
-            ArrayList<Point> route = new ArrayList<>();
-            visited.put(s.sequence(), s);
-            route.add(s);
-            Point np = new Point(p);
-            Journey j = addPoint(s, np, route, visited);
-            if (journey == null) {
-                if (j != null) {
-                    if (j.isComplete())
-                        journey = j;
-                }
-            } else if (j != null && j.isComplete()) {
-                if (j.distance() < journey.distance()) {
-                    journey = j;
+        return (width > 0 ? beam(start) : search(start));
+    }
+
+    /**
+     * Depth-first search of the tours following the bid targets from the start point, keeping the
+     * shortest. The search backtracks over an explicit stack: the route, the next target to try and
+     * the route length are kept per depth in primitive arrays, and visited points in a bitset, so
+     * that no allocation happens per step. Each call uses its own scratch arrays.
+     * <p>
+     * With bound set, the sums of the shortest outgoing and incoming edges of the points still
+     * to be left and entered are kept per depth as well, and a branch is cut when its length plus
+     * the larger of the two cannot beat the incumbent shared by all start points.
+     */
+    private Journey search(Point start) throws Exception {
+        int size = cache().size();
+        int[] route = new int[size];
+        int[] cursor = new int[size];
+        double[] lengths = new double[size];
+        // bounds of the rest of the route: edges still to leave the points (the last one included)
+        // and to enter them (the start included)
+        double[] leaving = (bound ? new double[size] : null);
+        double[] entering = (bound ? new double[size] : null);
+        long[] visited = new long[(size + 63) >>> 6];
+        int[] best = null;
+        double bestLength = Double.MAX_VALUE;
+
+        route[0] = start.sequence();
+        visited[route[0] >>> 6] |= 1L << route[0];
+        if (bound) {
+            leaving[0] = sum(outgoing);
+            entering[0] = sum(incoming);
+        }
+        int depth = 1;
+        while (depth > 0) {
+            int current = route[depth - 1];
+            int[] values = targets[current];
+            if (depth == size) {
+                // complete route: close it if the start point is one of the targets
+                for (int target : values) {
+                    if (target == route[0]) {
+                        double length = lengths[depth - 1] + cache().distance(current, target);
+                        if (length < bestLength && (!bound || !cut(length, route[0]))) {
+                            bestLength = length;
+                            best = route.clone();
+                            if (bound) {
+                                offer(length, route[0]);
+                            }
+                        }
+                        break;
+                    }
                 }
+                cursor[depth - 1] = values.length;
             }
+            if (cursor[depth - 1] == values.length) {
+                // undo: release the point and return to the previous depth
+                visited[current >>> 6] &= ~(1L << current);
+                cursor[depth - 1] = 0;
+                depth--;
+                continue;
+            }
+            int target = values[cursor[depth - 1]++];
+            if ((visited[target >>> 6] & (1L << target)) != 0) continue;
+            double length = lengths[depth - 1] + cache().distance(current, target);
+            if (bound) {
+                double out = leaving[depth - 1] - outgoing[current];
+                double in = entering[depth - 1] - incoming[target];
+                if (cut(length + Math.max(out, in), route[0])) continue;
+                leaving[depth] = out;
+                entering[depth] = in;
+            }
+            visited[target >>> 6] |= 1L << target;
+            route[depth] = target;
+            lengths[depth] = length;
+            depth++;
         }
-        return journey;
+        return (best != null ? journey(best) : null);
     }
 
-    private Journey route(Point current, Map<Integer, Point> visited, ArrayList<Point> route) throws Exception {
-        Journey journey = null;
-        for (Point p : current.targets()) {
-            Map<Integer, Point> v = new HashMap<>(visited);
-            ArrayList<Point> r = new ArrayList<>(route);
-            Point cp = new Point(current);
-            Point np = new Point(p);
-            Journey j = addPoint(cp, np, r, v);
-            if (journey == null) {
-                if (j != null) {
-                    if (j.isComplete())
-                        journey = j;
-                }
-            } else if (j != null && j.isComplete()) {
-                if (j.distance() < journey.distance()) {
-                    journey = j;
+    /**
+     * Beam search of the tours following the bid targets from the start point: the partial routes
+     * of each depth are extended over the targets of their last point, equivalent extensions are
+     * merged, and only the best width of them, by length plus the bound of the remainder, are kept
+     * for the next depth. Time and memory are O(n * width * targets), at the cost of optimality.
+     */
+    private Journey beam(Point start) throws Exception {
+        int size = cache().size();
+        int words = (size + 63) >>> 6;
+        // the last point and parent index of the partial routes kept per depth, to rebuild the route
+        int[][] points = new int[size][];
+        int[][] parents = new int[size][];
+
+        long[] visited = new long[words];
+        visited[start.sequence() >>> 6] |= 1L << start.sequence();
+        List<Partial> beam = new ArrayList<>(1);
+        beam.add(new Partial(start.sequence(), -1, visited, 0, sum(outgoing), sum(incoming)));
+        points[0] = new int[]{start.sequence()};
+        parents[0] = new int[]{-1};
+
+        for (int depth = 1; depth < size && !beam.isEmpty(); depth++) {
+            Map<Partial, Partial> expanded = new HashMap<>(beam.size() * Run.MAX_BIDS);
+            for (int ii = 0; ii < beam.size(); ii++) {
+                Partial partial = beam.get(ii);
+                for (int target : targets[partial.last]) {
+                    if ((partial.visited[target >>> 6] & (1L << target)) != 0) continue;
+                    long[] values = partial.visited.clone();
+                    values[target >>> 6] |= 1L << target;
+                    Partial next = new Partial(target, ii, values,
+                            partial.length + cache().distance(partial.last, target),
+                            partial.leaving - outgoing[partial.last],
+                            partial.entering - incoming[target]);
+                    if (bound && cut(next.score, start.sequence())) continue;
+                    Partial current = expanded.get(next);
+                    if (current == null || next.length < current.length) {
+                        expanded.put(next, next);
+                    }
                 }
             }
+            beam = new ArrayList<>(expanded.values());
+            beam.sort(Comparator.comparingDouble((Partial partial) -> partial.score));
+            if (beam.size() > width) {
+                beam = new ArrayList<>(beam.subList(0, width));
+            }
+            points[depth] = new int[beam.size()];
+            parents[depth] = new int[beam.size()];
+            for (int ii = 0; ii < beam.size(); ii++) {
+                points[depth][ii] = beam.get(ii).last;
+                parents[depth][ii] = beam.get(ii).parent;
+            }
+        }
+        if (beam.isEmpty()) {
+            return null;
         }
-        return journey;
-    }
 
-    private Journey addPoint(Point source, Point target, ArrayList<Point> route, Map<Integer, Point> visited) throws Exception {
-        if (visited.containsKey(target.sequence())) {
-            if (route.size() == cache().size()) {
-                Point start = route.get(0);
-                if (start == target) {
-                    Path path = source.path(target.sequence());
-                    source.connect(path);
-                    target.connect(path);
-                    route.add(target);
-                    visited.put(target.sequence(), target);
-                    Journey j = new Journey(route);
-                    j.load();
-                    return j;
+        // close the complete routes whose last point bids for the start point
+        int best = -1;
+        double bestLength = Double.MAX_VALUE;
+        for (int ii = 0; ii < beam.size(); ii++) {
+            Partial partial = beam.get(ii);
+            for (int target : targets[partial.last]) {
+                if (target == start.sequence()) {
+                    double length = partial.length + cache().distance(partial.last, target);
+                    if (length < bestLength) {
+                        bestLength = length;
+                        best = ii;
+                    }
+                    break;
                 }
             }
-        } else {
-            Path path = source.path(target.sequence());
+        }
+        if (best < 0 || (bound && cut(bestLength, start.sequence()))) {
+            return null;
+        }
+        if (bound) {
+            offer(bestLength, start.sequence());
+        }
+        int[] route = new int[size];
+        for (int depth = size - 1, index = best; depth >= 0; depth--) {
+            route[depth] = points[depth][index];
+            index = parents[depth][index];
+        }
+        return journey(route);
+    }
+
+    /**
+     * Build the journey of a complete route, on copies of the points connected by their own paths.
+     */
+    private Journey journey(int[] route) throws Exception {
+        List<Point> points = new ArrayList<>(route.length);
+        for (int sequence : route) {
+            Point point = new Point(cache().get(sequence));
+            point.clearConnections();
+            points.add(point);
+        }
+        for (int ii = 0; ii < points.size(); ii++) {
+            Point source = points.get(ii);
+            Point target = points.get((ii + 1) % points.size());
+            Path path = new Path(source, target);
+            path.actualLength(cache().distance(source.sequence(), target.sequence()));
             source.connect(path);
             target.connect(path);
-            route.add(target);
-            visited.put(target.sequence(), target);
-            return route(target, visited, route);
         }
-        return null;
+        Journey journey = new Journey(points);
+        journey.load();
+        return journey;
     }
 }
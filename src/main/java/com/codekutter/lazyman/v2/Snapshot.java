@@ -0,0 +1,210 @@
+package com.codekutter.lazyman.v2;
+
+import com.codekutter.lazyman.common.LogUtils;
+import com.codekutter.lazyman.v2.model.Point;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import lombok.NonNull;
+import org.moeaframework.problem.tsplib.DataType;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Binary snapshot of a loaded (and sorted) instance cache.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ *   int     magic
+ *   int     version
+ *   byte[32] SHA-256 of the source TSPLIB file
+ *   int     data type ordinal
+ *   int     point count (n)
+ *   double  X[n], Y[n], minLength[n], minLength2[n]
+ *   double  distances[n * (n - 1) / 2]   - lower triangle, [i * (i - 1) / 2 + j] for i > j
+ *   int     sortIndex[n][n - 1]
+ * </pre>
+ */
+public class Snapshot {
+    public static final int MAGIC = 0x4C5A534E;
+    public static final int VERSION = 1;
+
+    private static final int HASH_SIZE = 32;
+    private static final int HEADER_SIZE = 4 + 4 + HASH_SIZE + 4 + 4;
+
+    public static HashCode hash(@NonNull File source) throws IOException {
+        return com.google.common.io.Files.asByteSource(source).hash(Hashing.sha256());
+    }
+
+    public static File file(@NonNull File dir, @NonNull HashCode hash) {
+        return new File(dir, String.format("%s.snapshot", hash.toString()));
+    }
+
+    public static void write(@NonNull File file,
+                             @NonNull HashCode hash,
+                             @NonNull DataType dataType,
+                             @NonNull Cache cache) throws Exception {
+        int n = cache.size();
+        List<Point> points = cache.pointList(0);
+        File tmp = new File(file.getParentFile(), String.format("%s.tmp", file.getName()));
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(hash.asBytes());
+            out.writeInt(dataType.ordinal());
+            out.writeInt(n);
+            for (Point point : points) {
+                out.writeDouble(point.X());
+            }
+            for (Point point : points) {
+                out.writeDouble(point.Y());
+            }
+            for (Point point : points) {
+                out.writeDouble(point.minLength());
+            }
+            for (Point point : points) {
+                out.writeDouble(point.minLength2());
+            }
+            for (int ii = 1; ii < n; ii++) {
+                for (int jj = 0; jj < ii; jj++) {
+                    out.writeDouble(cache.distance(ii, jj));
+                }
+            }
+            for (Point point : points) {
+                List<Integer> index = point.sortIndex();
+                if (index == null || index.size() != n - 1) {
+                    throw new Exception(String.format("Point not sorted. [point=%s]", point));
+                }
+                for (int sequence : index) {
+                    out.writeInt(sequence);
+                }
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LogUtils.info(Snapshot.class, String.format("Written snapshot. [path=%s][points=%d]", file.getAbsolutePath(), n));
+    }
+
+    public static Cache read(@NonNull File file,
+                             @NonNull HashCode hash,
+                             @NonNull DataType dataType) throws Exception {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(String.format("Not a snapshot file. [path=%s]", file.getAbsolutePath()));
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported snapshot version. [path=%s][version=%d]",
+                        file.getAbsolutePath(), version));
+            }
+            byte[] digest = new byte[HASH_SIZE];
+            header.get(digest);
+            if (!HashCode.fromBytes(digest).equals(hash)) {
+                throw new IOException(String.format("Snapshot hash mismatch. [path=%s]", file.getAbsolutePath()));
+            }
+            int type = header.getInt();
+            if (type != dataType.ordinal()) {
+                throw new IOException(String.format("Invalid snapshot Data type. [path=%s][expected type=%s]",
+                        file.getAbsolutePath(), dataType.name()));
+            }
+            int n = header.getInt();
+            Preconditions.checkArgument(n > 1);
+
+            long pairs = (long) n * (n - 1) / 2;
+            long offset = HEADER_SIZE;
+            Section values = new Section(channel, offset, 4L * n, Double.BYTES);
+            offset += 4L * n * Double.BYTES;
+            Section distances = new Section(channel, offset, pairs, Double.BYTES);
+            offset += pairs * Double.BYTES;
+            Section indexes = new Section(channel, offset, 2 * pairs, Integer.BYTES);
+            offset += 2 * pairs * Integer.BYTES;
+            if (channel.size() != offset) {
+                throw new IOException(String.format("Invalid snapshot size. [path=%s][size=%d][expected=%d]",
+                        file.getAbsolutePath(), channel.size(), offset));
+            }
+
+            // paths are created on first request from the mapped distances (the mapping stays valid after close)
+            Cache cache = new Cache();
+            cache.init(n, (s, t) -> {
+                long ii = Math.min(s, t);
+                long jj = Math.max(s, t);
+                return distances.getDouble(jj * (jj - 1) / 2 + ii);
+            }, n - 1);
+            for (int ii = 0; ii < n; ii++) {
+                cache.add(ii, values.getDouble(ii), values.getDouble(n + ii));
+            }
+            for (int ii = 0; ii < n; ii++) {
+                Point point = cache.get(ii);
+                point.sort(new SortIndex(indexes, (long) ii * (n - 1), n - 1),
+                        values.getDouble(2 * n + ii), values.getDouble(3 * n + ii));
+            }
+            LogUtils.info(Snapshot.class, String.format("Loaded snapshot. [path=%s][points=%d]", file.getAbsolutePath(), n));
+            return cache;
+        }
+    }
+
+    /**
+     * A section of the snapshot mapped in chunks, so that it is not limited to the 2GB of a single buffer.
+     */
+    private static final class Section {
+        // elements per chunk: a power of two, so that the chunk of an element is a shift away
+        private static final int CHUNK_SHIFT = 27;
+        private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+        private final MappedByteBuffer[] chunks;
+        private final int width;
+
+        private Section(FileChannel channel, long offset, long count, int width) throws IOException {
+            this.width = width;
+            chunks = new MappedByteBuffer[(int) ((count + CHUNK_MASK) >>> CHUNK_SHIFT)];
+            for (int ii = 0; ii < chunks.length; ii++) {
+                long first = (long) ii << CHUNK_SHIFT;
+                long size = Math.min(count - first, 1L << CHUNK_SHIFT) * width;
+                chunks[ii] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * width, size);
+            }
+        }
+
+        private double getDouble(long index) {
+            return chunks[(int) (index >>> CHUNK_SHIFT)].getDouble((int) (index & CHUNK_MASK) * width);
+        }
+
+        private int getInt(long index) {
+            return chunks[(int) (index >>> CHUNK_SHIFT)].getInt((int) (index & CHUNK_MASK) * width);
+        }
+    }
+
+    /**
+     * Read-only view of a point's sorted neighbour sequences backed by the mapped snapshot.
+     */
+    private static final class SortIndex extends AbstractList<Integer> implements RandomAccess {
+        private final Section buffer;
+        private final long offset;
+        private final int size;
+
+        private SortIndex(Section buffer, long offset, int size) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public Integer get(int index) {
+            Preconditions.checkElementIndex(index, size);
+            return buffer.getInt(offset + index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
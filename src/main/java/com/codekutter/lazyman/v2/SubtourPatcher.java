@@ -0,0 +1,187 @@
+package com.codekutter.lazyman.v2;
+
+import com.codekutter.lazyman.common.LogUtils;
+import com.codekutter.lazyman.v2.model.Journey;
+import com.codekutter.lazyman.v2.model.PathRoute;
+import com.codekutter.lazyman.v2.model.Point;
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.experimental.Accessors;
+import org.moeaframework.problem.tsplib.Tour;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges the disjoint subtours of an incomplete journey into a single tour (Karp patching).
+ * The smallest subtour is repeatedly joined to another one by the cheapest exchange of one edge
+ * from each: (a, a') and (b, b') are replaced by (a, b) and (a', b'). Only the nearest candidates
+ * of each point are tried, falling back to all other points when none lies in another subtour.
+ * Open routes are closed between their end points, and points already listed by an earlier route
+ * (open chains may be listed more than once by the journey) are skipped.
+ */
+@Getter
+@Accessors(fluent = true)
+public class SubtourPatcher {
+    public static final int CANDIDATES = 10;
+
+    private final Cache cache;
+    private int[] next;
+    private int[] prev;
+    private int[] owner;
+    private List<List<Integer>> members;
+    private int patches = 0;
+    private double cost = 0;
+
+    public SubtourPatcher(@NonNull Cache cache) {
+        this.cache = cache;
+    }
+
+    public Tour patch(@NonNull Journey journey) {
+        Preconditions.checkState(journey.route() != null);
+        return patch(journey.route());
+    }
+
+    public Tour patch(@NonNull List<PathRoute> routes) {
+        Preconditions.checkArgument(!routes.isEmpty());
+        int size = cache.size();
+        next = new int[size];
+        prev = new int[size];
+        owner = new int[size];
+        members = new ArrayList<>(routes.size());
+        patches = 0;
+        cost = 0;
+
+        Arrays.fill(owner, -1);
+
+        PriorityQueue<int[]> queue = new PriorityQueue<>((s1, s2) -> Integer.compare(s1[0], s2[0]));
+        int count = 0;
+        for (PathRoute route : routes) {
+            List<Integer> values = new ArrayList<>(route.route().size());
+            for (Point point : route.route()) {
+                int sequence = point.sequence();
+                if (owner[sequence] < 0) {
+                    owner[sequence] = members.size();
+                    values.add(sequence);
+                }
+            }
+            if (values.isEmpty()) continue;
+            int last = values.get(values.size() - 1);
+            for (int sequence : values) {
+                next[last] = sequence;
+                prev[sequence] = last;
+                last = sequence;
+            }
+            queue.add(new int[]{values.size(), members.size()});
+            members.add(values);
+            count += values.size();
+        }
+        Preconditions.checkArgument(count == size,
+                String.format("Routes do not cover all points. [points=%d][size=%d]", count, size));
+
+        int subtours = members.size();
+        while (subtours > 1) {
+            int[] smallest = queue.poll();
+            List<Integer> values = members.get(smallest[1]);
+            // merged subtours are stale
+            if (values == null || values.size() != smallest[0]) continue;
+            int target = merge(smallest[1]);
+            queue.add(new int[]{members.get(target).size(), target});
+            subtours--;
+        }
+
+        int[] nodes = new int[size];
+        int current = 0;
+        for (int ii = 0; ii < size; ii++) {
+            nodes[ii] = current + 1;
+            current = next[current];
+        }
+        Preconditions.checkState(current == 0);
+        LogUtils.info(getClass(), String.format("Patched subtours. [#subtours=%d][cost=%f]", members.size(), cost));
+        return Tour.createTour(nodes);
+    }
+
+    /**
+     * Join the subtour to the one offering the cheapest exchange, returning the index of the merged subtour.
+     */
+    private int merge(int subtour) {
+        List<Integer> values = members.get(subtour);
+        // best exchange: (x, x2) of the subtour and (y, y2) of another are replaced by (x, y) and (x2, y2)
+        double best = Double.MAX_VALUE;
+        int[] exchange = new int[4];
+        for (int x : values) {
+            List<Integer> sortIndex = cache.get(x).sortIndex();
+            int limit = (sortIndex != null ? Math.min(CANDIDATES, sortIndex.size()) : 0);
+            for (int ii = 0; ii < limit; ii++) {
+                best = evaluate(subtour, x, sortIndex.get(ii), best, exchange);
+            }
+        }
+        if (best == Double.MAX_VALUE) {
+            for (int x : values) {
+                for (int y = 0; y < cache.size(); y++) {
+                    best = evaluate(subtour, x, y, best, exchange);
+                }
+            }
+        }
+        int x = exchange[0];
+        int x2 = exchange[1];
+        int y = exchange[2];
+        int y2 = exchange[3];
+        int target = owner[y];
+
+        // orient the edge of the target so that y2 follows y
+        if (y2 != next[y]) {
+            int t = x;
+            x = x2;
+            x2 = t;
+            t = y;
+            y = y2;
+            y2 = t;
+        }
+        // orient the subtour so that walking forward from x ends at x2
+        if (x != x2 && prev[x] != x2) {
+            for (int point : values) {
+                int t = next[point];
+                next[point] = prev[point];
+                prev[point] = t;
+            }
+        }
+        next[y] = x;
+        prev[x] = y;
+        next[x2] = y2;
+        prev[y2] = x2;
+
+        List<Integer> merged = members.get(target);
+        for (int point : values) {
+            owner[point] = target;
+            merged.add(point);
+        }
+        members.set(subtour, null);
+        patches++;
+        cost += best;
+        return target;
+    }
+
+    private double evaluate(int subtour, int x, int y, double best, int[] exchange) {
+        if (owner[y] == subtour) return best;
+        double xy = cache.distance(x, y);
+        for (int x2 : new int[]{next[x], prev[x]}) {
+            double xx2 = (x2 != x ? cache.distance(x, x2) : 0);
+            for (int y2 : new int[]{next[y], prev[y]}) {
+                double yy2 = (y2 != y ? cache.distance(y, y2) : 0);
+                double delta = xy + (x2 != y2 ? cache.distance(x2, y2) : 0) - xx2 - yy2;
+                if (delta < best) {
+                    best = delta;
+                    exchange[0] = x;
+                    exchange[1] = x2;
+                    exchange[2] = y;
+                    exchange[3] = y2;
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -1,8 +1,10 @@
 package com.codekutter.lazyman.v2.model;
 
+import com.google.common.base.Preconditions;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.experimental.Accessors;
+import org.moeaframework.problem.tsplib.Tour;
 
 import java.util.*;
 
@@ -116,4 +118,38 @@ public class Journey {
     public boolean isComplete() {
         return route.size() == 1;
     }
+
+    /**
+     * The smallest point sequence of the route containing each point (indexed by point sequence):
+     * two journeys with equal values are made of the same subtours.
+     */
+    public int[] subtours() {
+        Preconditions.checkState(route != null);
+        int[] values = new int[points.size()];
+        for (PathRoute tour : route) {
+            int min = Integer.MAX_VALUE;
+            for (Point point : tour.route()) {
+                min = Math.min(min, point.sequence());
+            }
+            for (Point point : tour.route()) {
+                values[point.sequence()] = min;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Convert the complete journey to a TSPLIB tour (node ids are the point sequence + 1), so that
+     * the tour improvement heuristics can be applied to it.
+     */
+    public Tour toTour() {
+        Preconditions.checkState(route != null && isComplete());
+        PathRoute tour = route.get(0);
+        int[] nodes = new int[tour.route().size()];
+        int index = 0;
+        for (Point point : tour.route()) {
+            nodes[index++] = point.sequence() + 1;
+        }
+        return Tour.createTour(nodes);
+    }
 }
@@ -38,10 +38,7 @@ public class Path implements Comparable<Path> {
     public double compute(double height, double length, Point point) {
         Preconditions.checkNotNull(A);
         Preconditions.checkNotNull(B);
-        double d = Math.sqrt(((height * height) + (length * length)));
-        double c1 = ((double) point.chainLength());
-        double c2 = ((double) A.chainLength());
-        return d;// + ((c1 * c2) / (d * d));
+        return Math.sqrt(((height * height) + (length * length)));
     }
 
     @Override
@@ -3,12 +3,15 @@ package com.codekutter.lazyman.v2.model;
 import com.codekutter.lazyman.v2.utils.Utils;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
 
 @Getter
 @Accessors(fluent = true)
@@ -25,8 +28,11 @@ public class Point {
     private List<Integer> sortIndex;
     private final Path[] connections = new Path[2];
     private int connectCount = 0;
-    private int chainLength = 0;
     private final List<Point> targets = new ArrayList<>();
+    @Getter(AccessLevel.NONE)
+    private IntFunction<Path> resolver;
+    @Getter(AccessLevel.NONE)
+    private IntFunction<List<Integer>> expander;
 
     public Point(int sequence,
                  @NonNull Double X,
@@ -41,6 +47,20 @@ public class Point {
         connections[1] = null;
     }
 
+    public Point(int sequence,
+                 @NonNull Double X,
+                 @NonNull Double Y,
+                 @NonNull IntFunction<Path> resolver) {
+        Preconditions.checkArgument(sequence >= 0);
+        this.sequence = sequence;
+        this.X = X;
+        this.Y = Y;
+        this.resolver = resolver;
+        paths = new ConcurrentHashMap<>();
+        connections[0] = null;
+        connections[1] = null;
+    }
+
     public Point(@NonNull Point point) {
         sequence = point.sequence();
         X = point.X;
@@ -52,6 +72,8 @@ public class Point {
         minLength2 = point.minLength2;
         paths = point.paths;
         sortIndex = point.sortIndex;
+        resolver = point.resolver;
+        expander = point.expander;
         connections[0] = point.connections[0];
         connections[1] = point.connections[1];
         this.targets.clear();
@@ -69,6 +91,10 @@ public class Point {
         connectCount = 0;
     }
 
+    /**
+     * Connect the path. Only this point is modified, so the points reached through the connections
+     * may be shared between threads.
+     */
     public void connect(@NonNull Path path) throws Exception {
         if (hasConnection(path)) return;
         if (connections[0] == null) {
@@ -84,57 +110,6 @@ public class Point {
             delta = (d1 + d2) - minConnectionDistance;
         }
         connectCount++;
-        updateChain(0);
-    }
-
-    private void updateChain(int value) throws Exception {
-        Set<Integer> visited = new LinkedHashSet<>();
-        chainLength = connectionCount(this, visited) + value;
-        visited.clear();
-        updateChain(this, chainLength, visited);
-    }
-
-    private void updateChain(Point source, int value, Set<Integer> visited) throws Exception {
-        if (visited.contains(sequence)) {
-            throw new Exception(String.format("Point already there [%s] [%d]", visited, sequence));
-        }
-        visited.add(sequence);
-        if (connections[0] != null) {
-            Point t = connections[0].target(this);
-            if (!t.equals(source) && !visited.contains(t.sequence)) {
-                t.updateChain(this, value, visited);
-            }
-        }
-        if (connections[1] != null) {
-            Point t = connections[1].target(this);
-            if (!t.equals(source) && !visited.contains(t.sequence)) {
-                t.updateChain(this, value, visited);
-            }
-        }
-        chainLength = value;
-    }
-
-    private int connectionCount(Point source, Set<Integer> visited) throws Exception {
-        if (visited.contains(sequence)) {
-            throw new Exception(String.format("Point already there [%s] [%d]", visited, sequence));
-        }
-        visited.add(sequence);
-        int c = 0;
-        if (connections[0] != null) {
-            Point t = connections[0].target(this);
-            if (!t.equals(source) && !visited.contains(t.sequence)) {
-                c += t.connectionCount(this, visited);
-                c++;
-            }
-        }
-        if (connections[1] != null) {
-            Point t = connections[1].target(this);
-            if (!t.equals(source) && !visited.contains(t.sequence)) {
-                c += t.connectionCount(this, visited);
-                c++;
-            }
-        }
-        return c;
     }
 
     public boolean hasPath(@NonNull Point point) {
@@ -208,7 +183,7 @@ public class Point {
     }
 
     public Path isConnectedTo(@NonNull Point point) {
-        Path path = paths.get(point.sequence);
+        Path path = path(point.sequence);
         if (isConnectedTo(path)) {
             return path;
         }
@@ -216,7 +191,12 @@ public class Point {
     }
 
     public Path path(int sequence) {
-        return paths.get(sequence);
+        Path path = paths.get(sequence);
+        if (path == null && resolver != null && sequence != this.sequence) {
+            // the resolver publishes the path to both end points
+            path = resolver.apply(sequence);
+        }
+        return path;
     }
 
     public double distance(@NonNull Point target) {
@@ -232,7 +212,7 @@ public class Point {
             if (index >= sortIndex.size()) break;
 
             int key = sortIndex.get(index);
-            Path p = paths.get(key);
+            Path p = path(key);
             if (!isConnectedTo(p)) {
                 if (ip == null) {
                     ip = new IndexedPath().index(index).path(p);
@@ -267,20 +247,16 @@ public class Point {
         if (connections[0] != null) {
             Point t = connections[0].target(this);
             if (t.equals(target)) {
-                t.updateChain(-1);
                 connections[0] = null;
                 connectCount--;
-                updateChain(-1);
                 return;
             }
         }
         if (connections[1] != null) {
             Point t = connections[1].target(this);
             if (t.equals(target)) {
-                t.updateChain(-1);
                 connections[1] = null;
                 connectCount--;
-                updateChain(-1);
                 return;
             }
         }
@@ -294,11 +270,7 @@ public class Point {
     public void sort() throws Exception {
         List<Path> ps = new ArrayList<>(paths.values());
         Collections.sort(ps);
-        if (sortIndex == null) {
-            sortIndex = new ArrayList<>(ps.size());
-        } else {
-            sortIndex.clear();
-        }
+        sortIndex = new ArrayList<>(ps.size());
         for (Path p : ps) {
             Point t = p.target(this);
             sortIndex.add(t.sequence);
@@ -310,6 +282,34 @@ public class Point {
         minLength2 = paths.get(i2).actualLength();
     }
 
+    public void sort(@NonNull List<Integer> sortIndex, double minLength, double minLength2) {
+        Preconditions.checkArgument(sortIndex.size() >= 2);
+        this.sortIndex = sortIndex;
+        this.minLength = minLength;
+        this.minLength2 = minLength2;
+        minConnectionDistance = minLength + minLength2;
+    }
+
+    public void expander(IntFunction<List<Integer>> expander) {
+        this.expander = expander;
+    }
+
+    /**
+     * Double the candidate list (if it was limited to the nearest candidates).
+     *
+     * @return - True if more candidates were added.
+     */
+    public boolean extend() {
+        if (expander == null) return false;
+        List<Integer> current = sortIndex;
+        List<Integer> extended = expander.apply(current.size() * 2);
+        if (extended == null || extended.size() <= current.size()) {
+            return false;
+        }
+        sortIndex = extended;
+        return true;
+    }
+
     public double getDelta(@NonNull Path path) throws Exception {
         Path other = null;
         if (connections[0] != null && connections[0].equals(path)) {
@@ -379,7 +379,7 @@ public class Point {
 
     @Override
     public String toString() {
-        return String.format("{%d}[%4.2f](%d)", sequence, elevation, chainLength);
+        return String.format("{%d}[%4.2f]", sequence, elevation);
     }
 
     public int compare(@NonNull Point other) {
@@ -102,15 +102,18 @@ public class Route {
     }
 
     private Path forPoint(Point point, int index, Point used) throws Exception {
-        for (int ii = index; ii < point.sortIndex().size(); ii++) {
-            int key = point.sortIndex().get(ii);
-            Path p = point.path(key);
-            Point t = p.target(point);
-            if (!map.containsKey(t.sequence())) {
-                if (used == null || !used.equals(t))
-                    return p;
+        int ii = index;
+        do {
+            for (; ii < point.sortIndex().size(); ii++) {
+                int key = point.sortIndex().get(ii);
+                Path p = point.path(key);
+                Point t = p.target(point);
+                if (!map.containsKey(t.sequence())) {
+                    if (used == null || !used.equals(t))
+                        return p;
+                }
             }
-        }
+        } while (point.extend());
         return null;
     }
 
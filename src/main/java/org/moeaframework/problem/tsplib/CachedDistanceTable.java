@@ -0,0 +1,430 @@
+/* Copyright 2012 David Hadka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package org.moeaframework.problem.tsplib;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A distance lookup that caches rows of another lookup, such as a
+ * {@link DistanceTable} whose distances are costly to compute.  A row holds
+ * the distances from one node to every node, or only to its candidate
+ * neighbors when a neighbor graph is given, computed in a single batch by
+ * {@link DistanceLookup#getDistancesBetween(int, int[], double[])} the first
+ * time a distance from that node is requested.  At most a fixed number of
+ * rows are kept, evicting the least recently used row when full, so memory
+ * stays bounded on instances too large to hold a full distance matrix.
+ * Distances to nodes outside the neighbors of both nodes bypass the cache.
+ * <p>
+ * When the distances are symmetric, a distance is served from the row of
+ * either node.  The hit, miss, eviction and bypass counters report how well
+ * the capacity and the neighbors suit the access pattern.  This class is
+ * thread safe: rows are looked up and inserted under a lock, but missing
+ * rows are computed outside of it, so two threads missing the same row may
+ * both compute it (and both count a miss).
+ */
+public class CachedDistanceTable implements DistanceLookup {
+	
+	/**
+	 * The underlying distance lookup.
+	 */
+	private final DistanceLookup distanceTable;
+	
+	/**
+	 * The maximum number of rows kept in this cache.
+	 */
+	private final int capacity;
+	
+	/**
+	 * {@code true} if the distance between two nodes is the same in both
+	 * directions; {@code false} otherwise.
+	 */
+	private final boolean symmetric;
+	
+	/**
+	 * The identifiers of all nodes in the underlying distance lookup.
+	 */
+	private final int[] nodes;
+	
+	/**
+	 * The position of each node in {@link #nodes}, indexed by node
+	 * identifier; or {@code -1} if no node exists with that identifier.
+	 */
+	private final int[] positions;
+	
+	/**
+	 * The sorted identifiers of the candidate neighbors of each node, indexed
+	 * by position; or {@code null} if a row holds the distances to every node.
+	 */
+	private final int[][] neighbors;
+	
+	/**
+	 * The cached rows in least recently used order, keyed by node identifier.
+	 */
+	private final LinkedHashMap<Integer, double[]> rows;
+	
+	/**
+	 * The number of distances served from a cached row.
+	 */
+	private long hits;
+	
+	/**
+	 * The number of distances that required computing a row.
+	 */
+	private long misses;
+	
+	/**
+	 * The number of rows evicted from this cache.
+	 */
+	private long evictions;
+	
+	/**
+	 * The number of distances computed by the underlying lookup because
+	 * neither node is a neighbor of the other.
+	 */
+	private long bypasses;
+	
+	/**
+	 * Constructs a new cache of symmetric distances.
+	 * 
+	 * @param distanceTable the underlying distance lookup
+	 * @param capacity the maximum number of rows kept in this cache
+	 * @throws IllegalArgumentException if the capacity is not positive
+	 */
+	public CachedDistanceTable(DistanceLookup distanceTable, int capacity) {
+		this(distanceTable, capacity, true);
+	}
+	
+	/**
+	 * Constructs a new cache of distances.
+	 * 
+	 * @param distanceTable the underlying distance lookup
+	 * @param capacity the maximum number of rows kept in this cache
+	 * @param symmetric {@code true} if the distance between two nodes is the
+	 *        same in both directions; {@code false} otherwise
+	 * @throws IllegalArgumentException if the capacity is not positive
+	 */
+	public CachedDistanceTable(DistanceLookup distanceTable, int capacity,
+			boolean symmetric) {
+		this(distanceTable, capacity, symmetric, null);
+	}
+	
+	/**
+	 * Constructs a new cache of distances whose rows only hold the distances
+	 * to the candidate neighbors of each node.
+	 * 
+	 * @param distanceTable the underlying distance lookup
+	 * @param capacity the maximum number of rows kept in this cache
+	 * @param symmetric {@code true} if the distance between two nodes is the
+	 *        same in both directions; {@code false} otherwise
+	 * @param neighbors the identifiers of the candidate neighbors of each
+	 *        node, ordered as {@link #listNodes()}; or {@code null} to cache
+	 *        the distances to every node
+	 * @throws IllegalArgumentException if the capacity is not positive, if
+	 *         the neighbors are not given for every node, or if a neighbor
+	 *         does not exist
+	 */
+	public CachedDistanceTable(DistanceLookup distanceTable, int capacity,
+			boolean symmetric, int[][] neighbors) {
+		super();
+		
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		
+		this.distanceTable = distanceTable;
+		this.capacity = capacity;
+		this.symmetric = symmetric;
+		
+		nodes = distanceTable.listNodes();
+		
+		int maximum = -1;
+		
+		for (int id : nodes) {
+			maximum = Math.max(maximum, id);
+		}
+		
+		positions = new int[maximum + 1];
+		Arrays.fill(positions, -1);
+		
+		for (int i = 0; i < nodes.length; i++) {
+			positions[nodes[i]] = i;
+		}
+		
+		if (neighbors == null) {
+			this.neighbors = null;
+		} else {
+			if (neighbors.length != nodes.length) {
+				throw new IllegalArgumentException(
+						"neighbors must be given for every node");
+			}
+			
+			this.neighbors = new int[nodes.length][];
+			
+			for (int i = 0; i < nodes.length; i++) {
+				this.neighbors[i] = neighbors[i].clone();
+				Arrays.sort(this.neighbors[i]);
+				
+				for (int id : this.neighbors[i]) {
+					positionOf(id);
+				}
+			}
+		}
+		
+		rows = new LinkedHashMap<Integer, double[]>(16, 0.75f, true) {
+
+			private static final long serialVersionUID =
+					-2315716409787339512L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<Integer, double[]> eldest) {
+				if (size() > CachedDistanceTable.this.capacity) {
+					evictions++;
+					return true;
+				}
+				
+				return false;
+			}
+			
+		};
+	}
+	
+	/**
+	 * Returns the underlying distance lookup.
+	 * 
+	 * @return the underlying distance lookup
+	 */
+	public DistanceLookup getDistanceTable() {
+		return distanceTable;
+	}
+	
+	/**
+	 * Returns the maximum number of rows kept in this cache.
+	 * 
+	 * @return the maximum number of rows kept in this cache
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Returns the number of distances served from a cached row.
+	 * 
+	 * @return the number of distances served from a cached row
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * Returns the number of distances that required computing a row.
+	 * 
+	 * @return the number of distances that required computing a row
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * Returns the number of rows evicted from this cache.
+	 * 
+	 * @return the number of rows evicted from this cache
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+	
+	/**
+	 * Returns the number of distances computed by the underlying lookup
+	 * because neither node is a neighbor of the other.
+	 * 
+	 * @return the number of distances that bypassed this cache
+	 */
+	public synchronized long getBypasses() {
+		return bypasses;
+	}
+	
+	/**
+	 * Returns the number of rows currently cached.
+	 * 
+	 * @return the number of rows currently cached
+	 */
+	public synchronized int size() {
+		return rows.size();
+	}
+	
+	/**
+	 * Removes all cached rows and resets the counters.
+	 */
+	public synchronized void clear() {
+		rows.clear();
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+		bypasses = 0;
+	}
+	
+	/**
+	 * Returns the position of the specified node in {@link #listNodes()}.
+	 * 
+	 * @param id the identifier of the node
+	 * @return the position of the node
+	 * @throws IllegalArgumentException if no node exists with the specified
+	 *         identifier
+	 */
+	private int positionOf(int id) {
+		if ((id < 0) || (id >= positions.length) || (positions[id] < 0)) {
+			throw new IllegalArgumentException("no node with identifier " + id);
+		}
+		
+		return positions[id];
+	}
+	
+	/**
+	 * Returns the index of the distance to a node in the row of another.
+	 * 
+	 * @param position the position of the node owning the row
+	 * @param id the identifier of the node the distance leads to
+	 * @return the index in the row, or {@code -1} if the row does not hold
+	 *         the distance
+	 */
+	private int columnOf(int position, int id) {
+		if (neighbors == null) {
+			return positions[id];
+		}
+		
+		return Math.max(Arrays.binarySearch(neighbors[position], id), -1);
+	}
+	
+	/**
+	 * Returns the row of distances from the specified node, computing and
+	 * caching it if necessary.  The row is computed without holding the lock
+	 * on this instance.
+	 * 
+	 * @param id the identifier of the node
+	 * @return the distances from the node, ordered as its neighbors or as
+	 *         {@link #listNodes()}
+	 */
+	private double[] row(int id) {
+		synchronized (this) {
+			double[] row = rows.get(id);
+			
+			if (row != null) {
+				hits++;
+				return row;
+			}
+			
+			misses++;
+		}
+		
+		int[] columns = (neighbors == null ? nodes : neighbors[positions[id]]);
+		double[] row = new double[columns.length];
+		distanceTable.getDistancesBetween(id, columns, row);
+		
+		synchronized (this) {
+			double[] cached = rows.putIfAbsent(id, row);
+			return (cached == null ? row : cached);
+		}
+	}
+	
+	/**
+	 * Returns the distance between two nodes computed by the underlying
+	 * lookup, counting it as a bypass.
+	 * 
+	 * @param id1 the identifier of the first node
+	 * @param id2 the identifier of the second node
+	 * @return the distance between the two nodes
+	 */
+	private double bypass(int id1, int id2) {
+		synchronized (this) {
+			bypasses++;
+		}
+		
+		return distanceTable.getDistanceBetween(id1, id2);
+	}
+	
+	@Override
+	public double getDistanceBetween(int id1, int id2) {
+		int position2 = positionOf(id2);
+		int position1 = positionOf(id1);
+		int column2 = columnOf(position1, id2);
+		int column1 = (symmetric ? columnOf(position2, id1) : -1);
+		
+		if (column1 >= 0) {
+			if (column2 < 0) {
+				return row(id2)[column1];
+			}
+			
+			synchronized (this) {
+				if (!rows.containsKey(id1)) {
+					double[] row = rows.get(id2);
+					
+					if (row != null) {
+						hits++;
+						return row[column1];
+					}
+				}
+			}
+		}
+		
+		if (column2 < 0) {
+			return bypass(id1, id2);
+		}
+		
+		return row(id1)[column2];
+	}
+	
+	@Override
+	public void getDistancesBetween(int id, int[] ids, double[] distances) {
+		if (distances.length < ids.length) {
+			throw new IllegalArgumentException(
+					"distances array is shorter than identifiers array");
+		}
+		
+		int position = positionOf(id);
+		
+		for (int i = 0; i < ids.length; i++) {
+			positionOf(ids[i]);
+		}
+		
+		double[] row = row(id);
+		
+		for (int i = 0; i < ids.length; i++) {
+			int column = columnOf(position, ids[i]);
+			distances[i] = (column < 0 ? bypass(id, ids[i]) : row[column]);
+		}
+	}
+
+	@Override
+	public int[] listNodes() {
+		return nodes.clone();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("CachedDistanceTable[capacity=%d, rows=%d, " +
+				"hits=%d, misses=%d, evictions=%d, bypasses=%d]", capacity,
+				size(), getHits(), getMisses(), getEvictions(), getBypasses());
+	}
+
+}
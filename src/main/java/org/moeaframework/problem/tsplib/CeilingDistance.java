@@ -39,10 +39,19 @@ public class CeilingDistance extends DistanceFunction {
 		double result = 0.0;
 		
 		for (int i = 0; i < length; i++) {
-			result += Math.pow(position1[i] - position2[i], 2.0);
+			double d = position1[i] - position2[i];
+			result += d * d;
 		}
 		
 		return Math.ceil(Math.sqrt(result));
 	}
+	
+	@Override
+	public double distance(double x1, double y1, double x2, double y2) {
+		double xd = x1 - x2;
+		double yd = y1 - y2;
+		
+		return Math.ceil(Math.sqrt(xd * xd + yd * yd));
+	}
 
 }
@@ -55,6 +55,56 @@ public abstract class DistanceFunction {
 		return distance(position1.length, position1, position2);
 	}
 	
+	/**
+	 * Calculates and returns the distance between two 2D positions.  This
+	 * avoids wrapping the coordinates in arrays when they are stored in
+	 * primitive form; subclasses should override this method with a direct
+	 * computation.
+	 * 
+	 * @param x1 the first coordinate of the first position
+	 * @param y1 the second coordinate of the first position
+	 * @param x2 the first coordinate of the second position
+	 * @param y2 the second coordinate of the second position
+	 * @return the distance between the two positions
+	 */
+	public double distance(double x1, double y1, double x2, double y2) {
+		return distance(2, new double[] { x1, y1 }, new double[] { x2, y2 });
+	}
+	
+	/**
+	 * Calculates and returns the distance between two 3D positions.  This
+	 * avoids wrapping the coordinates in arrays when they are stored in
+	 * primitive form; subclasses should override this method with a direct
+	 * computation.
+	 * 
+	 * @param x1 the first coordinate of the first position
+	 * @param y1 the second coordinate of the first position
+	 * @param z1 the third coordinate of the first position
+	 * @param x2 the first coordinate of the second position
+	 * @param y2 the second coordinate of the second position
+	 * @param z2 the third coordinate of the second position
+	 * @return the distance between the two positions
+	 */
+	public double distance(double x1, double y1, double z1, double x2,
+			double y2, double z2) {
+		return distance(3, new double[] { x1, y1, z1 },
+				new double[] { x2, y2, z2 });
+	}
+	
+	/**
+	 * Prepares this distance function for repeated evaluation over a fixed
+	 * set of 2D positions.  Subclasses whose distance depends on transformed
+	 * coordinates should override this method to compute the transform once
+	 * per position; the default implementation precomputes nothing.
+	 *
+	 * @param xs the first coordinate of each position
+	 * @param ys the second coordinate of each position
+	 * @return the prepared distance over the specified positions
+	 */
+	public PreparedDistance prepare(double[] xs, double[] ys) {
+		return new PreparedDistance(this, xs, ys);
+	}
+
 	/**
 	 * Calculates and returns the distance between the two positions.
 	 * Implementations should throw an {@link IllegalArgumentException} if any
@@ -0,0 +1,75 @@
+/* Copyright 2012 David Hadka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package org.moeaframework.problem.tsplib;
+
+/**
+ * The read-only lookup of the distances between nodes that tour heuristics
+ * require.  Every {@link DistanceTable} provides this lookup; other sources
+ * of distances, such as a cache of precomputed distances, can implement it
+ * without supporting the loading of a TSPLIB section.
+ */
+public interface DistanceLookup {
+	
+	/**
+	 * Returns the identifiers of all nodes in this lookup.
+	 * 
+	 * @return the identifiers of all nodes in this lookup
+	 */
+	public int[] listNodes();
+	
+	/**
+	 * Returns the distance between the two specified nodes.
+	 * 
+	 * @param id1 the identifier of the first node
+	 * @param id2 the identifier of the second node
+	 * @return the distance between the two specified nodes
+	 * @throws IllegalArgumentException if there is no direct edge between the
+	 *         two nodes, or if no node exists with the specified identifier
+	 */
+	public double getDistanceBetween(int id1, int id2);
+	
+	/**
+	 * Computes the distances from one node to each of the specified nodes,
+	 * storing the distance to {@code ids[i]} in {@code distances[i]}.
+	 * Implementations may override this method with a faster batch
+	 * computation.
+	 * 
+	 * @param id the identifier of the source node
+	 * @param ids the identifiers of the target nodes
+	 * @param distances the array receiving the distances, which must be at
+	 *        least as long as {@code ids}
+	 * @throws IllegalArgumentException if there is no direct edge between the
+	 *         nodes, if no node exists with one of the specified identifiers,
+	 *         or if the distances array is shorter than the identifiers array
+	 */
+	public default void getDistancesBetween(int id, int[] ids,
+			double[] distances) {
+		if (distances.length < ids.length) {
+			throw new IllegalArgumentException(
+					"distances array is shorter than identifiers array");
+		}
+		
+		for (int i = 0; i < ids.length; i++) {
+			distances[i] = getDistanceBetween(id, ids[i]);
+		}
+	}
+
+}
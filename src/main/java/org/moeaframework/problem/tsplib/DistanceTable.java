@@ -25,9 +25,9 @@ import java.io.IOException;
 
 /**
  * A distance table provides a lookup of the distances between the nodes in a
- * TSPLIB problem instance.
+ * TSPLIB problem instance, loaded from a section of the instance file.
  */
-public abstract class DistanceTable {
+public abstract class DistanceTable implements DistanceLookup {
 	
 	/**
 	 * Constructs a new distance table instance.
@@ -36,13 +36,6 @@ public abstract class DistanceTable {
 		super();
 	}
 	
-	/**
-	 * Returns the identifiers of all nodes in this distance table.
-	 * 
-	 * @return the identifiers of all nodes in this distance table
-	 */
-	public abstract int[] listNodes();
-	
 	/**
 	 * Returns the identifiers of all neighbors of the specified node.  A
 	 * neighbor must have a direct edge between itself and the specified
@@ -55,17 +48,6 @@ public abstract class DistanceTable {
 	 */
 	public abstract int[] getNeighborsOf(int id);
 	
-	/**
-	 * Returns the distance between the two specified nodes.
-	 * 
-	 * @param id1 the identifier of the first node
-	 * @param id2 the identifier of the second node
-	 * @return the distance between the two specified nodes
-	 * @throws IllegalArgumentException if there is no direct edge between the
-	 *         two nodes, or if no node exists with the specified identifier
-	 */
-	public abstract double getDistanceBetween(int id1, int id2);
-	
 	/**
 	 * Loads the distance table from the specified reader.
 	 * 
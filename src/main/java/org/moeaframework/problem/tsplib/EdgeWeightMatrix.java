@@ -23,11 +23,15 @@ package org.moeaframework.problem.tsplib;
 import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
 
 /**
- * Stores the edge weight matrix from a TSPLIB problem instance.
+ * Stores the edge weight matrix from a TSPLIB problem instance.  Weights in
+ * one of the symmetric formats are stored as a packed lower triangle; weights
+ * given as a {@code FULL_MATRIX}, which need not be symmetric, are stored in
+ * full.
  */
 public class EdgeWeightMatrix extends DistanceTable {
 	
@@ -39,71 +43,328 @@ public class EdgeWeightMatrix extends DistanceTable {
 	/**
 	 * The format of this edge weight matrix.  This defines the format stored
 	 * in the TSPLIB problem instance.  This implementation converts from this
-	 * format to a full matrix.
+	 * format to either a full or a packed triangular matrix.
 	 */
 	private final EdgeWeightFormat format;
 	
 	/**
-	 * The edge weight matrix.  This edge weights are always stored in a full
-	 * matrix, regardless of the input edge weight format.
+	 * The way the edge weights are stored.
 	 */
-	private final double[][] matrix;
+	private final EdgeWeightStorage storage;
 	
 	/**
-	 * Constructs a new, empty edge weight matrix.
+	 * {@code true} if the weights are stored as a packed lower triangle;
+	 * {@code false} if the weights are stored as a full matrix.
+	 */
+	private final boolean packed;
+	
+	/**
+	 * The edge weights when stored on the heap; or {@code null} if the weights
+	 * are stored in a direct buffer or as integers.
+	 */
+	private final double[] weights;
+	
+	/**
+	 * The edge weights when stored as 32-bit integers; or {@code null} if the
+	 * weights are not stored as integers, or every weight fits in 16 bits.
+	 * Integer weights are read into this array and narrowed once loaded.
+	 */
+	private int[] integers;
+	
+	/**
+	 * The edge weights when stored as 16-bit integers; or {@code null} if the
+	 * weights are not stored as integers, or some weight does not fit in
+	 * 16 bits.
+	 */
+	private short[] shorts;
+	
+	/**
+	 * The edge weights when stored in a direct buffer; or {@code null} if the
+	 * weights are stored on the heap.
+	 */
+	private final DoubleBuffer buffer;
+	
+	/**
+	 * A sequential source of edge weights, decoupling the matrix formats from
+	 * the way the weights are read.
+	 */
+	private interface EntrySource {
+		
+		/**
+		 * Returns the next edge weight.
+		 * 
+		 * @return the next edge weight
+		 * @throws IOException if an I/O error occurred while reading the edge
+		 *         weight
+		 */
+		double next() throws IOException;
+		
+		/**
+		 * Returns {@code true} if no weights were read beyond those consumed
+		 * by {@link #next()}; {@code false} otherwise.
+		 * 
+		 * @return {@code true} if no weights were read beyond those consumed
+		 *         by {@link #next()}; {@code false} otherwise
+		 */
+		boolean isExhausted();
+		
+	}
+	
+	/**
+	 * Constructs a new, empty edge weight matrix stored on the heap.
 	 * 
 	 * @param size the number of nodes represented in this edge weight matrix
 	 * @param format the format of this edge weight matrix
 	 */
 	public EdgeWeightMatrix(int size, EdgeWeightFormat format) {
+		this(size, format, EdgeWeightStorage.HEAP);
+	}
+	
+	/**
+	 * Constructs a new, empty edge weight matrix.
+	 * 
+	 * @param size the number of nodes represented in this edge weight matrix
+	 * @param format the format of this edge weight matrix
+	 * @param storage the way the edge weights are stored
+	 * @throws IllegalArgumentException if the matrix is too large for the
+	 *         requested storage
+	 */
+	public EdgeWeightMatrix(int size, EdgeWeightFormat format,
+			EdgeWeightStorage storage) {
 		super();
 		this.size = size;
 		this.format = format;
+		this.storage = storage;
+		
+		packed = !EdgeWeightFormat.FULL_MATRIX.equals(format);
 		
-		matrix = new double[size][size];
+		long length = packed ? (long)size * (size + 1) / 2 :
+			(long)size * size;
+		
+		if (EdgeWeightStorage.DIRECT.equals(storage)) {
+			if (length > Integer.MAX_VALUE / 8) {
+				throw new IllegalArgumentException(
+						"edge weight matrix too large for direct storage");
+			}
+			
+			weights = null;
+			buffer = ByteBuffer.allocateDirect((int)length * 8)
+					.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+		} else if (EdgeWeightStorage.INTEGER.equals(storage)) {
+			if (length > Integer.MAX_VALUE - 8) {
+				throw new IllegalArgumentException(
+						"edge weight matrix too large for integer storage");
+			}
+			
+			weights = null;
+			buffer = null;
+			integers = new int[(int)length];
+		} else {
+			if (length > Integer.MAX_VALUE - 8) {
+				throw new IllegalArgumentException(
+						"edge weight matrix too large for heap storage");
+			}
+			
+			weights = new double[(int)length];
+			buffer = null;
+		}
 	}
 	
 	/**
-	 * Reads the next line from the reader, parses out one or more weights, and
-	 * appends the weights to the given queue.
+	 * Returns the way the edge weights are stored.
 	 * 
-	 * @param reader the reader containing the edge weights
-	 * @param entries the queue of read but unprocessed edge weights
-	 * @throws IOException if an I/O error occurred while reading the edge
-	 *         weights
+	 * @return the way the edge weights are stored
 	 */
-	private void readNextLine(BufferedReader reader, Queue<Double> entries)
-			throws IOException {
-		String line = null;
-		
-		do {
-			line = reader.readLine();
+	public EdgeWeightStorage getStorage() {
+		return storage;
+	}
+	
+	/**
+	 * Returns the offset of the weight between two nodes in the underlying
+	 * storage.  Both indices are 0-based.
+	 * 
+	 * @param i the row of the weight
+	 * @param j the column of the weight
+	 * @return the offset of the weight in the underlying storage
+	 */
+	private int indexOf(int i, int j) {
+		if (!packed) {
+			return i * size + j;
+		} else if (i >= j) {
+			return (int)((long)i * (i + 1) / 2) + j;
+		} else {
+			return (int)((long)j * (j + 1) / 2) + i;
+		}
+	}
+	
+	/**
+	 * Stores the weight between two nodes.  Both indices are 0-based.  For
+	 * packed matrices this also sets the symmetric weight.
+	 * 
+	 * @param i the row of the weight
+	 * @param j the column of the weight
+	 * @param value the weight
+	 * @throws IOException if the weights are stored as integers and the
+	 *         weight is not an integer
+	 */
+	private void set(int i, int j, double value) throws IOException {
+		if (weights != null) {
+			weights[indexOf(i, j)] = value;
+		} else if (buffer != null) {
+			buffer.put(indexOf(i, j), value);
+		} else {
+			int weight = (int)value;
+			
+			if (weight != value) {
+				throw new IOException("edge weight " + value +
+						" is not an integer");
+			}
 			
-			if (line == null) {
-				throw new EOFException("unexpectedly reached EOF");
+			integers[indexOf(i, j)] = weight;
+		}
+	}
+	
+	/**
+	 * Replaces the 32-bit integer weights with 16-bit weights if every weight
+	 * fits in 16 bits.
+	 */
+	private void narrow() {
+		for (int weight : integers) {
+			if ((weight < Short.MIN_VALUE) || (weight > Short.MAX_VALUE)) {
+				return;
 			}
-		} while ((line = line.trim()).isEmpty());
+		}
 		
-		String[] tokens = line.split("\\s+");
+		shorts = new short[integers.length];
 		
-		for (int i = 0; i < tokens.length; i++) {
-			entries.offer(Double.parseDouble(tokens[i]));
+		for (int i = 0; i < integers.length; i++) {
+			shorts[i] = (short)integers[i];
+		}
+		
+		integers = null;
+	}
+	
+	/**
+	 * Returns the weight between two nodes.  Both indices are 0-based.
+	 * 
+	 * @param i the row of the weight
+	 * @param j the column of the weight
+	 * @return the weight
+	 */
+	private double get(int i, int j) {
+		if (weights != null) {
+			return weights[indexOf(i, j)];
+		} else if (shorts != null) {
+			return shorts[indexOf(i, j)];
+		} else if (integers != null) {
+			return integers[indexOf(i, j)];
+		} else {
+			return buffer.get(indexOf(i, j));
 		}
 	}
 	
 	@Override
-	public void load(BufferedReader reader) throws IOException {
-		Queue<Double> entries = new LinkedList<Double>();
-		
+	public void load(final BufferedReader reader) throws IOException {
+		fill(new EntrySource() {
+			
+			/**
+			 * The line currently being parsed; or {@code null} if no line has
+			 * been read.
+			 */
+			private String line;
+			
+			/**
+			 * The position of the next character to parse in the line.
+			 */
+			private int position;
+			
+			/**
+			 * Advances past any whitespace on the current line.
+			 */
+			private void skipWhitespace() {
+				while ((position < line.length()) &&
+						Character.isWhitespace(line.charAt(position))) {
+					position++;
+				}
+			}
+			
+			@Override
+			public double next() throws IOException {
+				if (line != null) {
+					skipWhitespace();
+				}
+				
+				while ((line == null) || (position >= line.length())) {
+					line = reader.readLine();
+					position = 0;
+					
+					if (line == null) {
+						throw new EOFException("unexpectedly reached EOF");
+					}
+					
+					skipWhitespace();
+				}
+				
+				int start = position;
+				
+				while ((position < line.length()) &&
+						!Character.isWhitespace(line.charAt(position))) {
+					position++;
+				}
+				
+				return Double.parseDouble(line.substring(start, position));
+			}
+			
+			@Override
+			public boolean isExhausted() {
+				if (line != null) {
+					skipWhitespace();
+				}
+				
+				return (line == null) || (position >= line.length());
+			}
+			
+		});
+	}
+	
+	/**
+	 * Loads the edge weight matrix from the specified memory-mapped reader.
+	 * 
+	 * @param reader the memory-mapped reader positioned at the first weight
+	 * @throws IOException if an I/O error occurred while reading the edge
+	 *         weights
+	 */
+	void load(final MappedTSPReader reader) throws IOException {
+		fill(new EntrySource() {
+			
+			@Override
+			public double next() throws IOException {
+				return reader.nextDouble();
+			}
+			
+			@Override
+			public boolean isExhausted() {
+				// any weights remaining on the last line read are unexpected
+				return reader.endLine();
+			}
+			
+		});
+	}
+	
+	/**
+	 * Fills this edge weight matrix with the weights supplied by the given
+	 * source, interpreting them according to the edge weight format.
+	 * 
+	 * @param entries the source of edge weights
+	 * @throws IOException if an I/O error occurred while reading the edge
+	 *         weights
+	 */
+	private void fill(EntrySource entries) throws IOException {
 		switch (format) {
 		case FULL_MATRIX:
 			for (int i = 0; i < size; i++) {
 				for (int j = 0; j < size; j++) {
-					if (entries.isEmpty()) {
-						readNextLine(reader, entries);
-					}
-					
-					matrix[i][j] = entries.poll();
+					set(i, j, entries.next());
 				}
 			}
 			
@@ -111,12 +372,7 @@ public class EdgeWeightMatrix extends DistanceTable {
 		case UPPER_ROW:
 			for (int i = 0; i < size-1; i++) {
 				for (int j = i+1; j < size; j++) {
-					if (entries.isEmpty()) {
-						readNextLine(reader, entries);
-					}
-
-					matrix[i][j] = entries.poll();
-					matrix[j][i] = matrix[i][j];
+					set(i, j, entries.next());
 				}
 			}
 			
@@ -124,23 +380,15 @@ public class EdgeWeightMatrix extends DistanceTable {
 		case UPPER_DIAG_ROW:
 			for (int i = 0; i < size; i++) {
 				for (int j = i; j < size; j++) {
-					if (entries.isEmpty()) {
-						readNextLine(reader, entries);
-					}
-
-					matrix[i][j] = entries.poll();
-					matrix[j][i] = matrix[i][j];
+					set(i, j, entries.next());
 				}
 			}
+			
+			break;
 		case LOWER_ROW:
 			for (int i = 1; i<size; i++) {
 				for (int j = 0; j < i; j++) {
-					if (entries.isEmpty()) {
-						readNextLine(reader, entries);
-					}
-
-					matrix[i][j] = entries.poll();
-					matrix[j][i] = matrix[i][j];
+					set(i, j, entries.next());
 				}
 			}
 			
@@ -148,12 +396,7 @@ public class EdgeWeightMatrix extends DistanceTable {
 		case LOWER_DIAG_ROW:
 			for (int i = 0; i < size; i++) {
 				for (int j = 0; j < i+1; j++) {
-					if (entries.isEmpty()) {
-						readNextLine(reader, entries);
-					}
-
-					matrix[i][j] = entries.poll();
-					matrix[j][i] = matrix[i][j];
+					set(i, j, entries.next());
 				}
 			}
 			
@@ -161,12 +404,7 @@ public class EdgeWeightMatrix extends DistanceTable {
 		case UPPER_COL:
 			for (int j = 1; j < size; j++) {
 				for (int i = 0; i < j; i++) {
-					if (entries.isEmpty()) {
-						readNextLine(reader, entries);
-					}
-
-					matrix[i][j] = entries.poll();
-					matrix[j][i] = matrix[i][j];
+					set(i, j, entries.next());
 				}
 			}
 			
@@ -174,12 +412,7 @@ public class EdgeWeightMatrix extends DistanceTable {
 		case UPPER_DIAG_COL:
 			for (int j = 0; j < size; j++) {
 				for (int i = 0; i < j+1; i++) {
-					if (entries.isEmpty()) {
-						readNextLine(reader, entries);
-					}
-
-					matrix[i][j] = entries.poll();
-					matrix[j][i] = matrix[i][j];
+					set(i, j, entries.next());
 				}
 			}
 			
@@ -187,12 +420,7 @@ public class EdgeWeightMatrix extends DistanceTable {
 		case LOWER_COL:
 			for (int j = 0; j < size-1; j++) {
 				for (int i = j+1; i < size; i++) {
-					if (entries.isEmpty()) {
-						readNextLine(reader, entries);
-					}
-
-					matrix[i][j] = entries.poll();
-					matrix[j][i] = matrix[i][j];
+					set(i, j, entries.next());
 				}
 			}
 			
@@ -200,12 +428,7 @@ public class EdgeWeightMatrix extends DistanceTable {
 		case LOWER_DIAG_COL:
 			for (int j = 0; j < size; j++) {
 				for (int i = j; i < size; i++) {
-					if (entries.isEmpty()) {
-						readNextLine(reader, entries);
-					}
-
-					matrix[i][j] = entries.poll();
-					matrix[j][i] = matrix[i][j];
+					set(i, j, entries.next());
 				}
 			}
 			
@@ -215,9 +438,13 @@ public class EdgeWeightMatrix extends DistanceTable {
 		}
 		
 		// sanity check
-		if (!entries.isEmpty()) {
+		if (!entries.isExhausted()) {
 			throw new IOException("edge weight matrix is longer than expected");
 		}
+		
+		if (integers != null) {
+			narrow();
+		}
 	}
 	
 	@Override
@@ -230,7 +457,7 @@ public class EdgeWeightMatrix extends DistanceTable {
 					sb.append(' ');
 				}
 				
-				sb.append(matrix[i][j]);
+				sb.append(get(i, j));
 			}
 			
 			sb.append('\n');
@@ -280,7 +507,7 @@ public class EdgeWeightMatrix extends DistanceTable {
 					id2);
 		}
 		
-		return matrix[id1-1][id2-1];
+		return get(id1-1, id2-1);
 	}
 
 }
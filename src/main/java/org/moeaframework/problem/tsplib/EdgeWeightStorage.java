@@ -0,0 +1,51 @@
+/* Copyright 2012 David Hadka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package org.moeaframework.problem.tsplib;
+
+/**
+ * Enumeration of the ways an {@link EdgeWeightMatrix} can store its weights.
+ * Symmetric formats are always stored as a packed lower triangle, requiring
+ * roughly half the memory of a full matrix; only {@code FULL_MATRIX} weights
+ * are stored in full.
+ */
+public enum EdgeWeightStorage {
+	
+	/**
+	 * The weights are stored in a primitive array on the Java heap.
+	 */
+	HEAP,
+	
+	/**
+	 * The weights are stored in a direct (off-heap) buffer.  This reduces
+	 * garbage collection pressure for large matrices, but limits the matrix to
+	 * {@link Integer#MAX_VALUE} bytes.
+	 */
+	DIRECT,
+	
+	/**
+	 * The weights are stored as integers on the Java heap, using 16-bit
+	 * values when every weight fits and 32-bit values otherwise.  This
+	 * requires a quarter or half the memory of {@code HEAP} storage, but
+	 * every weight must be an integer.
+	 */
+	INTEGER
+
+}
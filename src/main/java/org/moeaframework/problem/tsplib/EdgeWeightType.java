@@ -91,6 +91,33 @@ public enum EdgeWeightType {
 	 */
 	SPECIAL;
 	
+	/**
+	 * Returns {@code true} if the distance function of this edge weight type
+	 * always produces integer distances; {@code false} otherwise.  TSPLIB
+	 * rounds the distances of these types to integers by definition.
+	 * Explicit weights are not integral by type, although the weights of
+	 * most TSPLIB problem instances are integers.
+	 * 
+	 * @return {@code true} if the distance function of this edge weight type
+	 *         always produces integer distances; {@code false} otherwise
+	 */
+	public boolean isIntegral() {
+		switch (this) {
+		case EUC_2D:
+		case EUC_3D:
+		case MAX_2D:
+		case MAX_3D:
+		case MAN_2D:
+		case MAN_3D:
+		case CEIL_2D:
+		case GEO:
+		case ATT:
+			return true;
+		default:
+			return false;
+		}
+	}
+	
 	public DistanceFunction getDistanceFunction() {
 		switch (this) {
 		case EUC_2D:
@@ -37,10 +37,29 @@ public class EuclideanDistance extends DistanceFunction {
 		double result = 0.0;
 
 		for (int i = 0; i < length; i++) {
-			result += Math.pow(position1[i] - position2[i], 2.0);
+			double d = position1[i] - position2[i];
+			result += d * d;
 		}
 
 		return Math.round(Math.sqrt(result));
 	}
+	
+	@Override
+	public double distance(double x1, double y1, double x2, double y2) {
+		double xd = x1 - x2;
+		double yd = y1 - y2;
+		
+		return Math.round(Math.sqrt(xd * xd + yd * yd));
+	}
+	
+	@Override
+	public double distance(double x1, double y1, double z1, double x2,
+			double y2, double z2) {
+		double xd = x1 - x2;
+		double yd = y1 - y2;
+		double zd = z1 - z2;
+		
+		return Math.round(Math.sqrt(xd * xd + yd * yd + zd * zd));
+	}
 
 }
@@ -66,10 +66,15 @@ public class GeographicalDistance extends DistanceFunction {
 			throw new IllegalArgumentException("nodes must be 2D");
 		}
 		
-		double latitude1 = toGeographical(position1[0]);
-		double latitude2 = toGeographical(position2[0]);
-		double longitude1 = toGeographical(position1[1]);
-		double longitude2 = toGeographical(position2[1]);
+		return distance(position1[0], position1[1], position2[0], position2[1]);
+	}
+	
+	@Override
+	public double distance(double x1, double y1, double x2, double y2) {
+		double latitude1 = toGeographical(x1);
+		double latitude2 = toGeographical(x2);
+		double longitude1 = toGeographical(y1);
+		double longitude2 = toGeographical(y2);
 		double radius = 6378.388;
 		double q1 = Math.cos(longitude1 - longitude2);
 		double q2 = Math.cos(latitude1 - latitude2);
@@ -79,4 +84,127 @@ public class GeographicalDistance extends DistanceFunction {
 				Math.acos(0.5 * ((1.0 + q1)*q2 - (1.0 - q1)*q3)) + 1.0);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The latitude and longitude of each position are converted to radians
+	 * once, along with their sines and cosines, so each distance requires a
+	 * single {@code Math.acos} call.
+	 */
+	@Override
+	public PreparedDistance prepare(double[] xs, double[] ys) {
+		return new PreparedGeographicalDistance(this, xs, ys);
+	}
+
+	/**
+	 * The prepared form of the geographical distance.  The cosines of the
+	 * angle sums and differences are expanded using the precomputed sines and
+	 * cosines, which may differ from the direct computation in the last few
+	 * bits.  Since the distance is truncated to an integer, any result within
+	 * {@link #TOLERANCE} of an integer boundary is recomputed directly, so the
+	 * distances are identical to {@link GeographicalDistance#distance(double,
+	 * double, double, double)}.
+	 */
+	private static class PreparedGeographicalDistance
+			extends PreparedDistance {
+
+		/**
+		 * The distance from an integer boundary, in kilometers, below which
+		 * the distance is recomputed directly.  This is several orders of
+		 * magnitude larger than the rounding error of the expanded form.
+		 */
+		private static final double TOLERANCE = 1e-3;
+
+		/**
+		 * The radius of the Earth used by TSPLIB, in kilometers.
+		 */
+		private static final double RADIUS = 6378.388;
+
+		/**
+		 * The latitude of each position, in radians.
+		 */
+		private final double[] latitudes;
+
+		/**
+		 * The longitude of each position, in radians.
+		 */
+		private final double[] longitudes;
+
+		/**
+		 * The cosine of the latitude of each position.
+		 */
+		private final double[] cosLatitudes;
+
+		/**
+		 * The sine of the latitude of each position.
+		 */
+		private final double[] sinLatitudes;
+
+		/**
+		 * The cosine of the longitude of each position.
+		 */
+		private final double[] cosLongitudes;
+
+		/**
+		 * The sine of the longitude of each position.
+		 */
+		private final double[] sinLongitudes;
+
+		/**
+		 * Constructs a new prepared geographical distance.
+		 *
+		 * @param distanceFunction the geographical distance function
+		 * @param xs the latitude of each position in the form {@code DDD.MM}
+		 * @param ys the longitude of each position in the form {@code DDD.MM}
+		 */
+		public PreparedGeographicalDistance(DistanceFunction distanceFunction,
+				double[] xs, double[] ys) {
+			super(distanceFunction, xs, ys);
+
+			int size = xs.length;
+			latitudes = new double[size];
+			longitudes = new double[size];
+			cosLatitudes = new double[size];
+			sinLatitudes = new double[size];
+			cosLongitudes = new double[size];
+			sinLongitudes = new double[size];
+
+			for (int i = 0; i < size; i++) {
+				latitudes[i] = toGeographical(xs[i]);
+				longitudes[i] = toGeographical(ys[i]);
+				cosLatitudes[i] = Math.cos(latitudes[i]);
+				sinLatitudes[i] = Math.sin(latitudes[i]);
+				cosLongitudes[i] = Math.cos(longitudes[i]);
+				sinLongitudes[i] = Math.sin(longitudes[i]);
+			}
+		}
+
+		@Override
+		public double distance(int index1, int index2) {
+			double cc = cosLatitudes[index1] * cosLatitudes[index2];
+			double ss = sinLatitudes[index1] * sinLatitudes[index2];
+			double q1 = cosLongitudes[index1] * cosLongitudes[index2] +
+					sinLongitudes[index1] * sinLongitudes[index2];
+			double q2 = cc + ss;
+			double q3 = cc - ss;
+			double d = RADIUS *
+					Math.acos(0.5 * ((1.0 + q1)*q2 - (1.0 - q1)*q3)) + 1.0;
+			double fraction = d - Math.floor(d);
+
+			// also taken when acos is NaN because rounding pushed its
+			// argument just outside [-1, 1]
+			if ((fraction > TOLERANCE) && (fraction < 1.0 - TOLERANCE)) {
+				return Math.floor(d);
+			}
+
+			q1 = Math.cos(longitudes[index1] - longitudes[index2]);
+			q2 = Math.cos(latitudes[index1] - latitudes[index2]);
+			q3 = Math.cos(latitudes[index1] + latitudes[index2]);
+
+			return Math.floor(RADIUS *
+					Math.acos(0.5 * ((1.0 + q1)*q2 - (1.0 - q1)*q3)) + 1.0);
+		}
+
+	}
+
 }
@@ -0,0 +1,688 @@
+/* Copyright 2012 David Hadka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package org.moeaframework.problem.tsplib;
+
+/**
+ * Implementation of a Lin-Kernighan style variable-depth heuristic for the
+ * traveling lazyman problem.  A move starts by removing a tour edge
+ * {@code (t1, t2)} and repeatedly adds an edge from the loose end to one of its
+ * candidates, removing the tour edge that keeps the tour closable.  Each step
+ * is applied as a 2-opt exchange, so after any step the tour can be closed by
+ * the edge {@code (t1, t2k)}; the chain ends at the configured maximum depth
+ * or when the cumulative gain is exhausted, and the tour is rolled back to the
+ * step with the best closed tour.
+ * <p>
+ * The first step may also pick the tour edge whose removal cannot be closed
+ * directly.  It is then completed into a sequential 3-opt move that relocates
+ * one of the two resulting segments (the "or2opt" variants), after which the
+ * chain continues as usual.  Alternatives are explored at the first levels
+ * only, with a breadth of 5, 3 and then 1, and an edge added during a move is
+ * never removed by the same move, so each search from a node takes near
+ * constant time.  As in {@link TSP2OptHeuristic}, nodes are processed from a
+ * queue with don't-look bits.
+ */
+public class LinKernighanHeuristic {
+	
+	/**
+	 * The default maximum number of edges exchanged by a single move.
+	 */
+	public static final int DEFAULT_DEPTH = 50;
+	
+	/**
+	 * The number of alternatives explored at each level of a move, starting
+	 * with the 2-opt level; deeper levels explore a single alternative.
+	 */
+	private static final int[] BREADTH = { 5, 3 };
+	
+	/**
+	 * The minimum gain of an improving move, guarding against cycling due to
+	 * rounding errors.
+	 */
+	private static final double EPSILON = 1e-9;
+	
+	/**
+	 * The distances between the nodes of the traveling lazyman problem
+	 * instance.
+	 */
+	private final DistanceLookup distanceTable;
+	
+	/**
+	 * The maximum number of edges exchanged by a single move.
+	 */
+	private final int maxDepth;
+	
+	/**
+	 * The candidates of each node, sorted by increasing distance and indexed
+	 * by node identifier; or {@code null} if they are computed on first use.
+	 */
+	private int[][] candidates;
+	
+	/**
+	 * The exchanges applied by the current move, stored as four consecutive
+	 * nodes {@code a, b, c, d} per exchange.  A move closing a k-opt tour
+	 * applies at most k exchanges.
+	 */
+	private int[] exchanges;
+	
+	/**
+	 * The number of exchanges applied by the current move.
+	 */
+	private int exchangeCount;
+	
+	/**
+	 * The edges added by the current move, stored as two consecutive nodes
+	 * per edge.
+	 */
+	private int[] added;
+	
+	/**
+	 * The edges removed by the current move, stored as two consecutive nodes
+	 * per edge.
+	 */
+	private int[] removed;
+	
+	/**
+	 * The number of edges added by the current move; one fewer edge than
+	 * this number is removed, not counting the edge {@code (t1, t2)}.
+	 */
+	private int edgeCount;
+	
+	/**
+	 * The candidates considered at each depth of the current move, ranked by
+	 * decreasing score.
+	 */
+	private final int[][] alternatives;
+	
+	/**
+	 * The score of the candidates considered at each depth of the current
+	 * move.
+	 */
+	private final double[][] scores;
+	
+	/**
+	 * The gain of the best closed tour found by the current move.
+	 */
+	private double bestGain;
+	
+	/**
+	 * The number of exchanges producing the best closed tour found by the
+	 * current move, or {@code 0} if no improving tour was found.
+	 */
+	private int bestCount;
+
+	/**
+	 * Constructs a new Lin-Kernighan heuristic for the specified traveling
+	 * lazyman problem instance.
+	 * 
+	 * @param instance the traveling lazyman problem instance
+	 */
+	public LinKernighanHeuristic(TSPInstance instance) {
+		this(instance.getDistanceTable());
+	}
+	
+	/**
+	 * Constructs a new Lin-Kernighan heuristic using the specified distance
+	 * table.  The {@value TSP2OptHeuristic#DEFAULT_CANDIDATES} nearest nodes
+	 * are used as candidates and moves exchange at most
+	 * {@value #DEFAULT_DEPTH} edges.
+	 * 
+	 * @param distanceTable the distances between the nodes of the traveling
+	 *        lazyman problem instance
+	 */
+	public LinKernighanHeuristic(DistanceLookup distanceTable) {
+		this(distanceTable, null, DEFAULT_DEPTH);
+	}
+	
+	/**
+	 * Constructs a new Lin-Kernighan heuristic using the specified distance
+	 * table, candidates and maximum depth.
+	 * 
+	 * @param distanceTable the distances between the nodes of the traveling
+	 *        lazyman problem instance
+	 * @param candidates the candidates of each node, sorted by increasing
+	 *        distance and indexed by node identifier; or {@code null} to use
+	 *        the {@value TSP2OptHeuristic#DEFAULT_CANDIDATES} nearest nodes
+	 * @param maxDepth the maximum number of edges exchanged by a single move,
+	 *        where {@code 2} restricts the search to 2-opt moves
+	 * @throws IllegalArgumentException if {@code maxDepth} is less than
+	 *         {@code 2}
+	 */
+	public LinKernighanHeuristic(DistanceLookup distanceTable,
+			int[][] candidates, int maxDepth) {
+		super();
+		
+		if (maxDepth < 2) {
+			throw new IllegalArgumentException("depth must be at least 2");
+		}
+		
+		this.distanceTable = distanceTable;
+		this.candidates = candidates;
+		this.maxDepth = maxDepth;
+		
+		exchanges = new int[4 * maxDepth];
+		added = new int[2 * maxDepth];
+		removed = new int[2 * maxDepth];
+		alternatives = new int[maxDepth + 1][];
+		scores = new double[maxDepth + 1][];
+	}
+	
+	/**
+	 * Returns the maximum number of edges exchanged by a single move.
+	 * 
+	 * @return the maximum number of edges exchanged by a single move
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+	
+	/**
+	 * Applies the Lin-Kernighan heuristic to the specified tour.
+	 * 
+	 * @param tour the tour that is modified by the Lin-Kernighan heuristic
+	 */
+	public void apply(Tour tour) {
+		apply((TourOrder)tour);
+	}
+	
+	/**
+	 * Applies the Lin-Kernighan heuristic to the specified tour, which may be
+	 * any tour representation such as a {@link TwoLevelTour}.
+	 * 
+	 * @param tour the tour that is modified by the Lin-Kernighan heuristic
+	 */
+	public void apply(TourOrder tour) {
+		apply(tour, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Applies the Lin-Kernighan heuristic to the specified tour until no move
+	 * improves it or the deadline has passed.  A tour stopped by the deadline
+	 * is valid and no longer than before, but may still be improved by the
+	 * heuristic.
+	 * 
+	 * @param tour the tour that is modified by the Lin-Kernighan heuristic
+	 * @param deadline the time, as returned by
+	 *        {@link System#currentTimeMillis()}, after which no further moves
+	 *        are searched
+	 */
+	public void apply(TourOrder tour, long deadline) {
+		// tours with 3 or fewer nodes are already optimal
+		if (tour.size() < 4) {
+			return;
+		}
+		
+		if (candidates == null) {
+			candidates = TSP2OptHeuristic.nearestNeighbors(distanceTable,
+					TSP2OptHeuristic.DEFAULT_CANDIDATES);
+		}
+		
+		int[] nodes = tour.toArray();
+		int maximum = 0;
+		
+		for (int id : nodes) {
+			maximum = Math.max(maximum, id);
+		}
+		
+		// a circular work queue of nodes whose don't-look bit is off
+		int[] queue = new int[nodes.length];
+		boolean[] queued = new boolean[maximum + 1];
+		int head = 0;
+		int length = nodes.length;
+		
+		System.arraycopy(nodes, 0, queue, 0, nodes.length);
+		
+		for (int id : nodes) {
+			queued[id] = true;
+		}
+		
+		int searched = 0;
+		
+		while (length > 0) {
+			if ((++searched % TSP2OptHeuristic.CLOCK_INTERVAL == 0) &&
+					(System.currentTimeMillis() >= deadline)) {
+				break;
+			}
+			
+			int node = queue[head];
+			head = (head + 1) % queue.length;
+			length--;
+			queued[node] = false;
+			
+			if (!improve(tour, node)) {
+				continue;
+			}
+			
+			for (int i = 0; i < 4 * bestCount; i++) {
+				int id = exchanges[i];
+				
+				if (!queued[id]) {
+					queued[id] = true;
+					queue[(head + length) % queue.length] = id;
+					length++;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Searches for an improving move starting from either tour edge of the
+	 * specified node and applies the first one found.  The exchanges of the
+	 * applied move are left in {@link #exchanges}.
+	 * 
+	 * @param tour the tour
+	 * @param t1 the node
+	 * @return {@code true} if an improving move was applied; {@code false}
+	 *         otherwise
+	 */
+	private boolean improve(TourOrder tour, int t1) {
+		if ((t1 >= candidates.length) || (candidates[t1] == null)) {
+			return false;
+		}
+		
+		for (int direction = 0; direction < 2; direction++) {
+			int t2 = TSP2OptHeuristic.step(tour, t1, direction == 0);
+			
+			exchangeCount = 0;
+			edgeCount = 0;
+			bestGain = EPSILON;
+			bestCount = 0;
+			
+			search(tour, 2, t1, t2, distance(t1, t2));
+			
+			if (bestCount > 0) {
+				undo(tour, bestCount);
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Extends the current move, whose loose end is the tour edge
+	 * {@code (t1, t2)}, by one or more edges.  Returns as soon as an improving
+	 * tour has been found; otherwise the tour is restored before returning.
+	 * 
+	 * @param tour the tour
+	 * @param depth the number of edges exchanged by the move after closing
+	 *        the next step
+	 * @param t1 the first node of the move
+	 * @param t2 the loose end of the move
+	 * @param gain the cumulative gain including the removal of
+	 *        {@code (t1, t2)}
+	 * @return {@code true} if an improving tour was found; {@code false}
+	 *         otherwise
+	 */
+	private boolean search(TourOrder tour, int depth, int t1, int t2,
+			double gain) {
+		int[] neighbors = (t2 < candidates.length) ? candidates[t2] : null;
+		
+		if (neighbors == null) {
+			return false;
+		}
+		
+		if ((alternatives[depth] == null) ||
+				(alternatives[depth].length < neighbors.length)) {
+			alternatives[depth] = new int[neighbors.length];
+			scores[depth] = new double[neighbors.length];
+		}
+		
+		int[] nodes = alternatives[depth];
+		double[] values = scores[depth];
+		int count = 0;
+		boolean forward = (tour.next(t1) == t2);
+		
+		// rank the candidates t3 by |x(t3, t4)| - |y(t2, t3)|
+		for (int t3 : neighbors) {
+			double g1 = gain - distance(t2, t3);
+			
+			if (g1 <= EPSILON) {
+				break;
+			}
+			
+			if ((t3 == t1) || (t3 == tour.next(t2)) ||
+					(t3 == tour.prev(t2)) || isRemoved(t2, t3)) {
+				continue;
+			}
+			
+			// removing the edge on the side of t1 keeps the tour closable
+			int t4 = TSP2OptHeuristic.step(tour, t3, !forward);
+			
+			if (isAdded(t3, t4)) {
+				continue;
+			}
+			
+			double value = distance(t3, t4) - distance(t2, t3);
+			int i = count++;
+			
+			while ((i > 0) && (values[i - 1] < value)) {
+				nodes[i] = nodes[i - 1];
+				values[i] = values[i - 1];
+				i--;
+			}
+			
+			nodes[i] = t3;
+			values[i] = value;
+		}
+		
+		int breadth = (depth - 2 < BREADTH.length) ? BREADTH[depth - 2] : 1;
+		
+		for (int i = 0; i < Math.min(count, breadth); i++) {
+			int t3 = nodes[i];
+			double g1 = gain - distance(t2, t3);
+			
+			// undoing a step may have reversed the direction of traversal
+			forward = (tour.next(t1) == t2);
+			
+			int t4 = TSP2OptHeuristic.step(tour, t3, !forward);
+			int mark = exchangeCount;
+			
+			exchange(tour, t1, t2, t4, t3);
+			push(t2, t3, t3, t4);
+			
+			if (step(tour, depth, t1, t4, g1 + distance(t3, t4))) {
+				return true;
+			}
+			
+			pop(tour, mark);
+			
+			// the other edge of t3 leaves a subtour that a third exchange
+			// must join back into the tour
+			if ((depth == 2) && (maxDepth >= 3)) {
+				t4 = TSP2OptHeuristic.step(tour, t3, tour.next(t1) == t2);
+				
+				if ((t4 != t1) && search3(tour, t1, t2, t3, t4, g1)) {
+					return true;
+				}
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Completes the first step of a move with the edge {@code (t3, t4)} that
+	 * cannot be closed directly, where {@code t4} follows {@code t3} in the
+	 * direction from {@code t1} to {@code t2}.  Removing {@code (t4, t5)}
+	 * for a candidate {@code t5} of {@code t4} on the path from {@code t2} to
+	 * {@code t3} relocates one of the two segments between {@code t2} and
+	 * {@code t3}, yielding a sequential 3-opt move.
+	 * 
+	 * @param tour the tour
+	 * @param t1 the first node of the move
+	 * @param t2 the node after {@code t1}
+	 * @param t3 the candidate of {@code t2}
+	 * @param t4 the node after {@code t3}
+	 * @param g1 the cumulative gain including the addition of
+	 *        {@code (t2, t3)}
+	 * @return {@code true} if an improving tour was found; {@code false}
+	 *         otherwise
+	 */
+	private boolean search3(TourOrder tour, int t1, int t2, int t3, int t4,
+			double g1) {
+		double g2 = g1 + distance(t3, t4);
+		int breadth = BREADTH[1];
+		int[] neighbors = (t4 < candidates.length) ? candidates[t4] : null;
+		
+		if (neighbors == null) {
+			return false;
+		}
+		
+		for (int t5 : neighbors) {
+			if (breadth == 0) {
+				break;
+			}
+			
+			double g3 = g2 - distance(t4, t5);
+			
+			if (g3 <= EPSILON) {
+				break;
+			}
+			
+			if ((t5 == t3) || (t5 == tour.next(t4)) ||
+					(t5 == tour.prev(t4)) || !inside(tour, t1, t2, t3, t5)) {
+				continue;
+			}
+			
+			breadth--;
+			
+			for (int side = 0; side < 2; side++) {
+				boolean after = (side == 0);
+				
+				if (t5 == (after ? t3 : t2)) {
+					continue;
+				}
+				
+				// undoing a step may have reversed the direction of traversal
+				boolean forward = (tour.next(t1) == t2);
+				int t6 = TSP2OptHeuristic.step(tour, t5,
+						after == forward);
+				int mark = exchangeCount;
+				double g4 = g3 + distance(t5, t6);
+				
+				if (after) {
+					// t1 t2..t5 t6..t3 t4  ->  t1 t6..t3 t2..t5 t4
+					exchange(tour, t1, t2, t3, t4);
+					exchange(tour, t1, t3, t6, t5);
+					exchange(tour, t3, t5, t2, t4);
+				} else {
+					// t1 t2..t6 t5..t3 t4  ->  t1 t6..t2 t3..t5 t4
+					exchange(tour, t1, t2, t6, t5);
+					exchange(tour, t2, t5, t3, t4);
+				}
+				
+				push(t2, t3, t3, t4);
+				push(t4, t5, t5, t6);
+				
+				if (step(tour, 3, t1, t6, g4)) {
+					return true;
+				}
+				
+				undo(tour, mark);
+				edgeCount -= 2;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Returns {@code true} if node {@code t5} lies on the path from
+	 * {@code t2} to {@code t3} that does not contain {@code t1};
+	 * {@code false} otherwise.
+	 * 
+	 * @param tour the tour
+	 * @param t1 the first node of the move
+	 * @param t2 the node adjacent to {@code t1} at the start of the path
+	 * @param t3 the node at the end of the path
+	 * @param t5 the node being tested
+	 * @return {@code true} if {@code t5} lies on the path from {@code t2} to
+	 *         {@code t3}; {@code false} otherwise
+	 */
+	private static boolean inside(TourOrder tour, int t1, int t2, int t3,
+			int t5) {
+		if (tour.next(t1) == t2) {
+			return tour.between(t2, t5, t3);
+		} else {
+			return tour.between(t3, t5, t2);
+		}
+	}
+	
+	/**
+	 * Records the tour closed by the edge {@code (t1, t2)} if it improves on
+	 * the best tour of the current move, then continues the move if the
+	 * maximum depth has not been reached.
+	 * 
+	 * @param tour the tour
+	 * @param depth the number of edges exchanged by the closed tour
+	 * @param t1 the first node of the move
+	 * @param t2 the loose end of the move
+	 * @param gain the cumulative gain including the removal of
+	 *        {@code (t1, t2)}
+	 * @return {@code true} if an improving tour was found; {@code false}
+	 *         otherwise
+	 */
+	private boolean step(TourOrder tour, int depth, int t1, int t2,
+			double gain) {
+		double closed = gain - distance(t2, t1);
+		
+		if (closed > bestGain) {
+			bestGain = closed;
+			bestCount = exchangeCount;
+		}
+		
+		if ((depth < maxDepth) && search(tour, depth + 1, t1, t2, gain)) {
+			return true;
+		}
+		
+		return bestCount > 0;
+	}
+	
+	/**
+	 * Applies the exchange of the tour edges {@code (a, b)} and
+	 * {@code (c, d)} and records it so it can be undone.
+	 * 
+	 * @param tour the tour
+	 * @param a the first node of the first edge
+	 * @param b the second node of the first edge
+	 * @param c the first node of the second edge
+	 * @param d the second node of the second edge
+	 */
+	private void exchange(TourOrder tour, int a, int b, int c, int d) {
+		// reversing a single node leaves the tour unchanged
+		if (b == c) {
+			return;
+		}
+		
+		TSP2OptHeuristic.exchange(tour, a, b, c, d);
+		
+		int offset = 4 * exchangeCount++;
+		exchanges[offset] = a;
+		exchanges[offset + 1] = b;
+		exchanges[offset + 2] = c;
+		exchanges[offset + 3] = d;
+	}
+	
+	/**
+	 * Undoes the exchanges of the current move until only the specified
+	 * number remain.
+	 * 
+	 * @param tour the tour
+	 * @param count the number of exchanges to keep
+	 */
+	private void undo(TourOrder tour, int count) {
+		while (exchangeCount > count) {
+			int offset = 4 * --exchangeCount;
+			
+			// (a, c) and (b, d) are traversed in the same direction
+			TSP2OptHeuristic.exchange(tour, exchanges[offset],
+					exchanges[offset + 2], exchanges[offset + 1],
+					exchanges[offset + 3]);
+		}
+	}
+	
+	/**
+	 * Records an edge added and an edge removed by the current move.
+	 * 
+	 * @param a the first node of the added edge
+	 * @param b the second node of the added edge
+	 * @param c the first node of the removed edge
+	 * @param d the second node of the removed edge
+	 */
+	private void push(int a, int b, int c, int d) {
+		added[2 * edgeCount] = a;
+		added[2 * edgeCount + 1] = b;
+		removed[2 * edgeCount] = c;
+		removed[2 * edgeCount + 1] = d;
+		edgeCount++;
+	}
+	
+	/**
+	 * Undoes the exchanges and forgets the last edges recorded by a step of
+	 * the current move.
+	 * 
+	 * @param tour the tour
+	 * @param mark the number of exchanges before the step
+	 */
+	private void pop(TourOrder tour, int mark) {
+		undo(tour, mark);
+		edgeCount--;
+	}
+	
+	/**
+	 * Returns {@code true} if the edge was added by the current move;
+	 * {@code false} otherwise.
+	 * 
+	 * @param a the first node of the edge
+	 * @param b the second node of the edge
+	 * @return {@code true} if the edge was added by the current move;
+	 *         {@code false} otherwise
+	 */
+	private boolean isAdded(int a, int b) {
+		return contains(added, a, b);
+	}
+	
+	/**
+	 * Returns {@code true} if the edge was removed by the current move;
+	 * {@code false} otherwise.
+	 * 
+	 * @param a the first node of the edge
+	 * @param b the second node of the edge
+	 * @return {@code true} if the edge was removed by the current move;
+	 *         {@code false} otherwise
+	 */
+	private boolean isRemoved(int a, int b) {
+		return contains(removed, a, b);
+	}
+	
+	/**
+	 * Returns {@code true} if the recorded edges of the current move contain
+	 * the specified edge in either direction; {@code false} otherwise.
+	 * 
+	 * @param edges the recorded edges
+	 * @param a the first node of the edge
+	 * @param b the second node of the edge
+	 * @return {@code true} if the recorded edges contain the edge;
+	 *         {@code false} otherwise
+	 */
+	private boolean contains(int[] edges, int a, int b) {
+		for (int i = 0; i < 2 * edgeCount; i += 2) {
+			if (((edges[i] == a) && (edges[i + 1] == b)) ||
+					((edges[i] == b) && (edges[i + 1] == a))) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Returns the distance between two nodes.
+	 * 
+	 * @param id1 the identifier of the first node
+	 * @param id2 the identifier of the second node
+	 * @return the distance between the two nodes
+	 */
+	private double distance(int id1, int id2) {
+		return distanceTable.getDistanceBetween(id1, id2);
+	}
+
+}
@@ -42,5 +42,17 @@ public class ManhattanDistance extends DistanceFunction {
 
 		return Math.round(result);
 	}
+	
+	@Override
+	public double distance(double x1, double y1, double x2, double y2) {
+		return Math.round(Math.abs(x1 - x2) + Math.abs(y1 - y2));
+	}
+	
+	@Override
+	public double distance(double x1, double y1, double z1, double x2,
+			double y2, double z2) {
+		return Math.round(Math.abs(x1 - x2) + Math.abs(y1 - y2) +
+				Math.abs(z1 - z2));
+	}
 
 }
@@ -0,0 +1,505 @@
+/* Copyright 2012 David Hadka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package org.moeaframework.problem.tsplib;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a TSPLIB file through a memory-mapped buffer.  Numeric sections are
+ * parsed directly from the mapped bytes, avoiding the intermediate strings
+ * created by {@link BufferedReader#readLine()} and {@link String#split}.
+ * Numbers are converted exactly as {@link Double#parseDouble(String)} and
+ * {@link Integer#parseInt(String)} would convert them, so instances loaded
+ * through this reader are identical to those loaded from text.
+ */
+class MappedTSPReader implements Closeable {
+
+	/**
+	 * The powers of ten that are exactly representable as doubles.
+	 */
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * The maximum number of significant digits that can be accumulated
+	 * without exceeding the 53-bit mantissa of a double.
+	 */
+	private static final int MAX_EXACT_DIGITS = 15;
+
+	/**
+	 * The file channel backing the mapped buffer.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The memory-mapped contents of the file.
+	 */
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * The number of bytes in the file.
+	 */
+	private final int limit;
+
+	/**
+	 * The offset of the next unread byte.
+	 */
+	private int position;
+
+	/**
+	 * Maps the specified TSPLIB file into memory.
+	 *
+	 * @param file the TSPLIB file
+	 * @throws IOException if an I/O error occurred while mapping the file, or
+	 *         if the file is too large to be mapped
+	 */
+	MappedTSPReader(File file) throws IOException {
+		super();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+
+		try {
+			long length = channel.size();
+
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("file too large to map: " + file);
+			}
+
+			limit = (int)length;
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns {@code true} if the byte is a space or tab; {@code false}
+	 * otherwise.
+	 *
+	 * @param b the byte
+	 * @return {@code true} if the byte is a space or tab; {@code false}
+	 *         otherwise
+	 */
+	private static boolean isBlank(byte b) {
+		return (b == ' ') || (b == '\t') || (b == '\f');
+	}
+
+	/**
+	 * Returns {@code true} if the byte terminates a line; {@code false}
+	 * otherwise.
+	 *
+	 * @param b the byte
+	 * @return {@code true} if the byte terminates a line; {@code false}
+	 *         otherwise
+	 */
+	private static boolean isNewline(byte b) {
+		return (b == '\n') || (b == '\r');
+	}
+
+	/**
+	 * Returns {@code true} if the byte separates tokens; {@code false}
+	 * otherwise.
+	 *
+	 * @param b the byte
+	 * @return {@code true} if the byte separates tokens; {@code false}
+	 *         otherwise
+	 */
+	private static boolean isWhitespace(byte b) {
+		return isBlank(b) || isNewline(b);
+	}
+
+	/**
+	 * Reads the next line, advancing past the line terminator.
+	 *
+	 * @return the next line, or {@code null} if the end of the file was
+	 *         reached
+	 */
+	String readLine() {
+		if (position >= limit) {
+			return null;
+		}
+
+		int start = position;
+
+		while ((position < limit) && !isNewline(buffer.get(position))) {
+			position++;
+		}
+
+		String line = decode(start, position);
+		skipNewline();
+		return line;
+	}
+
+	/**
+	 * Advances past a single line terminator ({@code \n}, {@code \r} or
+	 * {@code \r\n}) if one is at the current position.
+	 */
+	private void skipNewline() {
+		if (position < limit) {
+			if (buffer.get(position) == '\r') {
+				position++;
+
+				if ((position < limit) && (buffer.get(position) == '\n')) {
+					position++;
+				}
+			} else if (buffer.get(position) == '\n') {
+				position++;
+			}
+		}
+	}
+
+	/**
+	 * Advances past all whitespace, including line terminators.
+	 *
+	 * @return {@code true} if a token follows; {@code false} if the end of
+	 *         the file was reached
+	 */
+	boolean skipWhitespace() {
+		while ((position < limit) && isWhitespace(buffer.get(position))) {
+			position++;
+		}
+
+		return position < limit;
+	}
+
+	/**
+	 * Advances past spaces and tabs on the current line.
+	 *
+	 * @return {@code true} if a token follows on the current line;
+	 *         {@code false} if the end of the line or file was reached
+	 */
+	boolean skipBlanks() {
+		while ((position < limit) && isBlank(buffer.get(position))) {
+			position++;
+		}
+
+		return (position < limit) && !isNewline(buffer.get(position));
+	}
+
+	/**
+	 * Advances to the start of the next line, requiring that no further
+	 * tokens exist on the current line.
+	 *
+	 * @return {@code true} if the remainder of the line was empty;
+	 *         {@code false} if additional tokens were found, in which case
+	 *         the position is left unchanged
+	 */
+	boolean endLine() {
+		if (skipBlanks()) {
+			return false;
+		}
+
+		skipNewline();
+		return true;
+	}
+
+	/**
+	 * Parses the next integer, skipping any leading whitespace and line
+	 * terminators.
+	 *
+	 * @return the parsed integer
+	 * @throws EOFException if the end of the file was reached
+	 * @throws NumberFormatException if the token is not a valid integer
+	 */
+	int nextInt() throws EOFException {
+		if (!skipWhitespace()) {
+			throw new EOFException("unexpectedly reached EOF");
+		}
+
+		return parseInt();
+	}
+
+	/**
+	 * Parses the next double, skipping any leading whitespace and line
+	 * terminators.
+	 *
+	 * @return the parsed double
+	 * @throws EOFException if the end of the file was reached
+	 * @throws NumberFormatException if the token is not a valid number
+	 */
+	double nextDouble() throws EOFException {
+		if (!skipWhitespace()) {
+			throw new EOFException("unexpectedly reached EOF");
+		}
+
+		return parseDouble();
+	}
+
+	/**
+	 * Parses an integer token starting at the current position.
+	 *
+	 * @return the parsed integer
+	 * @throws NumberFormatException if the token is not a valid integer
+	 */
+	private int parseInt() {
+		int start = position;
+		boolean negative = false;
+		long value = 0;
+		int digits = 0;
+		byte b = buffer.get(position);
+
+		if ((b == '-') || (b == '+')) {
+			negative = (b == '-');
+			position++;
+		}
+
+		while (position < limit) {
+			b = buffer.get(position);
+
+			if ((b < '0') || (b > '9') || (digits > 10)) {
+				break;
+			}
+
+			value = 10 * value + (b - '0');
+			digits++;
+			position++;
+		}
+
+		value = negative ? -value : value;
+
+		if ((digits == 0) || !atTokenEnd() || (value < Integer.MIN_VALUE) ||
+				(value > Integer.MAX_VALUE)) {
+			return Integer.parseInt(rewindToken(start));
+		}
+
+		return (int)value;
+	}
+
+	/**
+	 * Parses a floating-point token starting at the current position.  The
+	 * fast path is taken when the significand and exponent are small enough
+	 * that a single multiplication or division by an exact power of ten
+	 * yields the correctly rounded result; all other tokens are delegated to
+	 * {@link Double#parseDouble(String)}.
+	 *
+	 * @return the parsed double
+	 * @throws NumberFormatException if the token is not a valid number
+	 */
+	private double parseDouble() {
+		int start = position;
+		boolean negative = false;
+		long significand = 0;
+		int digits = 0;
+		int significantDigits = 0;
+		int exponent = 0;
+		boolean exact = true;
+		byte b = buffer.get(position);
+
+		if ((b == '-') || (b == '+')) {
+			negative = (b == '-');
+			position++;
+		}
+
+		// integer part
+		while ((position < limit) && isDigit(b = buffer.get(position))) {
+			if ((significand > 0) || (b != '0')) {
+				if (significantDigits < MAX_EXACT_DIGITS) {
+					significand = 10 * significand + (b - '0');
+					significantDigits++;
+				} else {
+					exact = false;
+				}
+			}
+
+			digits++;
+			position++;
+		}
+
+		// fractional part
+		if ((position < limit) && (buffer.get(position) == '.')) {
+			position++;
+
+			while ((position < limit) && isDigit(b = buffer.get(position))) {
+				if ((significand > 0) || (b != '0')) {
+					if (significantDigits < MAX_EXACT_DIGITS) {
+						significand = 10 * significand + (b - '0');
+						significantDigits++;
+					} else {
+						exact = false;
+					}
+				}
+
+				if (exact) {
+					exponent--;
+				}
+
+				digits++;
+				position++;
+			}
+		}
+
+		// exponent
+		if ((digits > 0) && (position < limit) &&
+				((buffer.get(position) == 'e') || (buffer.get(position) == 'E'))) {
+			position++;
+
+			boolean negativeExponent = false;
+			int value = 0;
+			int exponentDigits = 0;
+
+			if ((position < limit) && ((buffer.get(position) == '-') ||
+					(buffer.get(position) == '+'))) {
+				negativeExponent = (buffer.get(position) == '-');
+				position++;
+			}
+
+			while ((position < limit) && isDigit(b = buffer.get(position))) {
+				if (value < 10000) {
+					value = 10 * value + (b - '0');
+				}
+
+				exponentDigits++;
+				position++;
+			}
+
+			if (exponentDigits == 0) {
+				exact = false;
+			}
+
+			exponent += negativeExponent ? -value : value;
+		}
+
+		if ((digits == 0) || !exact || !atTokenEnd() ||
+				(exponent < -22) || (exponent > 22)) {
+			return Double.parseDouble(rewindToken(start));
+		}
+
+		double result = significand;
+
+		if (exponent < 0) {
+			result /= POWERS_OF_TEN[-exponent];
+		} else {
+			result *= POWERS_OF_TEN[exponent];
+		}
+
+		return negative ? -result : result;
+	}
+
+	/**
+	 * Returns {@code true} if the byte is an ASCII digit; {@code false}
+	 * otherwise.
+	 *
+	 * @param b the byte
+	 * @return {@code true} if the byte is an ASCII digit; {@code false}
+	 *         otherwise
+	 */
+	private static boolean isDigit(byte b) {
+		return (b >= '0') && (b <= '9');
+	}
+
+	/**
+	 * Returns {@code true} if the current position ends a token; {@code false}
+	 * otherwise.
+	 *
+	 * @return {@code true} if the current position ends a token;
+	 *         {@code false} otherwise
+	 */
+	private boolean atTokenEnd() {
+		return (position >= limit) || isWhitespace(buffer.get(position));
+	}
+
+	/**
+	 * Returns the complete token beginning at the specified offset and moves
+	 * the position to its end.  Used when a token must be handed to the
+	 * standard library parsers.
+	 *
+	 * @param start the offset of the first byte in the token
+	 * @return the token
+	 */
+	private String rewindToken(int start) {
+		position = start;
+
+		while ((position < limit) && !isWhitespace(buffer.get(position))) {
+			position++;
+		}
+
+		return decode(start, position);
+	}
+
+	/**
+	 * Decodes the bytes in the specified range as a string.
+	 *
+	 * @param start the offset of the first byte (inclusive)
+	 * @param end the offset of the last byte (exclusive)
+	 * @return the decoded string
+	 */
+	private String decode(int start, int end) {
+		byte[] bytes = new byte[end - start];
+
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Returns a line-oriented view of this reader starting at the current
+	 * position.  Lines consumed through the view advance this reader, so
+	 * sections without a dedicated byte-level parser can reuse the existing
+	 * {@link BufferedReader}-based loaders.
+	 *
+	 * @return a line-oriented view of this reader
+	 */
+	BufferedReader asBufferedReader() {
+		Reader view = new Reader() {
+
+			@Override
+			public int read(char[] cbuf, int off, int len) {
+				if (len == 0) {
+					return 0;
+				} else if (position >= limit) {
+					return -1;
+				}
+
+				cbuf[off] = (char)(buffer.get(position++) & 0xFF);
+				return 1;
+			}
+
+			@Override
+			public void close() {
+				// the mapped buffer is released by the enclosing reader
+			}
+
+		};
+
+		// a one-character buffer prevents read-ahead past the current line
+		return new BufferedReader(view, 1);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
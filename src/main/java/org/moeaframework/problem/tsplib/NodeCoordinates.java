@@ -22,12 +22,13 @@ package org.moeaframework.problem.tsplib;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Stores the nodes in a TSPLIB problem instance and provides methods for 
- * calculating the distances between nodes.
+ * calculating the distances between nodes.  Coordinates are kept in flat
+ * primitive arrays indexed by the node identifier, so distance calculations
+ * require no map lookups, boxing or per-node objects.
  */
 public class NodeCoordinates extends DistanceTable {
 	
@@ -46,11 +47,38 @@ public class NodeCoordinates extends DistanceTable {
 	 * The distance function.
 	 */
 	private final DistanceFunction distanceFunction;
+	
+	/**
+	 * The number of nodes currently stored.
+	 */
+	private int count;
+	
+	/**
+	 * {@code true} at each index where a node with that identifier exists.
+	 */
+	private boolean[] present;
 
 	/**
-	 * The mapping from identifiers to nodes.
+	 * The first coordinate of each node, indexed by node identifier.
+	 */
+	private double[] xs;
+	
+	/**
+	 * The second coordinate of each node, indexed by node identifier.
+	 */
+	private double[] ys;
+	
+	/**
+	 * The third coordinate of each node, indexed by node identifier; or
+	 * {@code null} if the coordinates are two dimensional.
+	 */
+	private double[] zs;
+	
+	/**
+	 * The distance function prepared over the 2D coordinates; or {@code null}
+	 * if it has not been prepared since the coordinates last changed.
 	 */
-	private final Map<Integer, Node> nodes;
+	private PreparedDistance prepared;
 	
 	/**
 	 * Constructs a new, empty node coordinates instance.
@@ -77,7 +105,14 @@ public class NodeCoordinates extends DistanceTable {
 		this.type = type;
 		this.distanceFunction = distanceFunction;
 		
-		nodes = new HashMap<Integer, Node>();
+		// TSPLIB identifiers start at 1
+		present = new boolean[size + 1];
+		xs = new double[size + 1];
+		ys = new double[size + 1];
+		
+		if (type.getLength() > 2) {
+			zs = new double[size + 1];
+		}
 	}
 	
 	@Override
@@ -91,14 +126,102 @@ public class NodeCoordinates extends DistanceTable {
 						"invalid number of tokens for node entry");
 			}
 
-			double[] position = new double[type.getLength()];
 			int id = Integer.parseInt(tokens[0]);
+			double x = Double.parseDouble(tokens[1]);
+			double y = Double.parseDouble(tokens[2]);
+			double z = (zs == null) ? 0.0 : Double.parseDouble(tokens[3]);
 
-			for (int j = 0; j < type.getLength(); j++) {
-				position[j] = Double.parseDouble(tokens[j+1]);
+			set(id, x, y, z);
+		}
+	}
+	
+	/**
+	 * Loads the node coordinates from the specified memory-mapped reader.
+	 * Each entry must occupy a single line containing the node identifier
+	 * followed by its coordinates.
+	 * 
+	 * @param reader the memory-mapped reader positioned at the first entry
+	 * @throws IOException if an I/O error occurred while reading the node
+	 *         coordinates
+	 */
+	void load(MappedTSPReader reader) throws IOException {
+		for (int i = 0; i < size; i++) {
+			int id = reader.nextInt();
+			double x = nextCoordinate(reader);
+			double y = nextCoordinate(reader);
+			double z = (zs == null) ? 0.0 : nextCoordinate(reader);
+			
+			if (!reader.endLine()) {
+				throw new IOException(
+						"invalid number of tokens for node entry");
 			}
-
-			add(new Node(id, position));
+			
+			set(id, x, y, z);
+		}
+	}
+	
+	/**
+	 * Reads the next coordinate, which must appear on the current line.
+	 * 
+	 * @param reader the memory-mapped reader
+	 * @return the coordinate
+	 * @throws IOException if the line has no further tokens
+	 */
+	private static double nextCoordinate(MappedTSPReader reader)
+			throws IOException {
+		if (!reader.skipBlanks()) {
+			throw new IOException("invalid number of tokens for node entry");
+		}
+		
+		return reader.nextDouble();
+	}
+	
+	/**
+	 * Ensures the coordinate arrays can hold the specified identifier.
+	 * 
+	 * @param id the node identifier
+	 */
+	private void ensureCapacity(int id) {
+		if (id < 0) {
+			throw new IllegalArgumentException("invalid node identifier " + id);
+		}
+		
+		if (id >= present.length) {
+			int capacity = Math.max(id + 1, 2 * present.length);
+			
+			present = Arrays.copyOf(present, capacity);
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+			
+			if (zs != null) {
+				zs = Arrays.copyOf(zs, capacity);
+			}
+		}
+	}
+	
+	/**
+	 * Stores the coordinates of the node with the specified identifier,
+	 * replacing any previous node with the same identifier.
+	 * 
+	 * @param id the node identifier
+	 * @param x the first coordinate
+	 * @param y the second coordinate
+	 * @param z the third coordinate, ignored for 2D coordinates
+	 */
+	private void set(int id, double x, double y, double z) {
+		ensureCapacity(id);
+		prepared = null;
+		
+		if (!present[id]) {
+			present[id] = true;
+			count++;
+		}
+		
+		xs[id] = x;
+		ys[id] = y;
+		
+		if (zs != null) {
+			zs[id] = z;
 		}
 	}
 	
@@ -107,19 +230,125 @@ public class NodeCoordinates extends DistanceTable {
 	 * same identifier already exists, the previous node will be replaced.
 	 * 
 	 * @param node the node to add
+	 * @throws IllegalArgumentException if the node's dimension does not match
+	 *         the coordinate type
 	 */
 	protected void add(Node node) {
-		nodes.put(node.getId(), node);
+		double[] position = node.getPosition();
+		
+		if (position.length != type.getLength()) {
+			throw new IllegalArgumentException(
+					"node is not the same dimension as the coordinates");
+		}
+		
+		set(node.getId(), position[0], position[1],
+				(zs == null) ? 0.0 : position[2]);
+	}
+	
+	/**
+	 * Returns {@code true} if a node with the specified identifier exists;
+	 * {@code false} otherwise.
+	 * 
+	 * @param id the identifier of the node
+	 * @return {@code true} if a node with the specified identifier exists;
+	 *         {@code false} otherwise
+	 */
+	public boolean contains(int id) {
+		return (id >= 0) && (id < present.length) && present[id];
 	}
 	
 	/**
-	 * Returns the node with the specified identifier.
+	 * Returns the node with the specified identifier.  The node is created on
+	 * each call; use {@link #getX(int)}, {@link #getY(int)} and
+	 * {@link #getZ(int)} in performance-sensitive code.
 	 * 
 	 * @param id the identifier of the node to return
-	 * @return the node with the specified identifier
+	 * @return the node with the specified identifier; or {@code null} if no
+	 *         such node exists
 	 */
 	public Node get(int id) {
-		return nodes.get(id);
+		if (!contains(id)) {
+			return null;
+		} else if (zs == null) {
+			return new Node(id, xs[id], ys[id]);
+		} else {
+			return new Node(id, xs[id], ys[id], zs[id]);
+		}
+	}
+	
+	/**
+	 * Returns the first coordinate of the node with the specified identifier.
+	 * 
+	 * @param id the identifier of the node
+	 * @return the first coordinate of the node
+	 * @throws IllegalArgumentException if no node exists with the specified
+	 *         identifier
+	 */
+	public double getX(int id) {
+		check(id);
+		return xs[id];
+	}
+	
+	/**
+	 * Returns the second coordinate of the node with the specified identifier.
+	 * 
+	 * @param id the identifier of the node
+	 * @return the second coordinate of the node
+	 * @throws IllegalArgumentException if no node exists with the specified
+	 *         identifier
+	 */
+	public double getY(int id) {
+		check(id);
+		return ys[id];
+	}
+	
+	/**
+	 * Returns the third coordinate of the node with the specified identifier.
+	 * 
+	 * @param id the identifier of the node
+	 * @return the third coordinate of the node
+	 * @throws IllegalArgumentException if no node exists with the specified
+	 *         identifier, or if the coordinates are two dimensional
+	 */
+	public double getZ(int id) {
+		check(id);
+		
+		if (zs == null) {
+			throw new IllegalArgumentException("nodes are not 3D");
+		}
+		
+		return zs[id];
+	}
+	
+	/**
+	 * Returns the type of coordinates stored by this instance.
+	 * 
+	 * @return the type of coordinates stored by this instance
+	 */
+	public NodeCoordType getType() {
+		return type;
+	}
+	
+	/**
+	 * Returns the distance function used by this instance.
+	 * 
+	 * @return the distance function used by this instance
+	 */
+	public DistanceFunction getDistanceFunction() {
+		return distanceFunction;
+	}
+	
+	/**
+	 * Ensures a node exists with the specified identifier.
+	 * 
+	 * @param id the identifier of the node
+	 * @throws IllegalArgumentException if no node exists with the specified
+	 *         identifier
+	 */
+	private void check(int id) {
+		if (!contains(id)) {
+			throw new IllegalArgumentException("no node with identifier " + id);
+		}
 	}
 	
 	/**
@@ -129,14 +358,18 @@ public class NodeCoordinates extends DistanceTable {
 	 * @param id the identifier of the node to remove
 	 */
 	protected void remove(int id) {
-		nodes.remove(id);
+		if (contains(id)) {
+			present[id] = false;
+			count--;
+		}
 	}
 	
 	/**
 	 * Removes all nodes from this problem instance.
 	 */
 	protected void clear() {
-		nodes.clear();
+		Arrays.fill(present, false);
+		count = 0;
 	}
 	
 	/**
@@ -145,7 +378,7 @@ public class NodeCoordinates extends DistanceTable {
 	 * @return the number of nodes that this instance contains
 	 */
 	public int size() {
-		return nodes.size();
+		return count;
 	}
 	
 	@Override
@@ -153,8 +386,10 @@ public class NodeCoordinates extends DistanceTable {
 		int index = 0;
 		int[] result = new int[size];
 		
-		for (Node node : nodes.values()) {
-			result[index++] = node.getId();
+		for (int id = 0; (id < present.length) && (index < size); id++) {
+			if (present[id]) {
+				result[index++] = id;
+			}
 		}
 		
 		return result;
@@ -165,13 +400,11 @@ public class NodeCoordinates extends DistanceTable {
 		int index = 0;
 		int[] neighbors = new int[size-1];
 		
-		if (!nodes.containsKey(id)) {
-			throw new IllegalArgumentException("no node with identifier " + id);
-		}
+		check(id);
 		
-		for (Node node : nodes.values()) {
-			if (node.getId() != id) {
-				neighbors[index++] = node.getId();
+		for (int i = 0; (i < present.length) && (index < size-1); i++) {
+			if (present[i] && (i != id)) {
+				neighbors[index++] = i;
 			}
 		}
 		
@@ -180,29 +413,60 @@ public class NodeCoordinates extends DistanceTable {
 
 	@Override
 	public double getDistanceBetween(int id1, int id2) {
-		Node node1 = get(id1);
-		Node node2 = get(id2);
+		check(id1);
+		check(id2);
 		
-		if (node1 == null) {
-			throw new IllegalArgumentException("no node with identifier " +
-					id1);
+		if (zs == null) {
+			return prepared().distance(id1, id2);
+		} else {
+			return distanceFunction.distance(xs[id1], ys[id1], zs[id1],
+					xs[id2], ys[id2], zs[id2]);
 		}
+	}
+	
+	@Override
+	public void getDistancesBetween(int id, int[] ids, double[] distances) {
+		if (zs != null) {
+			super.getDistancesBetween(id, ids, distances);
+			return;
+		}
+		
+		check(id);
+		
+		for (int i = 0; i < ids.length; i++) {
+			check(ids[i]);
+		}
+		
+		prepared().distances(id, ids, distances);
+	}
+	
+	/**
+	 * Returns the distance function prepared over the 2D coordinates, which
+	 * are indexed by node identifier.  The prepared form is created on first
+	 * use after the coordinates change.
+	 * 
+	 * @return the distance function prepared over the 2D coordinates
+	 */
+	private PreparedDistance prepared() {
+		PreparedDistance result = prepared;
 		
-		if (node2 == null) {
-			throw new IllegalArgumentException("no node with identifier " +
-					id2);
+		if (result == null) {
+			result = distanceFunction.prepare(xs, ys);
+			prepared = result;
 		}
 		
-		return distanceFunction.distance(get(id1), get(id2));
+		return result;
 	}
 	
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		
-		for (Node node : nodes.values()) {
-			sb.append(node.toString());
-			sb.append('\n');
+		for (int id = 0; id < present.length; id++) {
+			if (present[id]) {
+				sb.append(get(id).toString());
+				sb.append('\n');
+			}
 		}
 		
 		return sb.toString();
@@ -0,0 +1,120 @@
+/* Copyright 2012 David Hadka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package org.moeaframework.problem.tsplib;
+
+/**
+ * A distance function bound to a fixed set of 2D positions.  Any per-position
+ * values needed by the distance function are computed once when the
+ * positions are prepared, rather than on every evaluation.  This default
+ * implementation precomputes nothing and simply evaluates the distance
+ * function on the stored coordinates.
+ * <p>
+ * The coordinate arrays are referenced, not copied, and must not be modified
+ * while this instance is in use.
+ */
+public class PreparedDistance {
+	
+	/**
+	 * The distance function.
+	 */
+	private final DistanceFunction distanceFunction;
+	
+	/**
+	 * The first coordinate of each position.
+	 */
+	protected final double[] xs;
+	
+	/**
+	 * The second coordinate of each position.
+	 */
+	protected final double[] ys;
+	
+	/**
+	 * Constructs a new prepared distance over the specified positions.
+	 * 
+	 * @param distanceFunction the distance function
+	 * @param xs the first coordinate of each position
+	 * @param ys the second coordinate of each position
+	 * @throws IllegalArgumentException if the coordinate arrays are not the
+	 *         same length
+	 */
+	public PreparedDistance(DistanceFunction distanceFunction, double[] xs,
+			double[] ys) {
+		super();
+		
+		if (xs.length != ys.length) {
+			throw new IllegalArgumentException(
+					"coordinate arrays are not the same length");
+		}
+		
+		this.distanceFunction = distanceFunction;
+		this.xs = xs;
+		this.ys = ys;
+	}
+	
+	/**
+	 * Returns the number of positions, which are indexed from {@code 0} to
+	 * {@code size() - 1}.
+	 * 
+	 * @return the number of positions
+	 */
+	public int size() {
+		return xs.length;
+	}
+	
+	/**
+	 * Returns the distance between the positions at the two specified
+	 * indices.  The result is identical to evaluating the distance function
+	 * on the original coordinates.
+	 * 
+	 * @param index1 the index of the first position
+	 * @param index2 the index of the second position
+	 * @return the distance between the two positions
+	 */
+	public double distance(int index1, int index2) {
+		return distanceFunction.distance(xs[index1], ys[index1], xs[index2],
+				ys[index2]);
+	}
+	
+	/**
+	 * Computes the distances from one position to each of the specified
+	 * targets, storing the distance to {@code targets[i]} in
+	 * {@code distances[i]}.
+	 * 
+	 * @param index the index of the source position
+	 * @param targets the indices of the target positions
+	 * @param distances the array receiving the distances, which must be at
+	 *        least as long as {@code targets}
+	 * @throws IllegalArgumentException if the distances array is shorter than
+	 *         the targets array
+	 */
+	public void distances(int index, int[] targets, double[] distances) {
+		if (distances.length < targets.length) {
+			throw new IllegalArgumentException(
+					"distances array is shorter than targets array");
+		}
+		
+		for (int i = 0; i < targets.length; i++) {
+			distances[i] = distance(index, targets[i]);
+		}
+	}
+	
+}
@@ -44,9 +44,14 @@ public class PseudoEuclideanDistance extends DistanceFunction {
 			throw new IllegalArgumentException("nodes must be 2D");
 		}
 		
-		double xd = position1[0] - position2[0];
-		double yd = position1[1] - position2[1];
-		double r = Math.sqrt((Math.pow(xd, 2.0) + Math.pow(yd, 2.0)) / 10.0);
+		return distance(position1[0], position1[1], position2[0], position2[1]);
+	}
+	
+	@Override
+	public double distance(double x1, double y1, double x2, double y2) {
+		double xd = x1 - x2;
+		double yd = y1 - y2;
+		double r = Math.sqrt((xd * xd + yd * yd) / 10.0);
 		double t = Math.round(r);
 
 		if (t < r) {
@@ -0,0 +1,313 @@
+/* Copyright 2012 David Hadka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package org.moeaframework.problem.tsplib;
+
+/**
+ * Implementation of segment re-optimization for the traveling lazyman
+ * problem.  A window of consecutive nodes slides along the tour, and the nodes
+ * strictly inside the window are reordered optimally by dynamic programming
+ * while both end points of the window stay fixed.  This finds any improvement
+ * confined to a short stretch of the tour, including combinations of moves
+ * that 2-opt and Or-opt cannot reach one move at a time.  The cost of each
+ * window grows exponentially with its size, so windows are kept small.
+ */
+public class SegmentHeuristic {
+	
+	/**
+	 * The default number of nodes in a window, including both end points.
+	 */
+	public static final int DEFAULT_WINDOW = 8;
+	
+	/**
+	 * The maximum number of nodes in a window, including both end points.
+	 */
+	public static final int MAX_WINDOW = 14;
+	
+	/**
+	 * The minimum gain of an improving reordering, guarding against cycling
+	 * due to rounding errors.
+	 */
+	private static final double EPSILON = 1e-9;
+	
+	/**
+	 * The distances between the nodes of the traveling lazyman problem
+	 * instance.
+	 */
+	private final DistanceLookup distanceTable;
+	
+	/**
+	 * The number of nodes in a window, including both end points.
+	 */
+	private final int window;
+	
+	/**
+	 * The length of the shortest path from the first node of the window
+	 * through each subset of the inner nodes, ending at each inner node.
+	 */
+	private final double[][] lengths;
+	
+	/**
+	 * The inner node preceding the last node of each shortest path, or
+	 * {@code -1} if the path starts at the first node of the window.
+	 */
+	private final int[][] parents;
+	
+	/**
+	 * Constructs a new segment re-optimization heuristic for the specified
+	 * traveling lazyman problem instance.
+	 * 
+	 * @param instance the traveling lazyman problem instance
+	 */
+	public SegmentHeuristic(TSPInstance instance) {
+		this(instance.getDistanceTable());
+	}
+	
+	/**
+	 * Constructs a new segment re-optimization heuristic using the specified
+	 * distance table and windows of {@value #DEFAULT_WINDOW} nodes.
+	 * 
+	 * @param distanceTable the distances between the nodes of the traveling
+	 *        lazyman problem instance
+	 */
+	public SegmentHeuristic(DistanceLookup distanceTable) {
+		this(distanceTable, DEFAULT_WINDOW);
+	}
+	
+	/**
+	 * Constructs a new segment re-optimization heuristic using the specified
+	 * distance table and window size.
+	 * 
+	 * @param distanceTable the distances between the nodes of the traveling
+	 *        lazyman problem instance
+	 * @param window the number of nodes in a window, including both end
+	 *        points
+	 * @throws IllegalArgumentException if the window size is less than
+	 *         {@code 4} or greater than {@value #MAX_WINDOW}
+	 */
+	public SegmentHeuristic(DistanceLookup distanceTable, int window) {
+		super();
+		
+		if ((window < 4) || (window > MAX_WINDOW)) {
+			throw new IllegalArgumentException("window must be between 4 and " +
+					MAX_WINDOW);
+		}
+		
+		this.distanceTable = distanceTable;
+		this.window = window;
+		
+		lengths = new double[1 << (window - 2)][window - 2];
+		parents = new int[1 << (window - 2)][window - 2];
+	}
+	
+	/**
+	 * Returns the number of nodes in a window, including both end points.
+	 * 
+	 * @return the number of nodes in a window, including both end points
+	 */
+	public int getWindow() {
+		return window;
+	}
+	
+	/**
+	 * Applies segment re-optimization to the specified tour until no window
+	 * can be improved.
+	 * 
+	 * @param tour the tour that is modified by this heuristic
+	 */
+	public void apply(Tour tour) {
+		apply(tour, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Applies segment re-optimization to the specified tour until no window
+	 * can be improved or the deadline has passed.
+	 * 
+	 * @param tour the tour that is modified by this heuristic
+	 * @param deadline the time, as returned by
+	 *        {@link System#currentTimeMillis()}, after which no further
+	 *        windows are reordered
+	 */
+	public void apply(Tour tour, long deadline) {
+		while (sweep(tour, deadline)) {
+			// repeat until a sweep finds no improvement
+		}
+	}
+	
+	/**
+	 * Slides the window once around the specified tour, reordering the inner
+	 * nodes of each window that can be improved.
+	 * 
+	 * @param tour the tour that is modified by this heuristic
+	 * @return {@code true} if the tour was improved; {@code false} otherwise
+	 */
+	public boolean sweep(Tour tour) {
+		return sweep(tour, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Slides the window once around the specified tour, reordering the inner
+	 * nodes of each window that can be improved, and stops early once the
+	 * deadline has passed.
+	 * 
+	 * @param tour the tour that is modified by this heuristic
+	 * @param deadline the time, as returned by
+	 *        {@link System#currentTimeMillis()}, after which no further
+	 *        windows are reordered
+	 * @return {@code true} if the tour was improved; {@code false} otherwise
+	 */
+	public boolean sweep(Tour tour, long deadline) {
+		int size = tour.size();
+		
+		// the window must leave at least one node outside to fix its ends
+		if (size <= window) {
+			return false;
+		}
+		
+		int[] nodes = tour.toArray();
+		int[] inner = new int[window - 2];
+		int[] order = new int[window - 2];
+		boolean improved = false;
+		
+		for (int start = 0; start < size; start++) {
+			if ((start % TSP2OptHeuristic.CLOCK_INTERVAL == 0) &&
+					(System.currentTimeMillis() >= deadline)) {
+				break;
+			}
+			
+			for (int i = 0; i < inner.length; i++) {
+				inner[i] = nodes[(start + 1 + i) % size];
+			}
+			
+			int first = nodes[start];
+			int last = nodes[(start + window - 1) % size];
+			double current = distance(first, inner[0]) +
+					distance(inner[inner.length - 1], last);
+			
+			for (int i = 1; i < inner.length; i++) {
+				current += distance(inner[i - 1], inner[i]);
+			}
+			
+			if (solve(first, inner, last, order) < current - EPSILON) {
+				for (int i = 0; i < inner.length; i++) {
+					nodes[(start + 1 + i) % size] = inner[order[i]];
+				}
+				
+				improved = true;
+			}
+		}
+		
+		if (improved) {
+			tour.fromArray(nodes);
+		}
+		
+		return improved;
+	}
+	
+	/**
+	 * Computes the shortest path from {@code first} to {@code last} visiting
+	 * every inner node, using the Held-Karp dynamic program.
+	 * 
+	 * @param first the first node of the path
+	 * @param inner the nodes visited between the end points
+	 * @param last the last node of the path
+	 * @param order receives the index in {@code inner} of each node along the
+	 *        shortest path
+	 * @return the length of the shortest path
+	 */
+	private double solve(int first, int[] inner, int last, int[] order) {
+		int count = inner.length;
+		int full = (1 << count) - 1;
+		
+		for (int j = 0; j < count; j++) {
+			lengths[1 << j][j] = distance(first, inner[j]);
+			parents[1 << j][j] = -1;
+		}
+		
+		for (int mask = 1; mask <= full; mask++) {
+			// single nodes were initialized above
+			if ((mask & (mask - 1)) == 0) {
+				continue;
+			}
+			
+			for (int j = 0; j < count; j++) {
+				if ((mask & (1 << j)) == 0) {
+					continue;
+				}
+				
+				int previous = mask ^ (1 << j);
+				double best = Double.POSITIVE_INFINITY;
+				int parent = -1;
+				
+				for (int i = 0; i < count; i++) {
+					if ((previous & (1 << i)) == 0) {
+						continue;
+					}
+					
+					double length = lengths[previous][i] +
+							distance(inner[i], inner[j]);
+					
+					if (length < best) {
+						best = length;
+						parent = i;
+					}
+				}
+				
+				lengths[mask][j] = best;
+				parents[mask][j] = parent;
+			}
+		}
+		
+		double best = Double.POSITIVE_INFINITY;
+		int end = -1;
+		
+		for (int j = 0; j < count; j++) {
+			double length = lengths[full][j] + distance(inner[j], last);
+			
+			if (length < best) {
+				best = length;
+				end = j;
+			}
+		}
+		
+		int mask = full;
+		
+		for (int i = count - 1; i >= 0; i--) {
+			order[i] = end;
+			int parent = parents[mask][end];
+			mask ^= 1 << end;
+			end = parent;
+		}
+		
+		return best;
+	}
+	
+	/**
+	 * Returns the distance between two nodes.
+	 * 
+	 * @param id1 the identifier of the first node
+	 * @param id2 the identifier of the second node
+	 * @return the distance between the two nodes
+	 */
+	private double distance(int id1, int id2) {
+		return distanceTable.getDistanceBetween(id1, id2);
+	}
+
+}
@@ -25,13 +25,54 @@ package org.moeaframework.problem.tsplib;
  * The 2-opt heuristic searches for any two edges in a tour that can be
  * rearranged to produce a shorter tour.  For example, a tour with any edges
  * that intersect can be shortened by removing the intersection.
+ * <p>
+ * Rather than testing every pair of edges, moves are restricted to the
+ * nearest candidates of each node: an improving exchange must add an edge
+ * from a node to one of its candidates that is shorter than the tour edge it
+ * replaces.  Besides 2-opt moves, Or-opt moves relocate a segment of up to
+ * {@value #MAX_SEGMENT} nodes, possibly reversed, between two nodes near
+ * either end of the segment.  Nodes whose neighborhood has not changed since
+ * they last failed to improve the tour are skipped (don't-look bits); nodes
+ * are queued again whenever one of their tour edges changes.  As a node is
+ * not requeued when only the edges of its candidates change, the resulting
+ * tour is close to, but not always, locally optimal with respect to these
+ * candidate moves; applying the heuristic again may improve it further.
  */
 public class TSP2OptHeuristic {
 	
 	/**
-	 * The traveling lazyman problem instance.
+	 * The default number of candidates of each node.
 	 */
-	private final TSPInstance instance;
+	public static final int DEFAULT_CANDIDATES = 16;
+	
+	/**
+	 * The maximum number of nodes moved by an Or-opt move.
+	 */
+	public static final int MAX_SEGMENT = 3;
+	
+	/**
+	 * The minimum gain of an improving move, guarding against cycling due to
+	 * rounding errors.
+	 */
+	private static final double EPSILON = 1e-9;
+	
+	/**
+	 * The number of nodes searched between two checks of the deadline, so
+	 * that reading the clock adds no noticeable cost.
+	 */
+	static final int CLOCK_INTERVAL = 16;
+	
+	/**
+	 * The distances between the nodes of the traveling lazyman problem
+	 * instance.
+	 */
+	private final DistanceLookup distanceTable;
+	
+	/**
+	 * The candidates of each node, sorted by increasing distance and indexed
+	 * by node identifier; or {@code null} if they are computed on first use.
+	 */
+	private int[][] candidates;
 
 	/**
 	 * Constructs a new 2-opt heuristic for the specified traveling lazyman
@@ -40,8 +81,148 @@ public class TSP2OptHeuristic {
 	 * @param instance the traveling lazyman problem instance
 	 */
 	public TSP2OptHeuristic(TSPInstance instance) {
+		this(instance.getDistanceTable());
+	}
+	
+	/**
+	 * Constructs a new 2-opt heuristic using the specified distance table,
+	 * such as a {@link CachedDistanceTable}.  The
+	 * {@value #DEFAULT_CANDIDATES} nearest nodes are used as candidates.
+	 * 
+	 * @param distanceTable the distances between the nodes of the traveling
+	 *        lazyman problem instance
+	 */
+	public TSP2OptHeuristic(DistanceLookup distanceTable) {
+		this(distanceTable, null);
+	}
+	
+	/**
+	 * Constructs a new 2-opt heuristic using the specified distance table and
+	 * candidates.
+	 * 
+	 * @param distanceTable the distances between the nodes of the traveling
+	 *        lazyman problem instance
+	 * @param candidates the candidates of each node, sorted by increasing
+	 *        distance and indexed by node identifier; or {@code null} to use
+	 *        the {@value #DEFAULT_CANDIDATES} nearest nodes
+	 */
+	public TSP2OptHeuristic(DistanceLookup distanceTable, int[][] candidates) {
 		super();
-		this.instance = instance;
+		this.distanceTable = distanceTable;
+		this.candidates = candidates;
+	}
+	
+	/**
+	 * Returns the nearest nodes of each node in the specified distance table.
+	 * The distances from each node are computed in a single batch by
+	 * {@link DistanceLookup#getDistancesBetween(int, int[], double[])}.
+	 * 
+	 * @param distanceTable the distance table
+	 * @param count the number of nearest nodes of each node
+	 * @return the nearest nodes of each node, sorted by increasing distance
+	 *         and indexed by node identifier
+	 */
+	public static int[][] nearestNeighbors(DistanceLookup distanceTable,
+			int count) {
+		int[] nodes = distanceTable.listNodes();
+		int maximum = 0;
+		
+		for (int id : nodes) {
+			maximum = Math.max(maximum, id);
+		}
+		
+		int k = Math.min(count, nodes.length - 1);
+		int[][] result = new int[maximum + 1][];
+		double[] row = new double[nodes.length];
+		int[] heap = new int[k];
+		
+		for (int id : nodes) {
+			distanceTable.getDistancesBetween(id, nodes, row);
+			
+			// keep the k nearest in a max-heap of positions in the row
+			int size = 0;
+			
+			for (int i = 0; i < nodes.length; i++) {
+				if (nodes[i] == id) {
+					continue;
+				} else if (size < k) {
+					heap[size++] = i;
+					siftUp(heap, size - 1, row);
+				} else if ((k > 0) && (row[i] < row[heap[0]])) {
+					heap[0] = i;
+					siftDown(heap, size, row);
+				}
+			}
+			
+			int[] nearest = new int[size];
+			
+			for (int i = size - 1; i >= 0; i--) {
+				nearest[i] = nodes[heap[0]];
+				heap[0] = heap[i];
+				siftDown(heap, i, row);
+			}
+			
+			result[id] = nearest;
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Restores the max-heap order after the entry at the specified index was
+	 * added.
+	 * 
+	 * @param heap the positions forming the heap
+	 * @param index the index of the added entry
+	 * @param keys the distance of each position
+	 */
+	private static void siftUp(int[] heap, int index, double[] keys) {
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			
+			if (keys[heap[parent]] >= keys[heap[index]]) {
+				break;
+			}
+			
+			int temp = heap[parent];
+			heap[parent] = heap[index];
+			heap[index] = temp;
+			index = parent;
+		}
+	}
+	
+	/**
+	 * Restores the max-heap order after the root was replaced.
+	 * 
+	 * @param heap the positions forming the heap
+	 * @param size the number of entries in the heap
+	 * @param keys the distance of each position
+	 */
+	private static void siftDown(int[] heap, int size, double[] keys) {
+		int index = 0;
+		
+		while (true) {
+			int largest = index;
+			int left = 2 * index + 1;
+			int right = left + 1;
+			
+			if ((left < size) && (keys[heap[left]] > keys[heap[largest]])) {
+				largest = left;
+			}
+			
+			if ((right < size) && (keys[heap[right]] > keys[heap[largest]])) {
+				largest = right;
+			}
+			
+			if (largest == index) {
+				break;
+			}
+			
+			int temp = heap[largest];
+			heap[largest] = heap[index];
+			heap[index] = temp;
+			index = largest;
+		}
 	}
 	
 	/**
@@ -50,32 +231,352 @@ public class TSP2OptHeuristic {
 	 * @param tour the tour that is modified by the 2-opt heuristic
 	 */
 	public void apply(Tour tour) {
-		DistanceTable distanceTable = instance.getDistanceTable();
-		boolean modified = true;
-		
+		apply((TourOrder)tour);
+	}
+	
+	/**
+	 * Applies the 2-opt heuristic to the specified tour, which may be any
+	 * tour representation such as a {@link TwoLevelTour}.
+	 * 
+	 * @param tour the tour that is modified by the 2-opt heuristic
+	 */
+	public void apply(TourOrder tour) {
+		apply(tour, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Applies the 2-opt heuristic to the specified tour until no candidate
+	 * move improves it or the deadline has passed.  A tour stopped by the
+	 * deadline is valid and no longer than before, but may still be improved
+	 * by the heuristic.
+	 * 
+	 * @param tour the tour that is modified by the 2-opt heuristic
+	 * @param deadline the time, as returned by
+	 *        {@link System#currentTimeMillis()}, after which no further moves
+	 *        are searched
+	 */
+	public void apply(TourOrder tour, long deadline) {
 		// tours with 3 or fewer nodes are already optimal
 		if (tour.size() < 4) {
 			return;
 		}
 		
-		while (modified) {
-			modified = false;
+		if (candidates == null) {
+			candidates = nearestNeighbors(distanceTable, DEFAULT_CANDIDATES);
+		}
+		
+		int[] nodes = tour.toArray();
+		int maximum = 0;
+		
+		for (int id : nodes) {
+			maximum = Math.max(maximum, id);
+		}
+		
+		// a circular work queue of nodes whose don't-look bit is off
+		int[] queue = new int[nodes.length];
+		boolean[] queued = new boolean[maximum + 1];
+		int head = 0;
+		int length = nodes.length;
+		
+		System.arraycopy(nodes, 0, queue, 0, nodes.length);
+		
+		for (int id : nodes) {
+			queued[id] = true;
+		}
+		
+		int[] touched = new int[2 * (MAX_SEGMENT + 3)];
+		int searched = 0;
+		
+		while (length > 0) {
+			if ((++searched % CLOCK_INTERVAL == 0) &&
+					(System.currentTimeMillis() >= deadline)) {
+				break;
+			}
+			
+			int node = queue[head];
+			head = (head + 1) % queue.length;
+			length--;
+			queued[node] = false;
+			
+			int count = improve(tour, node, touched);
 			
-			for (int i = 0; i < tour.size(); i++) {
-				for (int j = i+2; j < tour.size(); j++) {
-					double d1 = distanceTable.getDistanceBetween(tour.get(i), tour.get(i+1)) +
-							distanceTable.getDistanceBetween(tour.get(j), tour.get(j+1));
-					double d2 = distanceTable.getDistanceBetween(tour.get(i), tour.get(j)) +
-							distanceTable.getDistanceBetween(tour.get(i+1), tour.get(j+1));
+			for (int i = 0; i < count; i++) {
+				int id = touched[i];
+				
+				if (!queued[id]) {
+					queued[id] = true;
+					queue[(head + length) % queue.length] = id;
+					length++;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Searches the candidates of the specified node for the 2-opt move with
+	 * the largest gain and applies it.  If no 2-opt move improves the tour,
+	 * the first improving Or-opt move of a segment starting at the node is
+	 * applied instead.
+	 * 
+	 * @param tour the tour
+	 * @param a the node
+	 * @param touched receives the end points of the changed edges
+	 * @return the number of end points stored in {@code touched}, which is
+	 *         {@code 0} if no improving move was found
+	 */
+	private int improve(TourOrder tour, int a, int[] touched) {
+		int[] neighbors = (a < candidates.length) ? candidates[a] : null;
+		
+		if (neighbors == null) {
+			return 0;
+		}
+		
+		// the best 2-opt move removing one of the tour edges of a
+		double bestGain = EPSILON;
+		int bestB = -1;
+		int bestC = -1;
+		int bestD = -1;
+		
+		for (int direction = 0; direction < 2; direction++) {
+			boolean forward = (direction == 0);
+			int b = step(tour, a, forward);
+			double ab = distance(a, b);
+			
+			for (int c : neighbors) {
+				double ac = distance(a, c);
+				
+				if (ab - ac <= EPSILON) {
+					break;
+				}
+				
+				int d = step(tour, c, forward);
+				
+				if ((c == b) || (d == a)) {
+					continue;
+				}
+				
+				double gain = ab + distance(c, d) - ac - distance(b, d);
+				
+				if (gain > bestGain) {
+					bestGain = gain;
+					bestB = b;
+					bestC = c;
+					bestD = d;
+				}
+			}
+		}
+		
+		if (bestB >= 0) {
+			exchange(tour, a, bestB, bestC, bestD);
+			return fill(touched, a, bestB, bestC, bestD);
+		}
+		
+		for (int segment = 1; segment <= MAX_SEGMENT; segment++) {
+			if (tour.size() < segment + 3) {
+				break;
+			}
+			
+			for (int direction = 0; direction < 2; direction++) {
+				int count = moveSegment(tour, a, segment, direction == 0,
+						touched);
+				
+				if (count > 0) {
+					return count;
+				}
+			}
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * Searches for an improving Or-opt move of the segment starting at the
+	 * specified node and applies the first one found.  The segment is
+	 * relocated next to a candidate of either end point.
+	 * 
+	 * @param tour the tour
+	 * @param s1 the first node of the segment
+	 * @param segment the number of nodes in the segment
+	 * @param forward {@code true} if the segment extends forward from
+	 *        {@code s1}; {@code false} if it extends backward
+	 * @param touched receives the end points of the changed edges
+	 * @return the number of end points stored in {@code touched}, which is
+	 *         {@code 0} if no improving move was found
+	 */
+	private int moveSegment(TourOrder tour, int s1, int segment,
+			boolean forward, int[] touched) {
+		int s2 = s1;
+		
+		for (int i = 1; i < segment; i++) {
+			s2 = step(tour, s2, forward);
+		}
+		
+		int p = step(tour, s1, !forward);
+		int n = step(tour, s2, forward);
+		double removed = distance(p, s1) + distance(s2, n) - distance(p, n);
+		
+		if (removed <= EPSILON) {
+			return 0;
+		}
+		
+		for (int end = 0; end < 2; end++) {
+			int x = (end == 0) ? s1 : s2;
+			int y = (end == 0) ? s2 : s1;
+			int[] neighbors = (x < candidates.length) ? candidates[x] : null;
+			
+			if (neighbors == null) {
+				continue;
+			}
+			
+			for (int c : neighbors) {
+				double cx = distance(c, x);
+				
+				if (removed - cx <= EPSILON) {
+					break;
+				}
+				
+				if (contains(tour, s1, segment, forward, c)) {
+					continue;
+				}
+				
+				for (int side = 0; side < 2; side++) {
+					int d = step(tour, c, side == 0);
+					
+					if (contains(tour, s1, segment, forward, d)) {
+						continue;
+					}
 					
-					// if distance can be shortened, adjust the tour
-					if (d2 < d1) {
-						tour.reverse(i+1, j);
-						modified = true;
+					double gain = removed - cx - distance(y, d) +
+							distance(c, d);
+					
+					if (gain > EPSILON) {
+						// orient the edge (c, d) with the segment's direction
+						boolean aligned = (d == step(tour, c, forward));
+						int c1 = aligned ? c : d;
+						int d1 = aligned ? d : c;
+						boolean reversed = aligned ? (x == s2) : (x == s1);
+						
+						insert(tour, p, s1, s2, n, c1, d1, reversed);
+						return fill(touched, p, s1, s2, n, c, d);
 					}
 				}
 			}
 		}
+		
+		return 0;
+	}
+	
+	/**
+	 * Moves the segment from {@code s1} to {@code s2} between {@code c1} and
+	 * {@code d1} using 2-opt exchanges.  The nodes must appear in the order
+	 * {@code p, s1, ..., s2, n, ..., c1, d1} along one direction of the tour.
+	 * 
+	 * @param tour the tour
+	 * @param p the node before the segment
+	 * @param s1 the first node of the segment
+	 * @param s2 the last node of the segment
+	 * @param n the node after the segment
+	 * @param c1 the node after which the segment is inserted
+	 * @param d1 the node before which the segment is inserted
+	 * @param reversed {@code true} to insert the segment as
+	 *        {@code c1, s2, ..., s1, d1}; {@code false} to insert it as
+	 *        {@code c1, s1, ..., s2, d1}
+	 */
+	private void insert(TourOrder tour, int p, int s1, int s2, int n, int c1,
+			int d1, boolean reversed) {
+		// p s1..s2 n..c1 d1  ->  p c1..n s2..s1 d1
+		exchange(tour, p, s1, c1, d1);
+		
+		// p c1..n s2..s1 d1  ->  p n..c1 s2..s1 d1
+		exchange(tour, p, c1, n, s2);
+		
+		// p n..c1 s2..s1 d1  ->  p n..c1 s1..s2 d1
+		if (!reversed) {
+			exchange(tour, c1, s2, s1, d1);
+		}
+	}
+	
+	/**
+	 * Returns {@code true} if the specified node is part of the segment;
+	 * {@code false} otherwise.
+	 * 
+	 * @param tour the tour
+	 * @param s1 the first node of the segment
+	 * @param segment the number of nodes in the segment
+	 * @param forward the direction in which the segment extends
+	 * @param node the node
+	 * @return {@code true} if the node is part of the segment; {@code false}
+	 *         otherwise
+	 */
+	private static boolean contains(TourOrder tour, int s1, int segment,
+			boolean forward, int node) {
+		int current = s1;
+		
+		for (int i = 0; i < segment; i++) {
+			if (current == node) {
+				return true;
+			}
+			
+			current = step(tour, current, forward);
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Replaces the tour edges {@code (a, b)} and {@code (c, d)} with
+	 * {@code (a, c)} and {@code (b, d)}.  Both edges must be traversed in the
+	 * same direction, i.e., either {@code b = next(a)} and
+	 * {@code d = next(c)}, or {@code b = prev(a)} and {@code d = prev(c)}.
+	 * 
+	 * @param tour the tour
+	 * @param a the first node of the first edge
+	 * @param b the second node of the first edge
+	 * @param c the first node of the second edge
+	 * @param d the second node of the second edge
+	 */
+	static void exchange(TourOrder tour, int a, int b, int c, int d) {
+		if (tour.next(a) == b) {
+			tour.flip(a, b, c, d);
+		} else {
+			tour.flip(b, a, d, c);
+		}
+	}
+	
+	/**
+	 * Returns the node after or before the specified node.
+	 * 
+	 * @param tour the tour
+	 * @param node the node
+	 * @param forward {@code true} for the next node; {@code false} for the
+	 *        previous node
+	 * @return the node after or before the specified node
+	 */
+	static int step(TourOrder tour, int node, boolean forward) {
+		return forward ? tour.next(node) : tour.prev(node);
+	}
+	
+	/**
+	 * Returns the distance between two nodes.
+	 * 
+	 * @param id1 the identifier of the first node
+	 * @param id2 the identifier of the second node
+	 * @return the distance between the two nodes
+	 */
+	private double distance(int id1, int id2) {
+		return distanceTable.getDistanceBetween(id1, id2);
+	}
+	
+	/**
+	 * Stores the specified nodes.
+	 * 
+	 * @param touched the array receiving the nodes
+	 * @param nodes the nodes
+	 * @return the number of nodes stored
+	 */
+	private static int fill(int[] touched, int... nodes) {
+		System.arraycopy(nodes, 0, touched, 0, nodes.length);
+		return nodes.length;
 	}
 
 }
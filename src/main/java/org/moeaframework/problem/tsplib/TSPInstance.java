@@ -21,6 +21,7 @@
 package org.moeaframework.problem.tsplib;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
@@ -84,6 +85,11 @@ public class TSPInstance {
 	 */
 	private DisplayDataType displayDataType;
 	
+	/**
+	 * The way explicit edge weight matrices are stored.
+	 */
+	private EdgeWeightStorage edgeWeightStorage = EdgeWeightStorage.HEAP;
+	
 	/**
 	 * The distance table that defines the nodes, edges, and weights for this
 	 * problem instance.
@@ -133,6 +139,162 @@ public class TSPInstance {
 		load(file);
 	}
 	
+	/**
+	 * The source of the lines and sections of a TSPLIB file.  Lets
+	 * {@link TSPInstance#load(SectionReader)} dispatch the sections of both
+	 * the text and the memory-mapped readers.
+	 */
+	private interface SectionReader extends Closeable {
+		
+		/**
+		 * Reads the next line.
+		 * 
+		 * @return the next line, or {@code null} if the end of the file was
+		 *         reached
+		 * @throws IOException if an I/O error occurred
+		 */
+		String readLine() throws IOException;
+		
+		/**
+		 * Loads a node coordinate section.
+		 * 
+		 * @param coordinates the node coordinates being loaded
+		 * @throws IOException if an I/O error occurred
+		 */
+		void load(NodeCoordinates coordinates) throws IOException;
+		
+		/**
+		 * Loads an edge weight section.
+		 * 
+		 * @param matrix the edge weight matrix being loaded
+		 * @throws IOException if an I/O error occurred
+		 */
+		void load(EdgeWeightMatrix matrix) throws IOException;
+		
+		/**
+		 * Loads a tour section.
+		 * 
+		 * @param tour the tour being loaded
+		 * @throws IOException if an I/O error occurred
+		 */
+		void load(Tour tour) throws IOException;
+		
+		/**
+		 * Returns a line-oriented reader positioned at the current line, for
+		 * the sections read line-by-line.
+		 * 
+		 * @return a line-oriented reader positioned at the current line
+		 */
+		BufferedReader lines();
+		
+	}
+	
+	/**
+	 * Reads the sections of a TSPLIB file from text.
+	 */
+	private static class TextSectionReader implements SectionReader {
+		
+		/**
+		 * The underlying reader.
+		 */
+		private final BufferedReader reader;
+		
+		/**
+		 * Constructs a section reader over the specified reader.
+		 * 
+		 * @param reader the underlying reader
+		 */
+		public TextSectionReader(BufferedReader reader) {
+			super();
+			this.reader = reader;
+		}
+		
+		@Override
+		public String readLine() throws IOException {
+			return reader.readLine();
+		}
+		
+		@Override
+		public void load(NodeCoordinates coordinates) throws IOException {
+			coordinates.load(reader);
+		}
+		
+		@Override
+		public void load(EdgeWeightMatrix matrix) throws IOException {
+			matrix.load(reader);
+		}
+		
+		@Override
+		public void load(Tour tour) throws IOException {
+			tour.load(reader);
+		}
+		
+		@Override
+		public BufferedReader lines() {
+			return reader;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+		
+	}
+	
+	/**
+	 * Reads the sections of a TSPLIB file through a memory-mapped reader.
+	 * Node coordinates, edge weights and tours are parsed directly from the
+	 * mapped bytes.
+	 */
+	private static class MappedSectionReader implements SectionReader {
+		
+		/**
+		 * The underlying memory-mapped reader.
+		 */
+		private final MappedTSPReader reader;
+		
+		/**
+		 * Constructs a section reader over the specified memory-mapped reader.
+		 * 
+		 * @param reader the underlying memory-mapped reader
+		 */
+		public MappedSectionReader(MappedTSPReader reader) {
+			super();
+			this.reader = reader;
+		}
+		
+		@Override
+		public String readLine() {
+			return reader.readLine();
+		}
+		
+		@Override
+		public void load(NodeCoordinates coordinates) throws IOException {
+			coordinates.load(reader);
+		}
+		
+		@Override
+		public void load(EdgeWeightMatrix matrix) throws IOException {
+			matrix.load(reader);
+		}
+		
+		@Override
+		public void load(Tour tour) throws IOException {
+			tour.load(reader);
+		}
+		
+		@Override
+		public BufferedReader lines() {
+			return reader.asBufferedReader();
+		}
+		
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+		
+	}
+	
 	/**
 	 * Loads a problem instance from the specified TSPLIB file.
 	 * 
@@ -141,12 +303,37 @@ public class TSPInstance {
 	 *         file
 	 */
 	public void load(File file) throws IOException {
-		BufferedReader reader = null;
+		load(new TextSectionReader(new BufferedReader(new FileReader(file))));
+	}
+	
+	/**
+	 * Loads a problem instance from the specified TSPLIB file using a
+	 * memory-mapped reader.  Node coordinates, edge weights and tours are
+	 * parsed directly from the mapped bytes; the remaining sections are read
+	 * line-by-line as in {@link #load(File)}.  The resulting problem instance
+	 * is identical to the one produced by {@link #load(File)}, but large
+	 * instances load considerably faster and with far less garbage.
+	 * 
+	 * @param file the TSPLIB file defining the problem
+	 * @throws IOException if an I/O error occurred while loading the TSPLIB
+	 *         file
+	 */
+	public void loadMapped(File file) throws IOException {
+		load(new MappedSectionReader(new MappedTSPReader(file)));
+	}
+	
+	/**
+	 * Loads a problem instance from the specified section reader, which is
+	 * closed when done.
+	 * 
+	 * @param reader the section reader
+	 * @throws IOException if an I/O error occurred while loading the TSPLIB
+	 *         file
+	 */
+	private void load(SectionReader reader) throws IOException {
 		String line = null;
 		
 		try {
-			reader = new BufferedReader(new FileReader(file));
-			
 			while ((line = reader.readLine()) != null) {
 				line = line.trim();
 				
@@ -155,8 +342,10 @@ public class TSPInstance {
 						nodeCoordinateType = edgeWeightType.getNodeCoordType();
 					}
 					
-					distanceTable = new NodeCoordinates(dimension, edgeWeightType);
-					distanceTable.load(reader);
+					NodeCoordinates coordinates = new NodeCoordinates(dimension,
+							edgeWeightType);
+					reader.load(coordinates);
+					distanceTable = coordinates;
 				} else if (line.equals("EDGE_WEIGHT_SECTION")) {
 					if (DataType.SOP.equals(dataType)) {
 						// for whatever reason, SOP instances have an extra line with
@@ -164,75 +353,93 @@ public class TSPInstance {
 						reader.readLine();
 					}
 					
-					distanceTable = new EdgeWeightMatrix(dimension, edgeWeightFormat);
-					distanceTable.load(reader);
+					EdgeWeightMatrix matrix = new EdgeWeightMatrix(dimension,
+							edgeWeightFormat, edgeWeightStorage);
+					reader.load(matrix);
+					distanceTable = matrix;
 				} else if (line.equals("EDGE_DATA_SECTION")) {
 					distanceTable = new EdgeData(dimension, edgeDataFormat);
-					distanceTable.load(reader);
+					distanceTable.load(reader.lines());
 				} else if (line.equals("DISPLAY_DATA_SECTION")) {
 					displayData = new NodeCoordinates(dimension, NodeCoordType.TWOD_COORDS, null);
-					displayData.load(reader);
+					reader.load(displayData);
 				} else if (line.equals("TOUR_SECTION") || line.equals("-1")) {
 					Tour tour = new Tour();
-					tour.load(reader);
+					reader.load(tour);
 					tours.add(tour);
 				} else if (line.equals("FIXED_EDGES_SECTION") || line.matches("^\\s*FIXED_EDGES\\s*\\:\\s*$")) {
 					fixedEdges = new EdgeData(dimension, EdgeDataFormat.EDGE_LIST);
-					fixedEdges.load(reader);
+					fixedEdges.load(reader.lines());
 				} else if (line.equals("DEMAND_SECTION")) {
 					if (vehicleRoutingTable == null) {
 						vehicleRoutingTable = new VehicleRoutingTable(dimension);
 					}
 					
-					vehicleRoutingTable.loadDemands(reader);
+					vehicleRoutingTable.loadDemands(reader.lines());
 				} else if (line.equals("DEPOT_SECTION")) {
 					if (vehicleRoutingTable == null) {
 						vehicleRoutingTable = new VehicleRoutingTable(dimension);
 					}
 					
-					vehicleRoutingTable.loadDepots(reader);
+					vehicleRoutingTable.loadDepots(reader.lines());
 				} else if (line.equals("EOF")) {
 					break;
 				} else if (line.isEmpty()) {
 					//do nothing
 				} else {
-					String[] tokens = line.split(":");
-					String key = tokens[0].trim();
-					String value = tokens[1].trim();
-					
-					if (key.equals("NAME")) {
-						name = value;
-					} else if (key.equals("COMMENT")) {
-						if (comment == null) {
-							comment = value;
-						} else {
-							comment = comment + "\n" + value;
-						}
-					} else if (key.equals("TYPE")) {
-						dataType = DataType.valueOf(value);
-					} else if (key.equals("DIMENSION")) {
-						dimension = Integer.parseInt(value);
-					} else if (key.equals("CAPACITY")) {
-						capacity = Integer.parseInt(value);
-					} else if (key.equals("EDGE_WEIGHT_TYPE")) {
-						edgeWeightType = EdgeWeightType.valueOf(value);
-					} else if (key.equals("EDGE_WEIGHT_FORMAT")) {
-						edgeWeightFormat = EdgeWeightFormat.valueOf(value);
-					} else if (key.equals("EDGE_DATA_FORMAT")) {
-						edgeDataFormat = EdgeDataFormat.valueOf(value);
-					} else if (key.equals("NODE_COORD_FORMAT")) {
-						nodeCoordinateType = NodeCoordType.valueOf(value);
-					} else if (key.equals("DISPLAY_DATA_TYPE")) {
-						displayDataType = DisplayDataType.valueOf(value);
-					}
+					parseSpecification(line);
 				}
 			}
 		} finally {
-			if (reader != null) {
-				reader.close();
-			}
+			reader.close();
 		}
 		
+		applyDefaults();
+	}
+	
+	/**
+	 * Parses a {@code KEY : VALUE} line from the specification part of a
+	 * TSPLIB file.  Unrecognized keys are ignored.
+	 * 
+	 * @param line the specification line
+	 */
+	private void parseSpecification(String line) {
+		String[] tokens = line.split(":");
+		String key = tokens[0].trim();
+		String value = tokens[1].trim();
+		
+		if (key.equals("NAME")) {
+			name = value;
+		} else if (key.equals("COMMENT")) {
+			if (comment == null) {
+				comment = value;
+			} else {
+				comment = comment + "\n" + value;
+			}
+		} else if (key.equals("TYPE")) {
+			dataType = DataType.valueOf(value);
+		} else if (key.equals("DIMENSION")) {
+			dimension = Integer.parseInt(value);
+		} else if (key.equals("CAPACITY")) {
+			capacity = Integer.parseInt(value);
+		} else if (key.equals("EDGE_WEIGHT_TYPE")) {
+			edgeWeightType = EdgeWeightType.valueOf(value);
+		} else if (key.equals("EDGE_WEIGHT_FORMAT")) {
+			edgeWeightFormat = EdgeWeightFormat.valueOf(value);
+		} else if (key.equals("EDGE_DATA_FORMAT")) {
+			edgeDataFormat = EdgeDataFormat.valueOf(value);
+		} else if (key.equals("NODE_COORD_FORMAT")) {
+			nodeCoordinateType = NodeCoordType.valueOf(value);
+		} else if (key.equals("DISPLAY_DATA_TYPE")) {
+			displayDataType = DisplayDataType.valueOf(value);
+		}
+	}
+	
+	/**
+	 * Fills in the default settings for any properties not defined by the
+	 * TSPLIB file.
+	 */
+	private void applyDefaults() {
 		// fill in default settings
 		if (nodeCoordinateType == null) {
 			nodeCoordinateType = NodeCoordType.NO_COORDS;
@@ -376,6 +583,26 @@ public class TSPInstance {
 		return displayDataType;
 	}
 
+	/**
+	 * Returns the way explicit edge weight matrices are stored.
+	 * 
+	 * @return the way explicit edge weight matrices are stored
+	 */
+	public EdgeWeightStorage getEdgeWeightStorage() {
+		return edgeWeightStorage;
+	}
+	
+	/**
+	 * Sets the way explicit edge weight matrices are stored.  This must be
+	 * called before loading the problem instance to take effect.
+	 * 
+	 * @param edgeWeightStorage the way explicit edge weight matrices are
+	 *        stored
+	 */
+	public void setEdgeWeightStorage(EdgeWeightStorage edgeWeightStorage) {
+		this.edgeWeightStorage = edgeWeightStorage;
+	}
+	
 	/**
 	 * Returns the distance table that defines the nodes, edges, and weights
 	 * for this problem instance.
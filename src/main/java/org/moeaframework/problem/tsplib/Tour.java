@@ -23,21 +23,42 @@ package org.moeaframework.problem.tsplib;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.Random;
 
 /**
  * Stores the nodes (by their identifier) that are visited in a tour.  Tours
  * are cyclic, so an implicit edge exists between the last index and the first.
+ * <p>
+ * The nodes are kept in a primitive array together with its inverse, the
+ * position of each node indexed by node identifier, so the position, successor
+ * and predecessor of a node are found in constant time.  The inverse is only
+ * meaningful for tours that visit each node at most once.
  */
-public class Tour {
+public class Tour implements TourOrder {
 	
 	/**
-	 * The nodes that are visited in this tour.
+	 * The random number generator used to create random tours.
 	 */
-	private final List<Integer> nodes;
+	private static final Random RANDOM = new Random();
+	
+	/**
+	 * The nodes that are visited in this tour; only the first {@code size}
+	 * entries are used.
+	 */
+	private int[] nodes;
+	
+	/**
+	 * The number of nodes visited in this tour.
+	 */
+	private int size;
+	
+	/**
+	 * The index at which each node is visited, indexed by node identifier; or
+	 * {@code -1} if the node is not visited.
+	 */
+	private int[] positions;
 	
 	/**
 	 * Constructs a new, empty tour.
@@ -45,7 +66,8 @@ public class Tour {
 	public Tour() {
 		super();
 		
-		nodes = new ArrayList<Integer>();
+		nodes = new int[16];
+		positions = new int[0];
 	}
 	
 	/**
@@ -66,19 +88,89 @@ public class Tour {
 				if (id == -1) {
 					break outer;
 				} else {
-					nodes.add(id);
+					add(id);
 				}
 			}
 		}
 	}
 	
 	/**
-	 * The number of nodes visited in this tour.
+	 * Loads the contents of this tour from the given memory-mapped reader.
+	 * Identifiers are read until {@code -1} or the end of the file.
 	 * 
-	 * @return the number of nodes visited in this tour
+	 * @param reader the memory-mapped reader that defines this tour
+	 * @throws IOException if an I/O error occurred while reading the tour
 	 */
+	void load(MappedTSPReader reader) throws IOException {
+		while (reader.skipWhitespace()) {
+			int id = reader.nextInt();
+			
+			if (id == -1) {
+				break;
+			} else {
+				add(id);
+			}
+		}
+	}
+	
+	/**
+	 * Appends the specified node to the end of this tour.
+	 * 
+	 * @param node the identifier of the node
+	 * @throws IllegalArgumentException if the node identifier is negative
+	 */
+	private void add(int node) {
+		if (size == nodes.length) {
+			nodes = Arrays.copyOf(nodes, 2 * size);
+		}
+		
+		nodes[size++] = node;
+		setPosition(node, size - 1);
+	}
+	
+	/**
+	 * Records the index at which the specified node is visited, growing the
+	 * inverse array if necessary.
+	 * 
+	 * @param node the identifier of the node
+	 * @param index the index at which the node is visited
+	 * @throws IllegalArgumentException if the node identifier is negative
+	 */
+	private void setPosition(int node, int index) {
+		if (node < 0) {
+			throw new IllegalArgumentException("invalid node identifier " +
+					node);
+		}
+		
+		if (node >= positions.length) {
+			int length = positions.length;
+			positions = Arrays.copyOf(positions, Math.max(node + 1,
+					2 * length));
+			Arrays.fill(positions, length, positions.length, -1);
+		}
+		
+		positions[node] = index;
+	}
+	
+	@Override
 	public int size() {
-		return nodes.size();
+		return size;
+	}
+	
+	/**
+	 * Returns the index in the range {@code [0, size())} equivalent to the
+	 * specified cyclic index.
+	 * 
+	 * @param index the index
+	 * @return the equivalent index in the range {@code [0, size())}
+	 */
+	private int normalize(int index) {
+		if ((index >= 0) && (index < size)) {
+			return index;
+		}
+		
+		index %= size;
+		return (index < 0) ? index + size : index;
 	}
 	
 	/**
@@ -90,11 +182,7 @@ public class Tour {
 	 * @return the identifier of the node visited at the specified index
 	 */
 	public int get(int index) {
-		while (index < 0) {
-			index += nodes.size();
-		}
-		
-		return nodes.get(index % nodes.size());
+		return nodes[normalize(index)];
 	}
 	
 	/**
@@ -106,53 +194,113 @@ public class Tour {
 	 * @param node the identifier of the node visited at the specified index
 	 */
 	private void set(int index, int node) {
-		while (index < 0) {
-			index += nodes.size();
+		index = normalize(index);
+		nodes[index] = node;
+		positions[node] = index;
+	}
+	
+	@Override
+	public void flip(int a, int b, int c, int d) {
+		if ((next(a) != b) || (next(c) != d)) {
+			throw new IllegalArgumentException("not edges of this tour");
 		}
 		
-		nodes.set(index % nodes.size(), node);
+		flip(positionOf(b), positionOf(c));
 	}
 	
 	/**
-	 * Returns the edges belonging to this tour.
+	 * Returns the index at which the specified node is visited.
 	 * 
-	 * @return the edges belonging to this tour
+	 * @param node the identifier of the node
+	 * @return the index at which the node is visited; or {@code -1} if the
+	 *         node is not visited by this tour
 	 */
-	public List<Edge> toEdges() {
-		List<Edge> result = new ArrayList<Edge>();
+	public int positionOf(int node) {
+		if ((node < 0) || (node >= positions.length)) {
+			return -1;
+		}
 		
-		for (int i = 0; i < nodes.size(); i++) {
-			result.add(new Edge(get(i), get(i+1)));
+		return positions[node];
+	}
+	
+	/**
+	 * Returns the index at which the specified node is visited, ensuring the
+	 * node is visited by this tour.
+	 * 
+	 * @param node the identifier of the node
+	 * @return the index at which the node is visited
+	 * @throws IllegalArgumentException if the node is not visited by this
+	 *         tour
+	 */
+	private int checkedPositionOf(int node) {
+		int index = positionOf(node);
+		
+		if (index < 0) {
+			throw new IllegalArgumentException("node " + node +
+					" is not visited by this tour");
 		}
 		
-		return result;
+		return index;
+	}
+	
+	@Override
+	public int next(int node) {
+		int index = checkedPositionOf(node) + 1;
+		return nodes[(index == size) ? 0 : index];
+	}
+	
+	@Override
+	public int prev(int node) {
+		int index = checkedPositionOf(node);
+		return nodes[(index == 0) ? size - 1 : index - 1];
+	}
+	
+	@Override
+	public boolean between(int a, int b, int c) {
+		int pa = checkedPositionOf(a);
+		int pb = checkedPositionOf(b);
+		int pc = checkedPositionOf(c);
+		
+		if (pa <= pc) {
+			return (pa <= pb) && (pb <= pc);
+		} else {
+			return (pb >= pa) || (pb <= pc);
+		}
 	}
 	
 	/**
-	 * Returns this tour as an array of integers.
+	 * Returns the edges belonging to this tour.
 	 * 
-	 * @return this tour as an array of integers
+	 * @return the edges belonging to this tour
 	 */
-	public int[] toArray() {
-		int[] result = new int[nodes.size()];
+	public List<Edge> toEdges() {
+		List<Edge> result = new ArrayList<Edge>(size);
 		
-		for (int i = 0; i < nodes.size(); i++) {
-			result[i] = nodes.get(i);
+		for (int i = 0; i < size; i++) {
+			result.add(new Edge(get(i), get(i+1)));
 		}
 		
 		return result;
 	}
 	
+	@Override
+	public int[] toArray() {
+		return Arrays.copyOf(nodes, size);
+	}
+	
 	/**
 	 * Sets this tour equal to the specified array.
 	 * 
 	 * @param array the array of integers defining a tour
+	 * @throws IllegalArgumentException if any node identifier is negative
 	 */
 	public void fromArray(int... array) {
-		nodes.clear();
+		Arrays.fill(positions, -1);
+		nodes = Arrays.copyOf(array, Math.max(array.length, 16));
+		size = array.length;
 		
-		for (int i = 0; i < array.length; i++) {
-			nodes.add(array[i]);
+		for (int i = 0; i < size; i++) {
+			setPosition(nodes[i], i);
 		}
 	}
 	
@@ -165,11 +313,25 @@ public class Tour {
 	 * @return the total distance of this tour
 	 */
 	public double distance(TSPInstance problem) {
-		DistanceTable distanceTable = problem.getDistanceTable();
+		return distance(problem.getDistanceTable());
+	}
+	
+	/**
+	 * Calculates and returns the total distance of this tour using the
+	 * specified distance table, such as a {@link CachedDistanceTable}.  The
+	 * total distance includes the distance from the last node back to the
+	 * first node in the tour.
+	 * 
+	 * @param distanceTable the distance table of the TSPLIB problem instance
+	 *        this tour is a solution for
+	 * @return the total distance of this tour
+	 */
+	public double distance(DistanceLookup distanceTable) {
 		double result = 0.0;
 		
-		for (int i = 0; i < nodes.size(); i++) {
-			result += distanceTable.getDistanceBetween(get(i), get(i+1));
+		for (int i = 0; i < size; i++) {
+			result += distanceTable.getDistanceBetween(nodes[i],
+					nodes[(i + 1 == size) ? 0 : i + 1]);
 		}
 		
 		return result;
@@ -204,25 +366,25 @@ public class Tour {
 	 */
 	public boolean isHamiltonianCycle(TSPInstance problem) {
 		DistanceTable distanceTable = problem.getDistanceTable();
-		Set<Integer> visited = new HashSet<Integer>();
+		boolean[] visited = new boolean[positions.length];
 		
 		// scan through nodes to determine if any invalid edges are followed
-		for (int i = 0; i < nodes.size(); i++) {
+		for (int i = 0; i < size; i++) {
 			int id1 = get(i);
 			int id2 = get(i+1);
 			
-			if (visited.contains(id2)) {
+			if (visited[id2]) {
 				return false;
 			} else if (!distanceTable.isNeighbor(id1, id2)) {
 				return false;
 			} else {
-				visited.add(id2);
+				visited[id2] = true;
 			}
 		}
 		
 		// determine if all nodes were visited
 		for (int id : distanceTable.listNodes()) {
-			if (!visited.contains(id)) {
+			if ((id < 0) || (id >= visited.length) || !visited[id]) {
 				return false;
 			}
 		}
@@ -242,8 +404,11 @@ public class Tour {
 	 * @param j the second index, or stopping index
 	 */
 	public void reverse(int i, int j) {
-		while (j < i) {
-			j += nodes.size();
+		i = normalize(i);
+		j = normalize(j);
+		
+		if (j < i) {
+			j += size;
 		}
 		
 		for (int k = 0; k < (j - i + 1) / 2; k++) {
@@ -253,6 +418,30 @@ public class Tour {
 		}
 	}
 	
+	/**
+	 * Reverses the segment of this tour between the two specified indices,
+	 * as {@link #reverse(int, int)}, but reverses the complementary segment
+	 * instead when it is shorter.  Either way the resulting tour visits the
+	 * same cycle, although the indices and the direction of traversal may
+	 * differ from those produced by {@code reverse(i, j)}, so at most half
+	 * the tour is rewritten.  Reversing the entire tour leaves it unchanged.
+	 * 
+	 * @param i the first index, or starting index
+	 * @param j the second index, or stopping index
+	 */
+	public void flip(int i, int j) {
+		i = normalize(i);
+		j = normalize(j);
+		
+		int length = (j >= i) ? j - i + 1 : j + size - i + 1;
+		
+		if (2 * length <= size) {
+			reverse(i, j);
+		} else if (length < size) {
+			reverse(j + 1, i - 1);
+		}
+	}
+	
 	/**
 	 * Returns {@code true} if this tour is equivalent to the specified tour;
 	 * {@code false} otherwise.  Two tours are considered equivalent if they
@@ -272,14 +461,7 @@ public class Tour {
 		}
 		
 		// find index of matching node
-		int startingIndex = -1;
-		
-		for (int i = 0; i < size; i++) {
-			if (get(0) == other.get(i)) {
-				startingIndex = i;
-				break;
-			}
-		}
+		int startingIndex = other.positionOf(get(0));
 		
 		// if for some reason no matching id was found
 		if (startingIndex == -1) {
@@ -313,7 +495,19 @@ public class Tour {
 	
 	@Override
 	public String toString() {
-		return nodes.toString();
+		StringBuilder sb = new StringBuilder();
+		sb.append('[');
+		
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			
+			sb.append(nodes[i]);
+		}
+		
+		sb.append(']');
+		return sb.toString();
 	}
 	
 	/**
@@ -324,13 +518,13 @@ public class Tour {
 	 * @return the canonical tour with the given length
 	 */
 	public static Tour createCanonicalTour(int length) {
-		Tour tour = new Tour();
+		int[] nodes = new int[length];
 		
-		for (int i = 1; i <= length; i++) {
-			tour.nodes.add(i);
+		for (int i = 0; i < length; i++) {
+			nodes[i] = i + 1;
 		}
 		
-		return tour;
+		return createTour(nodes);
 	}
 	
 	/**
@@ -341,9 +535,21 @@ public class Tour {
 	 * @return the random tour with the given length
 	 */
 	public static Tour createRandomTour(int length) {
-		Tour tour = createCanonicalTour(length);
-		Collections.shuffle(tour.nodes);
-		return tour;
+		int[] nodes = new int[length];
+		
+		for (int i = 0; i < length; i++) {
+			nodes[i] = i + 1;
+		}
+		
+		// Fisher-Yates shuffle
+		for (int i = length - 1; i > 0; i--) {
+			int j = RANDOM.nextInt(i + 1);
+			int temp = nodes[i];
+			nodes[i] = nodes[j];
+			nodes[j] = temp;
+		}
+		
+		return createTour(nodes);
 	}
 	
 	/**
@@ -0,0 +1,99 @@
+/* Copyright 2012 David Hadka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package org.moeaframework.problem.tsplib;
+
+/**
+ * The operations local search requires from a tour: the successor and
+ * predecessor of a node, the order of three nodes, and the exchange of two
+ * edges.  Nodes are always given by their identifier.  Implementations trade
+ * off the cost of these operations; {@link Tour} answers queries using an
+ * array while {@link TwoLevelTour} bounds the cost of {@code flip} on very
+ * large tours.
+ */
+public interface TourOrder {
+	
+	/**
+	 * The number of nodes visited in this tour.
+	 * 
+	 * @return the number of nodes visited in this tour
+	 */
+	public int size();
+	
+	/**
+	 * Returns the node visited immediately after the specified node.
+	 * 
+	 * @param node the identifier of the node
+	 * @return the identifier of the node visited after the specified node
+	 * @throws IllegalArgumentException if the node is not visited by this
+	 *         tour
+	 */
+	public int next(int node);
+	
+	/**
+	 * Returns the node visited immediately before the specified node.
+	 * 
+	 * @param node the identifier of the node
+	 * @return the identifier of the node visited before the specified node
+	 * @throws IllegalArgumentException if the node is not visited by this
+	 *         tour
+	 */
+	public int prev(int node);
+	
+	/**
+	 * Returns {@code true} if node {@code b} is visited when traversing this
+	 * tour forward from node {@code a} to node {@code c}, including the end
+	 * points; {@code false} otherwise.
+	 * 
+	 * @param a the identifier of the first node
+	 * @param b the identifier of the node being tested
+	 * @param c the identifier of the last node
+	 * @return {@code true} if node {@code b} lies on the forward segment from
+	 *         {@code a} to {@code c}; {@code false} otherwise
+	 * @throws IllegalArgumentException if any node is not visited by this
+	 *         tour
+	 */
+	public boolean between(int a, int b, int c);
+	
+	/**
+	 * Replaces the tour edges {@code (a, b)} and {@code (c, d)} with the edges
+	 * {@code (a, c)} and {@code (b, d)}, where {@code b = next(a)} and
+	 * {@code d = next(c)}.  This reverses the path from {@code b} to
+	 * {@code c}, or equivalently the path from {@code d} to {@code a}, so
+	 * the direction of traversal afterwards is unspecified.
+	 * 
+	 * @param a the identifier of the first node of the first edge
+	 * @param b the identifier of the second node of the first edge
+	 * @param c the identifier of the first node of the second edge
+	 * @param d the identifier of the second node of the second edge
+	 * @throws IllegalArgumentException if {@code (a, b)} or {@code (c, d)}
+	 *         are not edges traversed forward in this tour
+	 */
+	public void flip(int a, int b, int c, int d);
+	
+	/**
+	 * Returns the nodes of this tour, in the order they are visited, as an
+	 * array of integers.
+	 * 
+	 * @return the nodes of this tour as an array of integers
+	 */
+	public int[] toArray();
+
+}
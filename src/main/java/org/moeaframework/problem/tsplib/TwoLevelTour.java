@@ -0,0 +1,487 @@
+/* Copyright 2012 David Hadka
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * IN THE SOFTWARE.
+ */
+package org.moeaframework.problem.tsplib;
+
+import java.util.Arrays;
+
+/**
+ * A tour stored as a two-level list, allowing edges to be exchanged on very
+ * large tours.  The nodes are divided into segments of roughly
+ * {@code sqrt(n)} nodes.  Each segment stores its nodes in an array with a
+ * reversal bit, and the segments are kept in tour order together with the
+ * position of their first node.
+ * <p>
+ * Reversing a path first splits the segments containing its end points, so
+ * the path consists of whole segments, and then reverses the order of those
+ * segments and toggles their reversal bits.  Each {@link #flip(int, int, int,
+ * int)} therefore costs {@code O(sqrt(n))} rather than the {@code O(n)} of an
+ * array tour.  Splitting increases the number of segments, so the segments
+ * are rebuilt once their number doubles, amortizing to the same cost.  The
+ * {@link #next(int)}, {@link #prev(int)} and {@link #between(int, int, int)}
+ * queries take constant time.
+ */
+public class TwoLevelTour implements TourOrder {
+	
+	/**
+	 * A contiguous part of the tour.
+	 */
+	private static class Segment {
+		
+		/**
+		 * The internal indices of the nodes in this segment; only the first
+		 * {@code count} entries are used.
+		 */
+		private int[] nodes;
+		
+		/**
+		 * The number of nodes in this segment.
+		 */
+		private int count;
+		
+		/**
+		 * {@code true} if the nodes are visited in the reverse order of the
+		 * array; {@code false} otherwise.
+		 */
+		private boolean reversed;
+		
+		/**
+		 * The index of this segment in the tour order of the segments.
+		 */
+		private int rank;
+		
+		/**
+		 * The position in the tour of the first node visited in this segment.
+		 */
+		private int start;
+		
+		/**
+		 * Returns the internal index of the node visited at the specified
+		 * offset from the start of this segment.
+		 * 
+		 * @param k the offset in visiting order
+		 * @return the internal index of the node
+		 */
+		private int get(int k) {
+			return nodes[reversed ? count - 1 - k : k];
+		}
+		
+	}
+	
+	/**
+	 * The identifier of each node, indexed by internal index.
+	 */
+	private final int[] ids;
+	
+	/**
+	 * The internal index of each node, indexed by node identifier; or
+	 * {@code -1} if the node is not visited.
+	 */
+	private final int[] indices;
+	
+	/**
+	 * The segment containing each node, indexed by internal index.
+	 */
+	private final Segment[] segmentOf;
+	
+	/**
+	 * The offset of each node in the array of its segment, indexed by internal
+	 * index.
+	 */
+	private final int[] offsets;
+	
+	/**
+	 * The target number of nodes in each segment.
+	 */
+	private final int groupSize;
+	
+	/**
+	 * The segments in tour order; only the first {@code segmentCount}
+	 * entries are used.
+	 */
+	private Segment[] segments;
+	
+	/**
+	 * The number of segments.
+	 */
+	private int segmentCount;
+	
+	/**
+	 * Constructs a two-level tour visiting the nodes of the specified tour.
+	 * 
+	 * @param tour the tour
+	 * @throws IllegalArgumentException if the tour visits a node more than
+	 *         once
+	 */
+	public TwoLevelTour(Tour tour) {
+		this(tour.toArray());
+	}
+	
+	/**
+	 * Constructs a two-level tour visiting the specified nodes in order.
+	 * 
+	 * @param nodes the identifiers of the nodes in the order they are visited
+	 * @throws IllegalArgumentException if the tour is empty, if any node
+	 *         identifier is negative or if a node is visited more than once
+	 */
+	public TwoLevelTour(int... nodes) {
+		super();
+		
+		if (nodes.length == 0) {
+			throw new IllegalArgumentException("tour is empty");
+		}
+		
+		int maximum = 0;
+		
+		for (int id : nodes) {
+			if (id < 0) {
+				throw new IllegalArgumentException("invalid node identifier " +
+						id);
+			}
+			
+			maximum = Math.max(maximum, id);
+		}
+		
+		ids = nodes.clone();
+		indices = new int[maximum + 1];
+		Arrays.fill(indices, -1);
+		
+		for (int i = 0; i < ids.length; i++) {
+			if (indices[ids[i]] >= 0) {
+				throw new IllegalArgumentException("node " + ids[i] +
+						" is visited more than once");
+			}
+			
+			indices[ids[i]] = i;
+		}
+		
+		segmentOf = new Segment[ids.length];
+		offsets = new int[ids.length];
+		groupSize = Math.max(8, (int)Math.sqrt(ids.length));
+		
+		int[] order = new int[ids.length];
+		
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		
+		rebuild(order);
+	}
+	
+	/**
+	 * Divides the specified order into new segments of {@code groupSize}
+	 * nodes.
+	 * 
+	 * @param order the internal indices of all nodes in tour order
+	 */
+	private void rebuild(int[] order) {
+		int count = (order.length + groupSize - 1) / groupSize;
+		segments = new Segment[Math.max(16, 4 * count)];
+		segmentCount = 0;
+		
+		for (int i = 0; i < order.length; i += groupSize) {
+			int length = Math.min(groupSize, order.length - i);
+			Segment segment = new Segment();
+			segment.nodes = Arrays.copyOfRange(order, i, i + length);
+			segment.count = length;
+			assign(segment);
+			segments[segmentCount++] = segment;
+		}
+		
+		renumber();
+	}
+	
+	/**
+	 * Points the nodes of the specified segment at the segment.
+	 * 
+	 * @param segment the segment
+	 */
+	private void assign(Segment segment) {
+		for (int k = 0; k < segment.count; k++) {
+			segmentOf[segment.nodes[k]] = segment;
+			offsets[segment.nodes[k]] = k;
+		}
+	}
+	
+	/**
+	 * Updates the rank and starting position of every segment.
+	 */
+	private void renumber() {
+		int start = 0;
+		
+		for (int r = 0; r < segmentCount; r++) {
+			Segment segment = segments[r];
+			segment.rank = r;
+			segment.start = start;
+			start += segment.count;
+		}
+	}
+	
+	/**
+	 * Returns the internal index of the specified node.
+	 * 
+	 * @param node the identifier of the node
+	 * @return the internal index of the node
+	 * @throws IllegalArgumentException if the node is not visited by this
+	 *         tour
+	 */
+	private int indexOf(int node) {
+		if ((node < 0) || (node >= indices.length) || (indices[node] < 0)) {
+			throw new IllegalArgumentException("node " + node +
+					" is not visited by this tour");
+		}
+		
+		return indices[node];
+	}
+	
+	/**
+	 * Returns the offset of the specified node from the start of its
+	 * segment, in visiting order.
+	 * 
+	 * @param index the internal index of the node
+	 * @return the offset of the node in visiting order
+	 */
+	private int offsetOf(int index) {
+		Segment segment = segmentOf[index];
+		return segment.reversed ? segment.count - 1 - offsets[index] :
+			offsets[index];
+	}
+	
+	/**
+	 * Returns the position of the specified node in the tour.  Positions
+	 * change whenever the tour is modified.
+	 * 
+	 * @param index the internal index of the node
+	 * @return the position of the node in the tour
+	 */
+	private int positionOf(int index) {
+		return segmentOf[index].start + offsetOf(index);
+	}
+	
+	@Override
+	public int size() {
+		return ids.length;
+	}
+	
+	@Override
+	public int next(int node) {
+		int index = indexOf(node);
+		Segment segment = segmentOf[index];
+		int k = offsetOf(index) + 1;
+		
+		if (k == segment.count) {
+			segment = segments[(segment.rank + 1 == segmentCount) ? 0 :
+				segment.rank + 1];
+			k = 0;
+		}
+		
+		return ids[segment.get(k)];
+	}
+	
+	@Override
+	public int prev(int node) {
+		int index = indexOf(node);
+		Segment segment = segmentOf[index];
+		int k = offsetOf(index) - 1;
+		
+		if (k < 0) {
+			segment = segments[(segment.rank == 0) ? segmentCount - 1 :
+				segment.rank - 1];
+			k = segment.count - 1;
+		}
+		
+		return ids[segment.get(k)];
+	}
+	
+	@Override
+	public boolean between(int a, int b, int c) {
+		int pa = positionOf(indexOf(a));
+		int pb = positionOf(indexOf(b));
+		int pc = positionOf(indexOf(c));
+		
+		if (pa <= pc) {
+			return (pa <= pb) && (pb <= pc);
+		} else {
+			return (pb >= pa) || (pb <= pc);
+		}
+	}
+	
+	@Override
+	public void flip(int a, int b, int c, int d) {
+		if ((next(a) != b) || (next(c) != d)) {
+			throw new IllegalArgumentException("not edges of this tour");
+		}
+		
+		int n = ids.length;
+		int first = indexOf(b);
+		int last = indexOf(c);
+		int length = positionOf(last) - positionOf(first);
+		
+		if (length < 0) {
+			length += n;
+		}
+		
+		length++;
+		
+		// reversing the whole tour leaves the cycle unchanged
+		if (length == n) {
+			return;
+		}
+		
+		// reversing the complementary path gives the same cycle
+		if (2 * length > n) {
+			first = indexOf(d);
+			last = indexOf(a);
+		}
+		
+		if (segmentCount + 2 > 2 * ((n + groupSize - 1) / groupSize) + 2) {
+			rebuild(toIndices());
+		}
+		
+		splitBefore(first);
+		splitBefore(indexOf(next(ids[last])));
+		reverseSegments(segmentOf[first].rank, segmentOf[last].rank);
+	}
+	
+	/**
+	 * Ensures the specified node is the first node visited in its segment,
+	 * splitting the segment if necessary.
+	 * 
+	 * @param index the internal index of the node
+	 */
+	private void splitBefore(int index) {
+		Segment segment = segmentOf[index];
+		int k = offsetOf(index);
+		
+		if (k == 0) {
+			return;
+		}
+		
+		Segment tail = new Segment();
+		tail.count = segment.count - k;
+		tail.nodes = new int[tail.count];
+		
+		for (int i = 0; i < tail.count; i++) {
+			tail.nodes[i] = segment.get(k + i);
+		}
+		
+		int[] head = new int[k];
+		
+		for (int i = 0; i < k; i++) {
+			head[i] = segment.get(i);
+		}
+		
+		segment.nodes = head;
+		segment.count = k;
+		segment.reversed = false;
+		assign(segment);
+		assign(tail);
+		
+		if (segmentCount == segments.length) {
+			segments = Arrays.copyOf(segments, 2 * segments.length);
+		}
+		
+		int rank = segment.rank + 1;
+		System.arraycopy(segments, rank, segments, rank + 1,
+				segmentCount - rank);
+		segments[rank] = tail;
+		segmentCount++;
+		renumber();
+	}
+	
+	/**
+	 * Reverses the order of the segments from {@code from} to {@code to},
+	 * wrapping around the end of the segment order if necessary, and toggles
+	 * their reversal bits.
+	 * 
+	 * @param from the rank of the first segment
+	 * @param to the rank of the last segment
+	 */
+	private void reverseSegments(int from, int to) {
+		int count = to - from;
+		
+		if (count < 0) {
+			count += segmentCount;
+		}
+		
+		count++;
+		
+		for (int k = 0; k < count / 2; k++) {
+			int i = (from + k) % segmentCount;
+			int j = (from + count - 1 - k) % segmentCount;
+			Segment temp = segments[i];
+			segments[i] = segments[j];
+			segments[j] = temp;
+		}
+		
+		for (int k = 0; k < count; k++) {
+			Segment segment = segments[(from + k) % segmentCount];
+			segment.reversed = !segment.reversed;
+		}
+		
+		renumber();
+	}
+	
+	/**
+	 * Returns the internal indices of all nodes in tour order.
+	 * 
+	 * @return the internal indices of all nodes in tour order
+	 */
+	private int[] toIndices() {
+		int[] result = new int[ids.length];
+		int i = 0;
+		
+		for (int r = 0; r < segmentCount; r++) {
+			Segment segment = segments[r];
+			
+			for (int k = 0; k < segment.count; k++) {
+				result[i++] = segment.get(k);
+			}
+		}
+		
+		return result;
+	}
+	
+	@Override
+	public int[] toArray() {
+		int[] result = toIndices();
+		
+		for (int i = 0; i < result.length; i++) {
+			result[i] = ids[result[i]];
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Returns this tour as a {@link Tour}.
+	 * 
+	 * @return this tour as a {@link Tour}
+	 */
+	public Tour toTour() {
+		return Tour.createTour(toArray());
+	}
+	
+	@Override
+	public String toString() {
+		return toTour().toString();
+	}
+
+}
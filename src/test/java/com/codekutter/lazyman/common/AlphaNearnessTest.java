@@ -0,0 +1,101 @@
+package com.codekutter.lazyman.common;
+
+import org.junit.jupiter.api.Test;
+import org.moeaframework.problem.tsplib.DistanceTable;
+import org.moeaframework.problem.tsplib.NodeCoordinates;
+import org.moeaframework.problem.tsplib.TSPInstance;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlphaNearnessTest {
+    private static final String DATA_DIR = "src/test/resources/data";
+    private static final String[] OPTIMAL = {"berlin52", "gr120"};
+    private static final int CANDIDATES = 5;
+
+    @Test
+    void lowerBoundBelowOptimal() throws IOException {
+        for (String name : OPTIMAL) {
+            TSPInstance instance = instance(name);
+            DistanceTable table = instance.getDistanceTable();
+            double optimal = instance.getTours().get(0).distance(table);
+            for (int[][] graph : graphs(table)) {
+                AlphaNearness alpha = alpha(table, graph);
+                String message = String.format("%s [graph=%b][bound=%f][optimal=%f]",
+                        name, graph != null, alpha.lowerBound(), optimal);
+                assertTrue(alpha.lowerBound() <= optimal + 1e-6, message);
+                // the Held-Karp bound is within 1% on these instances
+                assertTrue(alpha.lowerBound() >= 0.99 * optimal, message);
+            }
+        }
+    }
+
+    @Test
+    void candidatesIncludeOptimalTour() throws IOException {
+        for (String name : OPTIMAL) {
+            TSPInstance instance = instance(name);
+            DistanceTable table = instance.getDistanceTable();
+            int[] tour = instance.getTours().get(0).toArray();
+            for (int[][] graph : graphs(table)) {
+                int[][] candidates = alpha(table, graph).candidates(CANDIDATES);
+                for (int ii = 0; ii < tour.length; ii++) {
+                    int source = tour[ii] - 1;
+                    int target = tour[(ii + 1) % tour.length] - 1;
+                    String message = String.format("%s [graph=%b][edge=%d-%d]", name, graph != null, source, target);
+                    assertEquals(CANDIDATES, candidates[source].length, message);
+                    assertTrue(contains(candidates[source], target), message);
+                    assertTrue(contains(candidates[target], source), message);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new AlphaNearness(2, (s, t) -> 1, null));
+        assertThrows(IllegalArgumentException.class, () -> new AlphaNearness(3, (s, t) -> 1, new int[2][]));
+        AlphaNearness alpha = new AlphaNearness(3, (s, t) -> 1, null);
+        assertThrows(IllegalArgumentException.class, () -> alpha.optimize(-1));
+        assertThrows(IllegalArgumentException.class, () -> alpha.candidates(0));
+    }
+
+    private static TSPInstance instance(String name) throws IOException {
+        TSPInstance instance = new TSPInstance(new File(DATA_DIR, name + ".tsp"));
+        instance.addTour(new File(DATA_DIR, name + ".opt.tour"));
+        return instance;
+    }
+
+    /**
+     * All the edges, and the second order Delaunay graph the readers use when there are coordinates.
+     */
+    private static int[][][] graphs(DistanceTable table) {
+        if (!(table instanceof NodeCoordinates)) {
+            return new int[][][]{null};
+        }
+        NodeCoordinates coords = (NodeCoordinates) table;
+        int[] nodes = coords.listNodes();
+        double[] xs = new double[nodes.length];
+        double[] ys = new double[nodes.length];
+        for (int ii = 0; ii < nodes.length; ii++) {
+            xs[ii] = coords.getX(ii + 1);
+            ys[ii] = coords.getY(ii + 1);
+        }
+        return new int[][][]{null, new DelaunayTriangulation(xs, ys).neighbors(2)};
+    }
+
+    private static AlphaNearness alpha(DistanceTable table, int[][] graph) {
+        int size = table.listNodes().length;
+        return new AlphaNearness(size, (s, t) -> table.getDistanceBetween(s + 1, t + 1), graph).optimize();
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
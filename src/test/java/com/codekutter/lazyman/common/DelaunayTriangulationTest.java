@@ -0,0 +1,149 @@
+package com.codekutter.lazyman.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DelaunayTriangulationTest {
+    private static final int RANDOM_SIZE = 2000;
+    private static final int GRID_SIDE = 30;
+    private static final int LINE_SIZE = 50;
+
+    @Test
+    void randomPoints() {
+        for (int seed = 0; seed < 5; seed++) {
+            Random random = new Random(seed);
+            double[] xs = new double[RANDOM_SIZE];
+            double[] ys = new double[RANDOM_SIZE];
+            for (int ii = 0; ii < RANDOM_SIZE; ii++) {
+                xs[ii] = random.nextDouble() * 1000;
+                ys[ii] = random.nextDouble() * 1000;
+            }
+            assertTriangulation(String.format("random [seed=%d]", seed), xs, ys);
+        }
+    }
+
+    @Test
+    void gridPoints() {
+        // every cell has four co-circular corners, so the diagonal of each is arbitrary
+        double[] xs = new double[GRID_SIDE * GRID_SIDE];
+        double[] ys = new double[GRID_SIDE * GRID_SIDE];
+        for (int ii = 0; ii < xs.length; ii++) {
+            xs[ii] = ii % GRID_SIDE;
+            ys[ii] = ii / GRID_SIDE;
+        }
+        assertTriangulation("grid", xs, ys);
+    }
+
+    @Test
+    void collinearPoints() {
+        // shuffled along a line: each point is linked to its neighbours on the line only
+        double[] xs = new double[LINE_SIZE];
+        double[] ys = new double[LINE_SIZE];
+        int[] positions = new int[LINE_SIZE];
+        for (int ii = 0; ii < LINE_SIZE; ii++) {
+            positions[ii] = (ii * 17) % LINE_SIZE;
+            xs[ii] = positions[ii];
+            ys[ii] = 3 * positions[ii] + 1;
+        }
+        int[][] neighbors = assertTriangulation("collinear", xs, ys);
+        for (int ii = 0; ii < LINE_SIZE; ii++) {
+            int expected = (positions[ii] == 0 || positions[ii] == LINE_SIZE - 1 ? 1 : 2);
+            assertEquals(expected, neighbors[ii].length, String.format("collinear [point=%d]", ii));
+            for (int n : neighbors[ii]) {
+                assertEquals(1, Math.abs(positions[n] - positions[ii]), String.format("collinear [point=%d]", ii));
+            }
+        }
+    }
+
+    @Test
+    void higherOrders() {
+        Random random = new Random(7);
+        double[] xs = new double[200];
+        double[] ys = new double[200];
+        for (int ii = 0; ii < xs.length; ii++) {
+            xs[ii] = random.nextInt(1000);
+            ys[ii] = random.nextInt(1000);
+        }
+        DelaunayTriangulation triangulation = new DelaunayTriangulation(xs, ys);
+        int[][] first = triangulation.neighbors(1);
+        int[][] second = triangulation.neighbors(2);
+        for (int ii = 0; ii < xs.length; ii++) {
+            String message = String.format("[point=%d]", ii);
+            assertSorted(message, ii, second[ii]);
+            // the neighbours of the neighbours, and nothing else
+            boolean[] expected = new boolean[xs.length];
+            for (int n : first[ii]) {
+                expected[n] = true;
+                for (int m : first[n]) {
+                    expected[m] = true;
+                }
+            }
+            expected[ii] = false;
+            boolean[] actual = new boolean[xs.length];
+            for (int n : second[ii]) {
+                actual[n] = true;
+            }
+            assertArrayEquals(expected, actual, message);
+        }
+        assertThrows(IllegalArgumentException.class, () -> triangulation.neighbors(0));
+    }
+
+    /**
+     * Check the Delaunay edges are sorted, symmetric and connect all the points, and that they
+     * include the edges from every point to all its nearest neighbours.
+     */
+    private static int[][] assertTriangulation(String message, double[] xs, double[] ys) {
+        int size = xs.length;
+        int[][] neighbors = new DelaunayTriangulation(xs, ys).neighbors(1);
+        assertEquals(size, neighbors.length, message);
+        for (int ii = 0; ii < size; ii++) {
+            String point = message + String.format(" [point=%d]", ii);
+            assertSorted(point, ii, neighbors[ii]);
+            for (int n : neighbors[ii]) {
+                assertTrue(Arrays.binarySearch(neighbors[n], ii) >= 0, point + String.format("[neighbor=%d]", n));
+            }
+            double nearest = Double.MAX_VALUE;
+            for (int jj = 0; jj < size; jj++) {
+                if (jj != ii) {
+                    nearest = Math.min(nearest, Math.hypot(xs[ii] - xs[jj], ys[ii] - ys[jj]));
+                }
+            }
+            for (int jj = 0; jj < size; jj++) {
+                if (jj != ii && Math.hypot(xs[ii] - xs[jj], ys[ii] - ys[jj]) == nearest) {
+                    assertTrue(Arrays.binarySearch(neighbors[ii], jj) >= 0, point + String.format("[nearest=%d]", jj));
+                }
+            }
+        }
+        boolean[] reached = new boolean[size];
+        Deque<Integer> queue = new ArrayDeque<>();
+        reached[0] = true;
+        queue.add(0);
+        int count = 1;
+        while (!queue.isEmpty()) {
+            for (int n : neighbors[queue.poll()]) {
+                if (!reached[n]) {
+                    reached[n] = true;
+                    queue.add(n);
+                    count++;
+                }
+            }
+        }
+        assertEquals(size, count, message + " connected");
+        return neighbors;
+    }
+
+    private static void assertSorted(String message, int point, int[] neighbors) {
+        for (int ii = 0; ii < neighbors.length; ii++) {
+            assertNotEquals(point, neighbors[ii], message);
+            if (ii > 0) {
+                assertTrue(neighbors[ii - 1] < neighbors[ii], message);
+            }
+        }
+    }
+}
@@ -16,7 +16,7 @@ class TSPDataReaderTest {
     // private static final String TSP_SOURCE_PATH = "src/test/resources/data/att48.tsp";
     private static final String TSP_SOURCE_PATH = "src/test/resources/data/berlin52.tsp";
     private static final String TSP_TOUR_PATH = "src/test/resources/data/berlin52.opt.tour";
-    private static final String CONFIG_FILE = "src/test/resources/lazyman-test.properties";
+    private static final String CONFIG_FILE = "src/test/resources/salesman-test.properties";
 
     @BeforeAll
     static void beforeAll() {
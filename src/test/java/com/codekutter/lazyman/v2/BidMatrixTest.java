@@ -0,0 +1,96 @@
+package com.codekutter.lazyman.v2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BidMatrixTest {
+    private static final int SIZE = 200;
+    private static final int[] CAPACITIES = {1, 2, 9, 36, SIZE};
+
+    @Test
+    void keepsLowestBids() {
+        for (int capacity : CAPACITIES) {
+            Random random = new Random(capacity);
+            double[][] values = bids(random);
+            BidMatrix matrix = new BidMatrix(SIZE, capacity);
+            // rows of different points are set concurrently, each in a random target order
+            IntStream.range(0, SIZE).parallel().forEach(point -> {
+                List<Integer> order = new ArrayList<>();
+                for (int target = 0; target < SIZE; target++) {
+                    if (!Double.isNaN(values[point][target])) order.add(target);
+                }
+                Collections.shuffle(order, new Random(point));
+                for (int target : order) {
+                    matrix.set(point, target, values[point][target]);
+                }
+            });
+            matrix.sort();
+
+            for (int point = 0; point < SIZE; point++) {
+                String message = String.format("[capacity=%d][point=%d]", capacity, point);
+                List<Integer> expected = sorted(values[point]);
+                int count = Math.min(capacity, expected.size());
+                assertEquals(count, matrix.count(point), message);
+                assertEquals(expected.size() > capacity, matrix.truncated(point), message);
+                for (int rank = 0; rank < count; rank++) {
+                    int target = expected.get(rank);
+                    assertEquals(target, matrix.target(point, rank), message + String.format("[rank=%d]", rank));
+                    assertEquals(values[point][target], matrix.bid(point, rank), message);
+                }
+                // ranks past the row fall back to its highest bid
+                assertEquals(matrix.bid(point, count - 1), matrix.threshold(point, capacity + 5), message);
+            }
+        }
+    }
+
+    @Test
+    void rejectsUnsortedReads() {
+        BidMatrix matrix = new BidMatrix(2, 2);
+        matrix.set(0, 1, 1.0);
+        assertThrows(IllegalStateException.class, () -> matrix.bid(0, 0));
+        matrix.sort();
+        assertThrows(IllegalStateException.class, () -> matrix.set(1, 0, 1.0));
+        assertThrows(IllegalArgumentException.class, () -> matrix.target(0, 1));
+    }
+
+    /**
+     * Random bids of every point (NaN where a point does not bid), drawn from few values so that
+     * rows hold many ties broken by target.
+     */
+    private static double[][] bids(Random random) {
+        double[][] values = new double[SIZE][SIZE];
+        for (int point = 0; point < SIZE; point++) {
+            int bidding = 1 + random.nextInt(SIZE);
+            boolean any = false;
+            for (int target = 0; target < SIZE; target++) {
+                boolean bids = (random.nextInt(SIZE) < bidding);
+                values[point][target] = (bids ? random.nextInt(20) / 4.0 : Double.NaN);
+                any |= bids;
+            }
+            if (!any) {
+                values[point][random.nextInt(SIZE)] = random.nextDouble();
+            }
+        }
+        return values;
+    }
+
+    /**
+     * The targets of a row fully sorted by bid and then target.
+     */
+    private static List<Integer> sorted(double[] row) {
+        List<Integer> targets = new ArrayList<>();
+        for (int target = 0; target < row.length; target++) {
+            if (!Double.isNaN(row[target])) targets.add(target);
+        }
+        targets.sort(Comparator.comparingDouble((Integer target) -> row[target]).thenComparingInt(target -> target));
+        return targets;
+    }
+}
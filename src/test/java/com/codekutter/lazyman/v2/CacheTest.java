@@ -0,0 +1,79 @@
+package com.codekutter.lazyman.v2;
+
+import com.codekutter.lazyman.v2.model.Path;
+import com.codekutter.lazyman.v2.model.Point;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheTest {
+    private static final int SIZE = 64;
+    private static final int THREADS = 8;
+
+    @Test
+    void concurrentMaterialize() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < 5; round++) {
+                Cache cache = implicit(new Random(round));
+                CyclicBarrier barrier = new CyclicBarrier(THREADS);
+                List<Future<Path[][]>> results = new ArrayList<>();
+                for (int tt = 0; tt < THREADS; tt++) {
+                    // half of the threads request each pair from the lower point, half from the higher one
+                    boolean lower = (tt % 2 == 0);
+                    results.add(executor.submit(() -> {
+                        barrier.await();
+                        Path[][] paths = new Path[SIZE][SIZE];
+                        for (int ii = 0; ii < SIZE; ii++) {
+                            for (int jj = ii + 1; jj < SIZE; jj++) {
+                                paths[ii][jj] = (lower ? cache.get(ii, jj) : cache.get(jj, ii));
+                            }
+                        }
+                        return paths;
+                    }));
+                }
+                List<Path[][]> all = new ArrayList<>();
+                for (Future<Path[][]> result : results) {
+                    all.add(result.get(1, TimeUnit.MINUTES));
+                }
+                for (int ii = 0; ii < SIZE; ii++) {
+                    for (int jj = ii + 1; jj < SIZE; jj++) {
+                        Path path = cache.get(ii).paths().get(jj);
+                        assertNotNull(path);
+                        assertSame(path, cache.get(jj).paths().get(ii), String.format("[%d, %d]", ii, jj));
+                        for (Path[][] paths : all) {
+                            assertSame(path, paths[ii][jj], String.format("[%d, %d]", ii, jj));
+                        }
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Cache implicit(Random random) throws Exception {
+        double[] xs = new double[SIZE];
+        double[] ys = new double[SIZE];
+        for (int ii = 0; ii < SIZE; ii++) {
+            xs[ii] = random.nextDouble() * 1000;
+            ys[ii] = random.nextDouble() * 1000;
+        }
+        // a slow source, so that requests for the same pair from both ends overlap
+        Cache cache = new Cache().init(SIZE, (s, t) -> {
+            LockSupport.parkNanos(20000);
+            return Math.hypot(xs[s] - xs[t], ys[s] - ys[t]);
+        }, 8);
+        for (int ii = 0; ii < SIZE; ii++) {
+            Point point = cache.add(ii, xs[ii], ys[ii]);
+            assertNotNull(point);
+        }
+        return cache;
+    }
+}
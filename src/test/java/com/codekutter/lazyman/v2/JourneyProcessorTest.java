@@ -0,0 +1,84 @@
+package com.codekutter.lazyman.v2;
+
+import com.codekutter.lazyman.v2.model.Journey;
+import org.junit.jupiter.api.Test;
+import org.moeaframework.problem.tsplib.Tour;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JourneyProcessorTest {
+    private static final String DATA_DIR = "src/test/resources/data/";
+    private static final String CONFIG_FILE = "src/test/resources/salesman-test.properties";
+    private static final long BUDGET = 50;
+    // slack over the budget: the stages check the clock every few nodes, the patching is not timed
+    private static final long SLACK = 1000;
+
+    @Test
+    void stagesKeepTourValid() throws Exception {
+        Cache cache = setup("berlin52.tsp");
+        Journey journey = journey(cache);
+        double patched = process(cache, journey, "", 0).distance();
+        for (String stages : new String[]{"2opt", "lk", "segment", "2opt,lk,segment"}) {
+            JourneyProcessor processor = process(cache, journey, stages, 0);
+            assertTour(stages, cache.size(), processor.tour());
+            assertTrue(processor.distance() <= patched + 1e-9, stages);
+        }
+    }
+
+    @Test
+    void stopsAtBudget() throws Exception {
+        Cache cache = setup("rl1889.tsp");
+        Journey journey = journey(cache);
+        double patched = process(cache, journey, "", 0).distance();
+        for (String stages : new String[]{"2opt", "lk", "segment", "2opt,lk,segment"}) {
+            long st = System.currentTimeMillis();
+            JourneyProcessor processor = process(cache, journey, stages, BUDGET);
+            long elapsed = System.currentTimeMillis() - st;
+            String message = String.format("[stages=%s][elapsed=%d]", stages, elapsed);
+            assertTour(message, cache.size(), processor.tour());
+            assertTrue(processor.distance() <= patched + 1e-9, message);
+            assertTrue(elapsed < BUDGET + SLACK, message);
+        }
+    }
+
+    private static Cache setup(String name) throws Exception {
+        Run run = new Run();
+        run.setConfig(CONFIG_FILE);
+        run.setTspData(DATA_DIR + name);
+        run.setTspDataType("TSP");
+        run.setCandidates(12);
+        run.setup();
+        return run.getReader().cache();
+    }
+
+    /**
+     * The journey of a first iteration over the bids (usually made of several subtours).
+     */
+    private static Journey journey(Cache cache) throws Exception {
+        RunIteration iteration = new RunIteration(0, 0, cache);
+        iteration.run();
+        Journey journey = new Journey(iteration.points());
+        journey.load();
+        return journey;
+    }
+
+    /**
+     * Patch the journey into a tour and improve it with the stages (none to only patch it).
+     */
+    private static JourneyProcessor process(Cache cache, Journey journey, String stages, long budget) throws Exception {
+        JourneyProcessor processor = new JourneyProcessor(cache, journey, JourneyProcessor.parse(stages), budget);
+        processor.run();
+        return processor;
+    }
+
+    private static void assertTour(String message, int size, Tour tour) {
+        int[] nodes = tour.toArray();
+        Arrays.sort(nodes);
+        for (int ii = 0; ii < size; ii++) {
+            assertEquals(ii + 1, nodes[ii], message);
+        }
+        assertEquals(size, nodes.length, message);
+    }
+}
@@ -0,0 +1,147 @@
+package com.codekutter.lazyman.v2;
+
+import com.codekutter.lazyman.v2.model.Journey;
+import com.codekutter.lazyman.v2.model.PathRoute;
+import com.codekutter.lazyman.v2.model.Point;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunIteratorV3Test {
+    private static final String CONFIG_FILE = "src/test/resources/salesman-test.properties";
+    private static final int[] SIZES = {7, 8, 9, 10};
+    private static final int SEEDS = 4;
+    private static final int[] WIDTHS = {1, 4, 16};
+
+    @TempDir
+    File dir;
+
+    @Test
+    void boundMatchesExhaustive() throws Exception {
+        for (int size : SIZES) {
+            for (int seed = 0; seed < SEEDS; seed++) {
+                Cache cache = setup(write(size, seed));
+                double shortest = shortest(cache);
+                for (int threads : new int[]{1, 4}) {
+                    String message = String.format("[size=%d][seed=%d][threads=%d]", size, seed, threads);
+                    Double exhaustive = length(message, cache, new RunIteratorV3(0, 0, cache, threads, false));
+                    Double bounded = length(message, cache, new RunIteratorV3(0, 0, cache, threads, true));
+                    if (shortest == Double.MAX_VALUE) {
+                        assertNull(exhaustive, message);
+                        assertNull(bounded, message);
+                        continue;
+                    }
+                    assertEquals(shortest, exhaustive, 1e-9, message);
+                    assertEquals(shortest, bounded, 1e-9, message);
+                }
+            }
+        }
+    }
+
+    @Test
+    void beamNeverBeatsExhaustive() throws Exception {
+        for (int size : SIZES) {
+            for (int seed = 0; seed < SEEDS; seed++) {
+                Cache cache = setup(write(size, seed));
+                double shortest = shortest(cache);
+                for (int width : WIDTHS) {
+                    for (boolean bound : new boolean[]{false, true}) {
+                        String message = String.format("[size=%d][seed=%d][width=%d][bound=%b]",
+                                size, seed, width, bound);
+                        Double length = length(message, cache, new RunIteratorV3(0, 0, cache, 1, bound, width));
+                        // the beam may miss every tour, but never find one the exhaustive search missed
+                        if (length != null) {
+                            assertTrue(length >= shortest - 1e-9,
+                                    message + String.format("[length=%f][shortest=%f]", length, shortest));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Run the search and return the length of its tour, closing edge included (null if none was
+     * found). A returned journey must be a single route visiting every point once.
+     */
+    private static Double length(String message, Cache cache, RunIteratorV3 iterator) throws Exception {
+        iterator.run();
+        Journey journey = iterator.journey();
+        if (journey == null) {
+            return null;
+        }
+        assertTrue(journey.isComplete(), message);
+        PathRoute route = journey.route().get(0);
+        int[] sequences = route.route().stream().mapToInt(Point::sequence).sorted().toArray();
+        assertEquals(cache.size(), sequences.length, message);
+        for (int ii = 0; ii < sequences.length; ii++) {
+            assertEquals(ii, sequences[ii], message);
+        }
+        return journey.distance() + cache.distance(route.route().getFirst().sequence(),
+                route.route().getLast().sequence());
+    }
+
+    /**
+     * Shortest tour along the bid targets by brute force (Double.MAX_VALUE if there is none). Every
+     * tour passes through the first point, so only the routes starting there are enumerated.
+     */
+    private static double shortest(Cache cache) {
+        boolean[] visited = new boolean[cache.size()];
+        visited[0] = true;
+        return shortest(cache, 0, 1, 0, visited);
+    }
+
+    private static double shortest(Cache cache, int current, int depth, double length, boolean[] visited) {
+        double best = Double.MAX_VALUE;
+        for (Point target : cache.get(current).targets()) {
+            int next = target.sequence();
+            if (depth == cache.size()) {
+                if (next == 0) {
+                    best = Math.min(best, length + cache.distance(current, next));
+                }
+                continue;
+            }
+            if (visited[next]) continue;
+            visited[next] = true;
+            best = Math.min(best, shortest(cache, next, depth + 1, length + cache.distance(current, next), visited));
+            visited[next] = false;
+        }
+        return best;
+    }
+
+    private static Cache setup(File file) throws Exception {
+        Run run = new Run();
+        run.setConfig(CONFIG_FILE);
+        run.setTspData(file.getAbsolutePath());
+        run.setTspDataType("TSP");
+        run.setup();
+        return run.getReader().cache();
+    }
+
+    /**
+     * Write an instance of points at random integer coordinates.
+     */
+    private File write(int size, int seed) throws IOException {
+        Random random = new Random(size * 31L + seed);
+        File file = new File(dir, String.format("r%d-%d.tsp", size, seed));
+        try (PrintWriter writer = new PrintWriter(file)) {
+            writer.println("NAME : " + file.getName());
+            writer.println("TYPE : TSP");
+            writer.println("DIMENSION : " + size);
+            writer.println("EDGE_WEIGHT_TYPE : EUC_2D");
+            writer.println("NODE_COORD_SECTION");
+            for (int ii = 1; ii <= size; ii++) {
+                writer.println(String.format("%d %d %d", ii, random.nextInt(1000), random.nextInt(1000)));
+            }
+            writer.println("EOF");
+        }
+        return file;
+    }
+}
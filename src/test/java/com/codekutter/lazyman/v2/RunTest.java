@@ -0,0 +1,135 @@
+package com.codekutter.lazyman.v2;
+
+import com.codekutter.lazyman.v2.model.Journey;
+import com.codekutter.lazyman.v2.model.Point;
+import org.junit.jupiter.api.Test;
+import org.moeaframework.problem.tsplib.CachedDistanceTable;
+import org.moeaframework.problem.tsplib.Tour;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunTest {
+    private static final String DATA_DIR = "src/test/resources/data/";
+    private static final String CONFIG_FILE = "src/test/resources/salesman-test.properties";
+
+    @Test
+    void parallelBidsMatchSequential() throws Exception {
+        for (String name : new String[]{"berlin52.tsp", "rl1889.tsp"}) {
+            // all paths, and an implicit cache whose paths are materialized while bidding
+            for (int candidates : new int[]{0, 12}) {
+                String message = String.format("[data=%s][candidates=%d]", name, candidates);
+                Run sequential = setup(name, candidates, 1);
+                Run parallel = setup(name, candidates, 8);
+                Cache expected = sequential.getReader().cache();
+                Cache actual = parallel.getReader().cache();
+                for (int ii = 0; ii < expected.size(); ii++) {
+                    String point = message + String.format("[point=%d]", ii);
+                    BidMatrix b1 = expected.bids();
+                    BidMatrix b2 = actual.bids();
+                    assertEquals(b1.count(ii), b2.count(ii), point);
+                    for (int rank = 0; rank < b1.count(ii); rank++) {
+                        assertEquals(b1.target(ii, rank), b2.target(ii, rank), point);
+                        assertEquals(b1.bid(ii, rank), b2.bid(ii, rank), point);
+                    }
+                    assertEquals(targets(expected.get(ii)), targets(actual.get(ii)), point);
+                }
+            }
+        }
+    }
+
+    @Test
+    void parallelTourMatchesSequential() throws Exception {
+        for (String name : new String[]{"berlin52.tsp", "rl1889.tsp"}) {
+            String message = String.format("[data=%s]", name);
+            Tour expected = tour(setup(name, 12, 1));
+            Tour actual = tour(setup(name, 12, 8));
+            assertArrayEquals(expected.toArray(), actual.toArray(), message);
+        }
+    }
+
+    @Test
+    void distanceCacheKeepsTour() throws Exception {
+        for (String name : new String[]{"berlin52.tsp", "rl1889.tsp"}) {
+            // nearest candidates, with the Delaunay neighbours, and alpha-nearness candidates
+            for (int[] options : new int[][]{{12, 0, 0}, {12, 2, 0}, {0, 0, 5}}) {
+                String message = String.format("[data=%s][candidates=%d][delaunay=%d][alpha=%d]",
+                        name, options[0], options[1], options[2]);
+                Run expected = integral(name, options, 0);
+                Run actual = integral(name, options, 64);
+                assertNull(expected.getReader().distanceRows(), message);
+                assertArrayEquals(tour(expected).toArray(), tour(actual).toArray(), message);
+                CachedDistanceTable rows = actual.getReader().distanceRows();
+                assertNotNull(rows, message);
+                assertTrue(rows.getHits() > 0 && rows.size() <= 64, message + rows);
+            }
+        }
+        Run run = new Run();
+        run.setConfig(CONFIG_FILE);
+        run.setTspData(DATA_DIR + "berlin52.tsp");
+        run.setTspDataType("TSP");
+        run.setIntegral(true);
+        run.setDistanceCache(64);
+        // all paths: every distance is computed once when its path is loaded
+        assertThrows(IllegalArgumentException.class, run::setup);
+    }
+
+    /**
+     * Load the instance with the integral distances, the candidate options (candidates, delaunay, alpha)
+     * and the rows of distances cached.
+     */
+    private static Run integral(String name, int[] options, int distanceCache) throws Exception {
+        Run run = new Run();
+        run.setConfig(CONFIG_FILE);
+        run.setTspData(DATA_DIR + name);
+        run.setTspDataType("TSP");
+        run.setIntegral(true);
+        run.setCandidates(options[0]);
+        run.setDelaunay(options[1]);
+        run.setAlpha(options[2]);
+        run.setDistanceCache(distanceCache);
+        run.setup();
+        return run;
+    }
+
+    /**
+     * Load the instance and compute its bids, with the parallel streams running in a pool of the
+     * specified number of threads (a single thread processes the points one after the other).
+     */
+    private static Run setup(String name, int candidates, int threads) throws Exception {
+        Run run = new Run();
+        run.setConfig(CONFIG_FILE);
+        run.setTspData(DATA_DIR + name);
+        run.setTspDataType("TSP");
+        run.setCandidates(candidates);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> {
+                run.setup();
+                return run;
+            }).get();
+        } finally {
+            pool.shutdown();
+        }
+        return run;
+    }
+
+    /**
+     * The tour of a first iteration over the bids, its subtours patched together.
+     */
+    private static Tour tour(Run run) throws Exception {
+        Cache cache = run.getReader().cache();
+        RunIteration iteration = new RunIteration(0, 0, cache);
+        iteration.run();
+        Journey journey = new Journey(iteration.points());
+        journey.load();
+        return new SubtourPatcher(cache).patch(journey.route());
+    }
+
+    private static List<Integer> targets(Point point) {
+        return point.targets().stream().map(Point::sequence).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,140 @@
+package com.codekutter.lazyman.v2;
+
+import com.codekutter.lazyman.v2.model.PathRoute;
+import org.junit.jupiter.api.Test;
+import org.moeaframework.problem.tsplib.Tour;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubtourPatcherTest {
+    private static final int[] SIZES = {3, 4, 10, 50, 200};
+
+    @Test
+    void patchesSingleCycle() throws Exception {
+        for (int size : SIZES) {
+            for (int round = 0; round < 20; round++) {
+                Random random = new Random(31L * size + round);
+                Cache cache = implicit(size, random);
+                List<PathRoute> routes = routes(cache, random);
+                int subtours = 0;
+                double closed = 0;
+                for (PathRoute route : routes) {
+                    List<Integer> values = new ArrayList<>();
+                    route.route().forEach(point -> {
+                        if (!listed(routes, route, point.sequence())) values.add(point.sequence());
+                    });
+                    if (values.isEmpty()) continue;
+                    subtours++;
+                    closed += cycleLength(cache, values);
+                }
+
+                SubtourPatcher patcher = new SubtourPatcher(cache);
+                Tour tour = patcher.patch(routes);
+                String message = String.format("[size=%d][round=%d][routes=%d]", size, round, routes.size());
+                assertHamiltonian(message, size, tour);
+                assertEquals(subtours - 1, patcher.patches(), message);
+                // every patch replaces two edges by two: the tour is the closed subtours plus the patch costs
+                assertEquals(closed + patcher.cost(), tour.distance(new CacheDistanceTable(cache)), 1e-6, message);
+            }
+        }
+    }
+
+    @Test
+    void rejectsMissingPoints() throws Exception {
+        Random random = new Random(7);
+        Cache cache = implicit(10, random);
+        PathRoute route = new PathRoute();
+        for (int ii = 0; ii < 9; ii++) {
+            route.add(cache.get(ii));
+        }
+        List<PathRoute> routes = new ArrayList<>();
+        routes.add(route);
+        assertThrows(IllegalArgumentException.class, () -> new SubtourPatcher(cache).patch(routes));
+    }
+
+    private static void assertHamiltonian(String message, int size, Tour tour) {
+        assertEquals(size, tour.size(), message);
+        boolean[] visited = new boolean[size + 1];
+        for (int node : tour.toArray()) {
+            assertTrue(node >= 1 && node <= size, message);
+            assertFalse(visited[node], message + String.format("[node=%d]", node));
+            visited[node] = true;
+        }
+        // a single cycle: walking the successors from any node returns to it after size steps
+        int node = tour.get(0);
+        for (int ii = 1; ii < size; ii++) {
+            node = tour.next(node);
+            assertNotEquals(tour.get(0), node, message);
+        }
+        assertEquals(tour.get(0), tour.next(node), message);
+    }
+
+    /**
+     * Random routes covering every point: open chains of random lengths, single points, and routes
+     * that list again the last point of an earlier route (as the journey does for open chains).
+     */
+    private static List<PathRoute> routes(Cache cache, Random random) {
+        int size = cache.size();
+        int[] order = new int[size];
+        for (int ii = 0; ii < size; ii++) {
+            order[ii] = ii;
+        }
+        for (int ii = size - 1; ii > 0; ii--) {
+            int jj = random.nextInt(ii + 1);
+            int temp = order[ii];
+            order[ii] = order[jj];
+            order[jj] = temp;
+        }
+        List<PathRoute> routes = new ArrayList<>();
+        int index = 0;
+        while (index < size) {
+            PathRoute route = new PathRoute();
+            if (!routes.isEmpty() && random.nextInt(4) == 0) {
+                route.add(routes.get(routes.size() - 1).route().getLast());
+            }
+            int length = 1 + random.nextInt(Math.max(1, size / 4));
+            for (int ii = 0; ii < length && index < size; ii++) {
+                route.add(cache.get(order[index++]));
+            }
+            routes.add(route);
+        }
+        return routes;
+    }
+
+    private static boolean listed(List<PathRoute> routes, PathRoute current, int sequence) {
+        for (PathRoute route : routes) {
+            if (route == current) return false;
+            if (route.route().stream().anyMatch(point -> point.sequence() == sequence)) return true;
+        }
+        return false;
+    }
+
+    private static double cycleLength(Cache cache, List<Integer> values) {
+        if (values.size() == 1) return 0;
+        double length = 0;
+        for (int ii = 0; ii < values.size(); ii++) {
+            length += cache.distance(values.get(ii), values.get((ii + 1) % values.size()));
+        }
+        return length;
+    }
+
+    private static Cache implicit(int size, Random random) throws Exception {
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        for (int ii = 0; ii < size; ii++) {
+            xs[ii] = random.nextDouble() * 1000;
+            ys[ii] = random.nextDouble() * 1000;
+        }
+        Cache cache = new Cache().init(size, (s, t) -> Math.hypot(xs[s] - xs[t], ys[s] - ys[t]),
+                Math.min(8, size - 1));
+        for (int ii = 0; ii < size; ii++) {
+            cache.add(ii, xs[ii], ys[ii]);
+        }
+        cache.postLoad();
+        return cache;
+    }
+}
@@ -0,0 +1,173 @@
+package org.moeaframework.problem.tsplib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachedDistanceTableTest {
+    private static final String DATA_DIR = "src/test/resources/data";
+    private static final int LOOKUPS = 20000;
+
+    @Test
+    void evictsLeastRecentlyUsed() throws IOException {
+        CountingLookup lookup = new CountingLookup(table());
+        // asymmetric, so that every lookup goes through the row of its first node
+        CachedDistanceTable cached = new CachedDistanceTable(lookup, 2, false);
+        cached.getDistanceBetween(1, 2);
+        cached.getDistanceBetween(2, 1);
+        assertCounters(cached, 0, 2, 0, 2);
+        // row 1 is used again, leaving row 2 the least recently used
+        cached.getDistanceBetween(1, 3);
+        cached.getDistanceBetween(3, 1);
+        assertCounters(cached, 1, 3, 1, 2);
+        cached.getDistanceBetween(1, 4);
+        assertCounters(cached, 2, 3, 1, 2);
+        // row 2 was evicted: computing it again evicts row 3, used before row 1
+        cached.getDistanceBetween(2, 3);
+        cached.getDistanceBetween(1, 5);
+        assertCounters(cached, 3, 4, 2, 2);
+        cached.getDistanceBetween(3, 2);
+        assertCounters(cached, 3, 5, 3, 2);
+        assertEquals(Arrays.asList(1, 2, 3, 2, 3), lookup.rows);
+
+        cached.clear();
+        assertCounters(cached, 0, 0, 0, 0);
+        cached.getDistanceBetween(1, 2);
+        assertCounters(cached, 0, 1, 0, 1);
+    }
+
+    @Test
+    void symmetricServedFromEitherRow() throws IOException {
+        DistanceTable table = table();
+        CountingLookup lookup = new CountingLookup(table);
+        CachedDistanceTable cached = new CachedDistanceTable(lookup, 4);
+        assertEquals(table.getDistanceBetween(1, 2), cached.getDistanceBetween(1, 2));
+        assertEquals(table.getDistanceBetween(2, 1), cached.getDistanceBetween(2, 1));
+        assertEquals(table.getDistanceBetween(3, 1), cached.getDistanceBetween(3, 1));
+        assertCounters(cached, 2, 1, 0, 1);
+        assertEquals(Arrays.asList(1), lookup.rows);
+    }
+
+    @Test
+    void neighborRows() throws IOException {
+        DistanceTable table = table();
+        int[] nodes = table.listNodes();
+        // the row of each node holds the distances to its two successors
+        int[][] neighbors = new int[nodes.length][];
+        for (int ii = 0; ii < nodes.length; ii++) {
+            neighbors[ii] = new int[]{nodes[(ii + 2) % nodes.length], nodes[(ii + 1) % nodes.length]};
+        }
+        CountingLookup lookup = new CountingLookup(table);
+        CachedDistanceTable cached = new CachedDistanceTable(lookup, 8, true, neighbors);
+        assertEquals(table.getDistanceBetween(1, 2), cached.getDistanceBetween(1, 2));
+        assertEquals(table.getDistanceBetween(1, 3), cached.getDistanceBetween(1, 3));
+        assertCounters(cached, 1, 1, 0, 1);
+        assertEquals(2, lookup.columns.get(0).length);
+        // 1 is not a neighbour of 3, but 3 is one of 1
+        assertEquals(table.getDistanceBetween(3, 1), cached.getDistanceBetween(3, 1));
+        assertEquals(2, cached.getHits());
+        // neither is a neighbour of the other
+        assertEquals(table.getDistanceBetween(1, 10), cached.getDistanceBetween(1, 10));
+        assertEquals(1, cached.getBypasses());
+        assertEquals(1, lookup.rows.size());
+
+        double[] distances = new double[3];
+        cached.getDistancesBetween(1, new int[]{3, 10, 2}, distances);
+        assertArrayEquals(new double[]{table.getDistanceBetween(1, 3), table.getDistanceBetween(1, 10),
+                table.getDistanceBetween(1, 2)}, distances);
+        assertEquals(2, cached.getBypasses());
+
+        assertThrows(IllegalArgumentException.class, () -> new CachedDistanceTable(lookup, 8, true, new int[1][]));
+        neighbors[0] = new int[]{nodes.length + 1};
+        assertThrows(IllegalArgumentException.class, () -> new CachedDistanceTable(lookup, 8, true, neighbors));
+    }
+
+    @Test
+    void concurrentLookups() throws IOException {
+        DistanceTable table = table();
+        int[] nodes = table.listNodes();
+        int[][] neighbors = new int[nodes.length][];
+        Random random = new Random(nodes.length);
+        for (int ii = 0; ii < nodes.length; ii++) {
+            neighbors[ii] = random.ints(5, 1, nodes.length + 1).distinct().toArray();
+        }
+        for (int[][] graph : new int[][][]{null, neighbors}) {
+            CachedDistanceTable cached = new CachedDistanceTable(table, 5, true, graph);
+            long mismatches = IntStream.range(0, LOOKUPS).parallel().filter(ii -> {
+                int id1 = nodes[(ii * 7) % nodes.length];
+                int id2 = nodes[(ii * 13 + ii / nodes.length) % nodes.length];
+                return cached.getDistanceBetween(id1, id2) != table.getDistanceBetween(id1, id2);
+            }).count();
+            String message = String.format("[graph=%b] %s", graph != null, cached);
+            assertEquals(0, mismatches, message);
+            // every lookup is counted once, as a hit, a miss or a bypass
+            assertEquals(LOOKUPS, cached.getHits() + cached.getMisses() + cached.getBypasses(), message);
+            assertTrue(cached.size() <= 5, message);
+            // a row missed by two threads at once is computed twice but inserted once
+            assertTrue(cached.getEvictions() <= cached.getMisses() - cached.size(), message);
+        }
+    }
+
+    @Test
+    void rejectsInvalidArguments() throws IOException {
+        DistanceTable table = table();
+        assertThrows(IllegalArgumentException.class, () -> new CachedDistanceTable(table, 0));
+        CachedDistanceTable cached = new CachedDistanceTable(table, 1);
+        assertThrows(IllegalArgumentException.class, () -> cached.getDistanceBetween(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> cached.getDistanceBetween(1, table.listNodes().length + 1));
+        assertThrows(IllegalArgumentException.class, () -> cached.getDistancesBetween(1, new int[]{2, 3}, new double[1]));
+    }
+
+    private static DistanceTable table() throws IOException {
+        return new TSPInstance(new File(DATA_DIR, "att48.tsp")).getDistanceTable();
+    }
+
+    /**
+     * Expect the hit, miss, eviction counters and the number of cached rows.
+     */
+    private static void assertCounters(CachedDistanceTable cached, long hits, long misses, long evictions, int size) {
+        String message = cached.toString();
+        assertEquals(hits, cached.getHits(), message);
+        assertEquals(misses, cached.getMisses(), message);
+        assertEquals(evictions, cached.getEvictions(), message);
+        assertEquals(size, cached.size(), message);
+    }
+
+    /**
+     * Records the rows computed through the batch lookup, in order.
+     */
+    private static class CountingLookup implements DistanceLookup {
+        private final DistanceLookup lookup;
+        private final List<Integer> rows = new ArrayList<>();
+        private final List<int[]> columns = new ArrayList<>();
+
+        private CountingLookup(DistanceLookup lookup) {
+            this.lookup = lookup;
+        }
+
+        @Override
+        public int[] listNodes() {
+            return lookup.listNodes();
+        }
+
+        @Override
+        public double getDistanceBetween(int id1, int id2) {
+            return lookup.getDistanceBetween(id1, id2);
+        }
+
+        @Override
+        public void getDistancesBetween(int id, int[] ids, double[] distances) {
+            rows.add(id);
+            columns.add(ids.clone());
+            lookup.getDistancesBetween(id, ids, distances);
+        }
+    }
+}
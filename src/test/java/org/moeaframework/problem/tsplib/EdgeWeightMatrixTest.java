@@ -0,0 +1,165 @@
+package org.moeaframework.problem.tsplib;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EdgeWeightMatrixTest {
+    private static final int SIZE = 9;
+    // weights per line, so that rows wrap across lines as in the TSPLIB files
+    private static final int PER_LINE = 5;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void packedFormats() throws IOException {
+        // small weights narrow to 16 bits, large ones stay 32-bit integers
+        for (int bound : new int[]{1000, 1000000}) {
+            for (EdgeWeightFormat format : EdgeWeightFormat.values()) {
+                if (format == EdgeWeightFormat.FUNCTION) continue;
+                double[][] dense = dense(format, bound, new Random(format.ordinal() + bound));
+                File file = write(format, dense);
+                for (EdgeWeightStorage storage : EdgeWeightStorage.values()) {
+                    for (boolean mapped : new boolean[]{false, true}) {
+                        TSPInstance instance = new TSPInstance();
+                        instance.setEdgeWeightStorage(storage);
+                        if (mapped) {
+                            instance.loadMapped(file);
+                        } else {
+                            instance.load(file);
+                        }
+                        String message = String.format("[format=%s][storage=%s][mapped=%b][bound=%d]",
+                                format, storage, mapped, bound);
+                        DistanceTable table = instance.getDistanceTable();
+                        assertTrue(table instanceof EdgeWeightMatrix, message);
+                        assertEquals(storage, ((EdgeWeightMatrix) table).getStorage(), message);
+                        for (int ii = 0; ii < SIZE; ii++) {
+                            for (int jj = 0; jj < SIZE; jj++) {
+                                assertEquals(dense[ii][jj], table.getDistanceBetween(ii + 1, jj + 1), 0.0,
+                                        message + String.format("[%d, %d]", ii + 1, jj + 1));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsLongerMatrix() throws IOException {
+        double[][] dense = dense(EdgeWeightFormat.UPPER_DIAG_ROW, 100, new Random(1));
+        File file = write(EdgeWeightFormat.UPPER_DIAG_ROW, dense, 7.0);
+        assertThrows(IOException.class, () -> new TSPInstance(file));
+    }
+
+    @Test
+    void rejectsFractionalIntegerWeights() throws IOException {
+        double[][] dense = dense(EdgeWeightFormat.LOWER_DIAG_ROW, 100, new Random(2));
+        dense[3][1] = dense[1][3] = 2.5;
+        File file = write(EdgeWeightFormat.LOWER_DIAG_ROW, dense);
+        TSPInstance instance = new TSPInstance();
+        instance.setEdgeWeightStorage(EdgeWeightStorage.INTEGER);
+        assertThrows(IOException.class, () -> instance.load(file));
+    }
+
+    /**
+     * A random weight matrix: symmetric with a zero diagonal, except for FULL_MATRIX.
+     */
+    private static double[][] dense(EdgeWeightFormat format, int bound, Random random) {
+        double[][] dense = new double[SIZE][SIZE];
+        for (int ii = 0; ii < SIZE; ii++) {
+            for (int jj = 0; jj < SIZE; jj++) {
+                if (format == EdgeWeightFormat.FULL_MATRIX) {
+                    dense[ii][jj] = random.nextInt(bound);
+                } else if (jj < ii) {
+                    dense[ii][jj] = dense[jj][ii] = 1 + random.nextInt(bound);
+                }
+            }
+        }
+        return dense;
+    }
+
+    /**
+     * The weights of the matrix in the order of the TSPLIB format definition.
+     */
+    private static List<Double> entries(EdgeWeightFormat format, double[][] dense) {
+        List<Double> entries = new ArrayList<>();
+        for (int outer = 0; outer < SIZE; outer++) {
+            for (int inner = 0; inner < SIZE; inner++) {
+                // row formats list row by row, column formats column by column
+                boolean row = format.name().endsWith("_ROW") || format == EdgeWeightFormat.FULL_MATRIX;
+                int ii = (row ? outer : inner);
+                int jj = (row ? inner : outer);
+                boolean include;
+                switch (format) {
+                    case FULL_MATRIX:
+                        include = true;
+                        break;
+                    case UPPER_ROW:
+                    case UPPER_COL:
+                        include = jj > ii;
+                        break;
+                    case UPPER_DIAG_ROW:
+                    case UPPER_DIAG_COL:
+                        include = jj >= ii;
+                        break;
+                    case LOWER_ROW:
+                    case LOWER_COL:
+                        include = jj < ii;
+                        break;
+                    case LOWER_DIAG_ROW:
+                    case LOWER_DIAG_COL:
+                        include = jj <= ii;
+                        break;
+                    default:
+                        throw new IllegalArgumentException(format.name());
+                }
+                if (include) {
+                    entries.add(dense[ii][jj]);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Write the matrix in the format, with any extra weights appended to its last line.
+     */
+    private File write(EdgeWeightFormat format, double[][] dense, double... extra) throws IOException {
+        File file = new File(dir, format.name() + ".tsp");
+        List<Double> entries = entries(format, dense);
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            writer.println("NAME : " + format.name());
+            writer.println("TYPE : TSP");
+            writer.println("DIMENSION : " + SIZE);
+            writer.println("EDGE_WEIGHT_TYPE : EXPLICIT");
+            writer.println("EDGE_WEIGHT_FORMAT : " + format.name());
+            writer.println("EDGE_WEIGHT_SECTION");
+            for (int ii = 0; ii < entries.size(); ii++) {
+                writer.print(" " + format(entries.get(ii)));
+                if ((ii + 1) % PER_LINE == 0 && ii < entries.size() - 1) {
+                    writer.println();
+                }
+            }
+            for (double value : extra) {
+                writer.print(" " + format(value));
+            }
+            writer.println();
+            writer.println("EOF");
+        }
+        return file;
+    }
+
+    private static String format(double value) {
+        return (value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value));
+    }
+}
@@ -0,0 +1,125 @@
+package org.moeaframework.problem.tsplib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentHeuristicTest {
+    private static final String DATA_DIR = "src/test/resources/data";
+    private static final String[] INSTANCES = {"att48.tsp", "berlin52.tsp", "gr120.tsp"};
+    private static final int[] WINDOWS = {4, 6, SegmentHeuristic.DEFAULT_WINDOW};
+
+    @Test
+    void leavesNoImprovableWindow() throws IOException {
+        for (String name : INSTANCES) {
+            DistanceTable table = new TSPInstance(new File(DATA_DIR, name)).getDistanceTable();
+            Random random = new Random(name.hashCode());
+            for (int window : WINDOWS) {
+                String message = String.format("%s [window=%d]", name, window);
+                Tour tour = Tour.createTour(shuffle(table.listNodes(), random));
+                double before = tour.distance(table);
+                new SegmentHeuristic(table, window).apply(tour);
+                assertPermutation(message, table.listNodes(), tour);
+                assertTrue(tour.distance(table) <= before + 1e-9, message);
+                assertWindowsOptimal(message, table, tour, window);
+            }
+        }
+    }
+
+    @Test
+    void passedDeadline() throws IOException {
+        for (String name : INSTANCES) {
+            DistanceTable table = new TSPInstance(new File(DATA_DIR, name)).getDistanceTable();
+            int[] nodes = shuffle(table.listNodes(), new Random(name.hashCode()));
+            Tour tour = Tour.createTour(nodes);
+            double before = tour.distance(table);
+            new SegmentHeuristic(table).apply(tour, System.currentTimeMillis() - 1);
+            assertPermutation(name, table.listNodes(), tour);
+            assertTrue(tour.distance(table) <= before + 1e-9, name);
+        }
+    }
+
+    @Test
+    void rejectsInvalidWindows() throws IOException {
+        DistanceTable table = new TSPInstance(new File(DATA_DIR, "att48.tsp")).getDistanceTable();
+        assertThrows(IllegalArgumentException.class, () -> new SegmentHeuristic(table, 3));
+        assertThrows(IllegalArgumentException.class, () -> new SegmentHeuristic(table, SegmentHeuristic.MAX_WINDOW + 1));
+        // a tour no longer than the window has no node outside it to fix its ends
+        Tour tour = Tour.createTour(1, 2, 3, 4, 5, 6);
+        assertFalse(new SegmentHeuristic(table, 6).sweep(tour));
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6}, tour.toArray());
+    }
+
+    /**
+     * No reordering of the inner nodes of any window may shorten the path through it.
+     */
+    private static void assertWindowsOptimal(String message, DistanceTable table, Tour tour, int window) {
+        int[] nodes = tour.toArray();
+        int size = nodes.length;
+        for (int start = 0; start < size; start++) {
+            int first = nodes[start];
+            int last = nodes[(start + window - 1) % size];
+            int[] inner = new int[window - 2];
+            for (int ii = 0; ii < inner.length; ii++) {
+                inner[ii] = nodes[(start + 1 + ii) % size];
+            }
+            double current = path(table, first, inner, last);
+            double best = shortest(table, first, inner, 0, last);
+            assertTrue(best >= current - 1e-6,
+                    message + String.format("[start=%d][current=%f][best=%f]", start, current, best));
+        }
+    }
+
+    private static double shortest(DistanceTable table, int first, int[] inner, int fixed, int last) {
+        if (fixed == inner.length) {
+            return path(table, first, inner, last);
+        }
+        double best = Double.MAX_VALUE;
+        for (int ii = fixed; ii < inner.length; ii++) {
+            swap(inner, fixed, ii);
+            best = Math.min(best, shortest(table, first, inner, fixed + 1, last));
+            swap(inner, fixed, ii);
+        }
+        return best;
+    }
+
+    private static double path(DistanceTable table, int first, int[] inner, int last) {
+        double length = 0;
+        int previous = first;
+        for (int node : inner) {
+            length += table.getDistanceBetween(previous, node);
+            previous = node;
+        }
+        return length + table.getDistanceBetween(previous, last);
+    }
+
+    private static void assertPermutation(String message, int[] nodes, Tour tour) {
+        int[] sorted = tour.toArray();
+        Arrays.sort(sorted);
+        int[] expected = nodes.clone();
+        Arrays.sort(expected);
+        assertArrayEquals(expected, sorted, message);
+    }
+
+    private static void swap(int[] values, int ii, int jj) {
+        int temp = values[ii];
+        values[ii] = values[jj];
+        values[jj] = temp;
+    }
+
+    private static int[] shuffle(int[] nodes, Random random) {
+        int[] shuffled = nodes.clone();
+        for (int ii = shuffled.length - 1; ii > 0; ii--) {
+            int jj = random.nextInt(ii + 1);
+            int temp = shuffled[ii];
+            shuffled[ii] = shuffled[jj];
+            shuffled[jj] = temp;
+        }
+        return shuffled;
+    }
+}
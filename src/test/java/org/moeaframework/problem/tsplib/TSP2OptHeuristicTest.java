@@ -0,0 +1,119 @@
+package org.moeaframework.problem.tsplib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TSP2OptHeuristicTest {
+    private static final String DATA_DIR = "src/test/resources/data";
+    private static final String[] INSTANCES = {"att48.tsp", "berlin52.tsp", "gr120.tsp", "rl1889.tsp"};
+
+    @Test
+    void improvesRandomTours() throws IOException {
+        for (String name : INSTANCES) {
+            TSPInstance instance = new TSPInstance(new File(DATA_DIR, name));
+            DistanceTable table = instance.getDistanceTable();
+            TSP2OptHeuristic heuristic = new TSP2OptHeuristic(table);
+            Random random = new Random(name.hashCode());
+            for (int round = 0; round < 3; round++) {
+                int[] nodes = shuffle(table.listNodes(), random);
+                assertImproves(name, table, heuristic, Tour.createTour(nodes));
+                assertImproves(name, table, heuristic, new TwoLevelTour(nodes));
+            }
+        }
+    }
+
+    @Test
+    void smallTours() throws IOException {
+        // no Or-opt move fits below segment + 3 nodes, and tours below 4 nodes are left as they are
+        double[][] xy = {{0, 0}, {10, 0}, {10, 10}, {0, 10}, {5, 5}, {3, 7}};
+        for (int size = 3; size <= xy.length; size++) {
+            StringBuilder lines = new StringBuilder();
+            for (int ii = 0; ii < size; ii++) {
+                lines.append(String.format("%d %f %f%n", ii + 1, xy[ii][0], xy[ii][1]));
+            }
+            NodeCoordinates coords = new NodeCoordinates(size, EdgeWeightType.EUC_2D);
+            coords.load(new BufferedReader(new StringReader(lines.toString())));
+            int[] nodes = shuffle(coords.listNodes(), new Random(size));
+            assertImproves("size " + size, coords, new TSP2OptHeuristic(coords), Tour.createTour(nodes));
+        }
+    }
+
+    @Test
+    void passedDeadline() throws IOException {
+        for (String name : INSTANCES) {
+            TSPInstance instance = new TSPInstance(new File(DATA_DIR, name));
+            DistanceTable table = instance.getDistanceTable();
+            int[] nodes = shuffle(table.listNodes(), new Random(name.hashCode()));
+            for (TourOrder tour : new TourOrder[]{Tour.createTour(nodes), new TwoLevelTour(nodes)}) {
+                String message = String.format("%s: %s", name, tour.getClass().getSimpleName());
+                double before = length(table, tour);
+                new TSP2OptHeuristic(table).apply(tour, System.currentTimeMillis() - 1);
+                assertPermutation(message, table.listNodes(), tour);
+                assertTrue(length(table, tour) <= before + 1e-9, message);
+            }
+        }
+    }
+
+    /**
+     * Apply the heuristic twice: each pass must leave a tour visiting every node once that is no
+     * longer than before (a second pass may still improve it, as don't-look bits only requeue the
+     * end points of changed edges).
+     */
+    private static void assertImproves(String name, DistanceTable table, TSP2OptHeuristic heuristic,
+                                       TourOrder tour) {
+        String message = String.format("%s: %s", name, tour.getClass().getSimpleName());
+        double before = length(table, tour);
+        for (int pass = 0; pass < 2; pass++) {
+            heuristic.apply(tour);
+            assertPermutation(message, table.listNodes(), tour);
+            double after = length(table, tour);
+            assertTrue(after <= before + 1e-9,
+                    String.format("%s [pass=%d][before=%f][after=%f]", message, pass, before, after));
+            before = after;
+        }
+    }
+
+    private static void assertPermutation(String message, int[] nodes, TourOrder tour) {
+        int[] visited = tour.toArray();
+        assertEquals(nodes.length, tour.size(), message);
+        // the order must agree with next() and prev() all around the cycle
+        for (int ii = 0; ii < visited.length; ii++) {
+            int next = visited[(ii + 1) % visited.length];
+            assertEquals(next, tour.next(visited[ii]), message);
+            assertEquals(visited[ii], tour.prev(next), message);
+        }
+        int[] sorted = visited.clone();
+        Arrays.sort(sorted);
+        int[] expected = nodes.clone();
+        Arrays.sort(expected);
+        assertArrayEquals(expected, sorted, message);
+    }
+
+    private static double length(DistanceTable table, TourOrder tour) {
+        int[] visited = tour.toArray();
+        double length = 0;
+        for (int ii = 0; ii < visited.length; ii++) {
+            length += table.getDistanceBetween(visited[ii], visited[(ii + 1) % visited.length]);
+        }
+        return length;
+    }
+
+    private static int[] shuffle(int[] nodes, Random random) {
+        int[] shuffled = nodes.clone();
+        for (int ii = shuffled.length - 1; ii > 0; ii--) {
+            int jj = random.nextInt(ii + 1);
+            int temp = shuffled[ii];
+            shuffled[ii] = shuffled[jj];
+            shuffled[jj] = temp;
+        }
+        return shuffled;
+    }
+}
@@ -0,0 +1,74 @@
+package org.moeaframework.problem.tsplib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TSPInstanceTest {
+    private static final String DATA_DIR = "src/test/resources/data";
+    private static final String[] INSTANCES = {"att48.tsp", "berlin52.tsp", "gr120.tsp", "rl1889.tsp", "rl5934.tsp"};
+    private static final String[] TOURS = {"berlin52.opt.tour", "gr120.opt.tour"};
+
+    @Test
+    void loadMapped() throws IOException {
+        for (String name : INSTANCES) {
+            File file = new File(DATA_DIR, name);
+            TSPInstance text = new TSPInstance(file);
+            TSPInstance mapped = new TSPInstance();
+            mapped.loadMapped(file);
+
+            assertEquals(text.getName(), mapped.getName(), name);
+            assertEquals(text.getDataType(), mapped.getDataType(), name);
+            assertEquals(text.getDimension(), mapped.getDimension(), name);
+            assertEquals(text.getEdgeWeightType(), mapped.getEdgeWeightType(), name);
+            assertEquals(text.getEdgeWeightFormat(), mapped.getEdgeWeightFormat(), name);
+            assertEquals(text.getNodeCoordinateType(), mapped.getNodeCoordinateType(), name);
+            assertEquals(text.getDisplayDataType(), mapped.getDisplayDataType(), name);
+            assertDistances(name, text.getDistanceTable(), mapped.getDistanceTable());
+            if (text.getDisplayData() != null) {
+                assertCoordinates(name, text.getDisplayData(), mapped.getDisplayData());
+            }
+        }
+    }
+
+    @Test
+    void loadMappedTours() throws IOException {
+        for (String name : TOURS) {
+            File file = new File(DATA_DIR, name);
+            TSPInstance text = new TSPInstance(file);
+            TSPInstance mapped = new TSPInstance();
+            mapped.loadMapped(file);
+
+            assertEquals(1, text.getTours().size(), name);
+            assertEquals(text.getTours().size(), mapped.getTours().size(), name);
+            assertArrayEquals(text.getTours().get(0).toArray(), mapped.getTours().get(0).toArray(), name);
+        }
+    }
+
+    private static void assertCoordinates(String name, NodeCoordinates expected, NodeCoordinates actual) {
+        assertNotNull(actual, name);
+        assertArrayEquals(expected.listNodes(), actual.listNodes(), name);
+        for (int id : expected.listNodes()) {
+            assertEquals(expected.getX(id), actual.getX(id), 0.0, name);
+            assertEquals(expected.getY(id), actual.getY(id), 0.0, name);
+        }
+    }
+
+    private static void assertDistances(String name, DistanceTable expected, DistanceTable actual) {
+        assertNotNull(actual, name);
+        int[] nodes = expected.listNodes();
+        assertArrayEquals(nodes, actual.listNodes(), name);
+        // every pair for the small instances, a stride of the rows for the large ones
+        int stride = Math.max(1, nodes.length / 200);
+        for (int ii = 0; ii < nodes.length; ii += stride) {
+            for (int jj = 0; jj < nodes.length; jj++) {
+                assertEquals(expected.getDistanceBetween(nodes[ii], nodes[jj]),
+                        actual.getDistanceBetween(nodes[ii], nodes[jj]), 0.0,
+                        String.format("%s: [%d, %d]", name, nodes[ii], nodes[jj]));
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.moeaframework.problem.tsplib;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TwoLevelTourTest {
+    private static final int[] SIZES = {3, 4, 5, 17, 64, 257, 1000};
+    private static final int FLIPS = 2000;
+
+    @Test
+    void randomReversals() {
+        for (int size : SIZES) {
+            Random random = new Random(size);
+            Tour tour = Tour.createTour(shuffle(size, random));
+            TwoLevelTour twoLevel = new TwoLevelTour(tour);
+            assertSameTour(size, -1, tour, twoLevel, random);
+            for (int flip = 0; flip < FLIPS; flip++) {
+                int a = 1 + random.nextInt(size);
+                int c = 1 + random.nextInt(size);
+                if (a == c) continue;
+                int b = twoLevel.next(a);
+                int d = twoLevel.next(c);
+                // either tour may be traversed in the other direction after a flip
+                if (tour.next(a) == b) {
+                    tour.flip(a, b, c, d);
+                } else {
+                    tour.flip(d, c, b, a);
+                }
+                twoLevel.flip(a, b, c, d);
+                assertSameTour(size, flip, tour, twoLevel, random);
+            }
+        }
+    }
+
+    @Test
+    void rejectsNonEdges() {
+        TwoLevelTour tour = new TwoLevelTour(1, 2, 3, 4, 5, 6);
+        assertThrows(IllegalArgumentException.class, () -> tour.flip(1, 3, 4, 5));
+        assertThrows(IllegalArgumentException.class, () -> tour.flip(2, 1, 4, 5));
+        assertThrows(IllegalArgumentException.class, () -> new TwoLevelTour(1, 2, 2));
+    }
+
+    /**
+     * Both tours must have the same edges, and agree on next, prev and between up to the direction of traversal.
+     */
+    private static void assertSameTour(int size, int flip, Tour tour, TwoLevelTour twoLevel, Random random) {
+        String message = String.format("[size=%d][flip=%d]", size, flip);
+        assertEquals(tour.size(), twoLevel.size(), message);
+        boolean aligned = (tour.next(1) == twoLevel.next(1));
+        for (int node = 1; node <= size; node++) {
+            int next = (aligned ? tour.next(node) : tour.prev(node));
+            int prev = (aligned ? tour.prev(node) : tour.next(node));
+            assertEquals(next, twoLevel.next(node), message + String.format("[next=%d]", node));
+            assertEquals(prev, twoLevel.prev(node), message + String.format("[prev=%d]", node));
+        }
+        int[] visited = twoLevel.toArray();
+        assertEquals(size, visited.length, message);
+        for (int ii = 0; ii < size; ii++) {
+            assertEquals(visited[(ii + 1) % size], twoLevel.next(visited[ii]), message);
+        }
+        for (int ii = 0; ii < 20; ii++) {
+            int a = 1 + random.nextInt(size);
+            int b = 1 + random.nextInt(size);
+            int c = 1 + random.nextInt(size);
+            boolean expected = (aligned ? tour.between(a, b, c) : tour.between(c, b, a));
+            assertEquals(expected, twoLevel.between(a, b, c),
+                    message + String.format("[between=%d, %d, %d]", a, b, c));
+        }
+    }
+
+    private static int[] shuffle(int size, Random random) {
+        int[] nodes = new int[size];
+        for (int ii = 0; ii < size; ii++) {
+            nodes[ii] = ii + 1;
+        }
+        for (int ii = size - 1; ii > 0; ii--) {
+            int jj = random.nextInt(ii + 1);
+            int temp = nodes[ii];
+            nodes[ii] = nodes[jj];
+            nodes[jj] = temp;
+        }
+        return nodes;
+    }
+}